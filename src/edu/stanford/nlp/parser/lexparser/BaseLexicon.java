@@ -10,6 +10,7 @@ import edu.stanford.nlp.trees.Treebank;
 import edu.stanford.nlp.trees.DiskTreebank;
 import edu.stanford.nlp.trees.TreebankLanguagePack;
 import edu.stanford.nlp.stats.ClassicCounter;
+import edu.stanford.nlp.stats.Counter;
 import edu.stanford.nlp.stats.Counters;
 import edu.stanford.nlp.util.HashIndex;
 import edu.stanford.nlp.util.Index;
@@ -88,8 +89,46 @@ public class BaseLexicon implements Lexicon {
 
   /** Records the number of times word/tag pair was seen in training data.
    *  Includes word/tag pairs where one is a wildcard not a real word/tag.
+   *  It is only changed by train() and addTagging(), which drop the copy
+   *  that scoring reads; others can read it through seenCounter().
    */
-  public ClassicCounter<IntTaggedWord> seenCounter = new ClassicCounter<IntTaggedWord>();
+  private ClassicCounter<IntTaggedWord> seenCounter = new ClassicCounter<IntTaggedWord>();
+
+  /** A read-only copy of seenCounter, used for lookups by score().  It is
+   *  rebuilt by initRulesWithWord(), and set to null by countsChanged().
+   *  The copy of the unknown word model's unSeenCounter belongs to the
+   *  model.
+   */
+  private transient IntTaggedWordCounts seenCounts;
+
+  /** For each known word, the taggings that ruleIteratorByWord() gives
+   *  for it, with their scores.  Indexed by word; an entry is filled in the
+   *  first time the word is looked up.  The array is made by
+   *  initRulesWithWord(), and is null if the score of a known word depends
+   *  on more than the word and tag (as with useSignatureForKnownSmoothing)
+   *  or the counts have changed since.
+   */
+  private transient TagScores[] knownWordScores;
+
+  /** The scores of the possible taggings of one word.  Immutable, so that
+   *  it can be safely shared between parser threads without locking.
+   */
+  private static class TagScores {
+    final int[] tags;
+    final float[] scores;
+
+    TagScores(int[] tags, float[] scores) {
+      this.tags = tags;
+      this.scores = scores;
+    }
+  }
+
+  /** Marks a word in knownWordScores as not seen in training. */
+  private static final TagScores UNSEEN_WORD = new TagScores(new int[0], new float[0]);
+
+  /** Marks a word in knownWordScores whose scores are being computed, so
+   *  that score() computes them itself meanwhile. */
+  private static final TagScores COMPUTING = new TagScores(new int[0], new float[0]);
 
   double[] smooth = { 1.0, 1.0 };
 
@@ -182,8 +221,7 @@ public class BaseLexicon implements Lexicon {
   public boolean isKnown(String word) {
     if (!wordIndex.contains(word))
       return false;
-    IntTaggedWord iW = new IntTaggedWord(wordIndex.indexOf(word), nullTag);
-    return seenCounter.getCount(iW) > 0.0;
+    return seenCounts().getCount(wordIndex.indexOf(word), nullTag) > 0.0;
   }
 
   /**
@@ -224,9 +262,14 @@ public class BaseLexicon implements Lexicon {
       } else {
         /* Allow all tags with same basicCategory */
         /* Allow all scored taggings, unless very common */
-        IntTaggedWord iW = new IntTaggedWord(word, nullTag);
-        if (seenCounter.getCount(iW) > smoothInUnknownsThreshold) {
+        TagScores wordScores;
+        if (seenCounts().getCount(word, nullTag) > smoothInUnknownsThreshold) {
           return rulesWithWord[word].iterator();
+        } else if ((wordScores = knownWordScores(word)) != null) {
+          wordTaggings = new ArrayList<IntTaggedWord>(wordScores.tags.length);
+          for (int tag : wordScores.tags) {
+            wordTaggings.add(new IntTaggedWord(word, tag));
+          }
         } else {
           // give it flexible tagging not just lexicon
           wordTaggings = new ArrayList<IntTaggedWord>(40);
@@ -270,6 +313,7 @@ public class BaseLexicon implements Lexicon {
       rulesWithWord[w] = new ArrayList<IntTaggedWord>(1); // most have 1 or 2
                                                           // items in them
     }
+    seenCounts = new IntTaggedWordCounts(seenCounter);
     // for (Iterator ruleI = rules.iterator(); ruleI.hasNext();) {
     tags = new HashSet<IntTaggedWord>();
     for (IntTaggedWord iTW : seenCounter.keySet()) {
@@ -312,6 +356,57 @@ public class BaseLexicon implements Lexicon {
         rulesWithWord[iTW.word].add(iTW);
       }
     }
+
+    knownWordScores = useSignatureForKnownSmoothing ? null : new TagScores[numWords];
+  }
+
+  /** Returns the possible taggings of a known word with their scores,
+   *  computing them the first time they are asked for, or null if the
+   *  word wasn't seen in training or they aren't cached.
+   *  Known word scores don't depend on the sentence position, so they only
+   *  need computing once.  They are computed with score(), so that a
+   *  subclass which overrides it caches its own scores.  Two threads may
+   *  both compute the scores of a word, but they will compute the same thing.
+   */
+  private TagScores knownWordScores(int word) {
+    TagScores[] knownWordScores = this.knownWordScores;
+    if (knownWordScores == null || word < 0 || word >= knownWordScores.length) {
+      return null;
+    }
+    TagScores wordScores = knownWordScores[word];
+    if (wordScores == UNSEEN_WORD || wordScores == COMPUTING) {
+      return null;
+    } else if (wordScores == null) {
+      if (seenCounts().getCount(word, nullTag) <= 0.0) {
+        knownWordScores[word] = UNSEEN_WORD;
+        return null;
+      }
+      knownWordScores[word] = COMPUTING;
+      String wordStr = wordIndex.get(word);
+      List<IntTaggedWord> taggings;
+      if ( ! flexiTag || seenCounts().getCount(word, nullTag) > smoothInUnknownsThreshold) {
+        taggings = rulesWithWord[word];
+      } else {
+        // as in ruleIteratorByWord, all the tags with some probability
+        taggings = new ArrayList<IntTaggedWord>(40);
+        for (IntTaggedWord iTW2 : tags) {
+          IntTaggedWord iTW = new IntTaggedWord(word, iTW2.tag);
+          if (score(iTW, 0, wordStr) > Float.NEGATIVE_INFINITY) {
+            taggings.add(iTW);
+          }
+        }
+      }
+      int[] wordTags = new int[taggings.size()];
+      float[] scores = new float[taggings.size()];
+      for (int i = 0; i < wordTags.length; i++) {
+        IntTaggedWord iTW = taggings.get(i);
+        wordTags[i] = iTW.tag;
+        scores[i] = score(iTW, 0, wordStr);
+      }
+      wordScores = new TagScores(wordTags, scores);
+      knownWordScores[word] = wordScores;
+    }
+    return wordScores;
   }
 
 
@@ -384,6 +479,7 @@ public class BaseLexicon implements Lexicon {
    * Also trains the unknown word model pointed to by this lexicon.
    */
   public void train(Collection<Tree> trees, double weight, boolean keepTagsAsLabels) {
+    countsChanged();
     getUnknownWordModel().train(trees);
 
     // scan data
@@ -418,6 +514,7 @@ public class BaseLexicon implements Lexicon {
    * Adds the tagging with count to the data structures in this Lexicon.
    */
   protected void addTagging(boolean seen, IntTaggedWord itw, double count) {
+    countsChanged();
     if (seen) {
       seenCounter.incrementCount(itw, count);
       if (itw.tag() == nullTag) {
@@ -500,23 +597,48 @@ public class BaseLexicon implements Lexicon {
    * @return A float score, usually, log P(word|tag)
    */
   public float score(IntTaggedWord iTW, int loc, String word) {
+    TagScores wordScores = knownWordScores(iTW.word);
+    if (wordScores != null) {
+      int[] tags = wordScores.tags;
+      for (int i = 0; i < tags.length; i++) {
+        if (tags[i] == iTW.tag) {
+          return wordScores.scores[i];
+        }
+      }
+    }
+    return computeScore(iTW, loc, word);
+  }
+
+  /** Computes the score of a tagging from the counts; see score(). */
+  private float computeScore(IntTaggedWord iTW, int loc, String word) {
+    IntTaggedWordCounts seenCounts = seenCounts();
+
     // both actual
-    double c_TW = seenCounter.getCount(iTW);
+    double c_TW = seenCounts.getCount(iTW.word, iTW.tag);
     // double x_TW = xferCounter.getCount(iTW);
 
-    IntTaggedWord temp = new IntTaggedWord(iTW.word, nullTag);
     // word counts
-    double c_W = seenCounter.getCount(temp);
+    double c_W = seenCounts.getCount(iTW.word, nullTag);
     // double x_W = xferCounter.getCount(temp);
 
     // totals
-    double total = seenCounter.getCount(NULL_ITW);
-    double totalUnseen = uwModel.unSeenCounter().getCount(NULL_ITW);
+    double total = seenCounts.getCount(nullWord, nullTag);
 
-    temp = new IntTaggedWord(nullWord, iTW.tag);
     // tag counts
-    double c_T = seenCounter.getCount(temp);
-    double c_Tunseen = uwModel.unSeenCounter().getCount(temp);
+    double c_T = seenCounts.getCount(nullWord, iTW.tag);
+
+    double totalUnseen;
+    double c_Tunseen;
+    if (uwModel instanceof BaseUnknownWordModel) {
+      IntTaggedWordCounts unSeenCounts = ((BaseUnknownWordModel) uwModel).unSeenCounts();
+      totalUnseen = unSeenCounts.getCount(nullWord, nullTag);
+      c_Tunseen = unSeenCounts.getCount(nullWord, iTW.tag);
+    } else {
+      // a model that keeps no copy of its counts
+      Counter<IntTaggedWord> unSeenCounter = uwModel.unSeenCounter();
+      totalUnseen = unSeenCounter.getCount(NULL_ITW);
+      c_Tunseen = unSeenCounter.getCount(new IntTaggedWord(nullWord, iTW.tag));
+    }
 
     double pb_W_T; // always set below
 
@@ -569,8 +691,7 @@ public class BaseLexicon implements Lexicon {
           p_T_U *= 0.1;
           // System.out.println("Checking "+iTW);
           for (int t = 0; t < numTags; t++) {
-            IntTaggedWord iTW2 = new IntTaggedWord(iTW.word, t);
-            double p_T_W2 = seenCounter.getCount(iTW2) / c_W;
+            double p_T_W2 = seenCounts.getCount(iTW.word, t) / c_W;
             if (p_T_W2 > 0) {
               // System.out.println(" Observation of "+tagIndex.get(t)+"
               // ("+seenCounter.getCount(iTW2)+") mutated to
@@ -630,9 +751,28 @@ public class BaseLexicon implements Lexicon {
       return (float) pb_W_T;
     }
     return Float.NEGATIVE_INFINITY;
-  } // end score()
+  } // end computeScore()
 
 
+  /**
+   * Returns a read-only view of the number of times each word/tag pair was
+   * seen in training data.  The counts are changed through train() or
+   * addTagging().
+   */
+  public Counter<IntTaggedWord> seenCounter() {
+    return Counters.unmodifiableCounter(seenCounter);
+  }
+
+  /** Returns a read-only copy of seenCounter for fast lookup. */
+  protected IntTaggedWordCounts seenCounts() {
+    IntTaggedWordCounts counts = seenCounts;
+    if (counts == null) {
+      counts = new IntTaggedWordCounts(seenCounter);
+      seenCounts = counts;
+    }
+    return counts;
+  }
+
   private transient int debugLastWord = -1;
 
   private transient int debugLoc = -1;
@@ -944,6 +1084,24 @@ public class BaseLexicon implements Lexicon {
 
   public final void setUnknownWordModel(UnknownWordModel uwm) {
     this.uwModel = uwm;
+    // the cached known word scores were made from the old model's counts
+    countsChanged();
+  }
+
+  /**
+   * Drops the copies of seenCounter and the unknown word model's
+   * unSeenCounter that scoring reads, and the known word scores cached
+   * from them, so that scoring uses the counters as they are now.  Call
+   * this after changing the unknown word model's counter directly, rather
+   * than through train() or addTagging(), which call it themselves.  The known word
+   * scores are only cached again once initRulesWithWord() is called.
+   */
+  public void countsChanged() {
+    seenCounts = null;
+    if (uwModel instanceof BaseUnknownWordModel) {
+      ((BaseUnknownWordModel) uwModel).countsChanged();
+    }
+    knownWordScores = null;
   }
 
 
@@ -60,6 +60,12 @@ public class BaseUnknownWordModel implements UnknownWordModel {
    */
   protected ClassicCounter<IntTaggedWord> unSeenCounter = new ClassicCounter<IntTaggedWord>();
 
+  /** A read-only copy of unSeenCounter for fast lookup while scoring,
+   *  shared with the lexicon.  Anything that changes unSeenCounter must
+   *  call countsChanged().
+   */
+  protected transient IntTaggedWordCounts unSeenCounts;
+
   /** This maps from a tag (as a label) to a Counter from word signatures to
    *  their P(sig|tag), as estimated in the model. For Chinese, the word
    *  signature is just the first character or its unicode type for things
@@ -200,6 +206,7 @@ public class BaseUnknownWordModel implements UnknownWordModel {
    * @param trees the collection of trees to be trained over
    */
   public void train(Collection<Tree> trees) {
+    countsChanged();
     // Records the number of times word/tag pair was seen in training data.
     ClassicCounter<IntTaggedWord> seenCounter = new ClassicCounter<IntTaggedWord>();
     // Counts of each tag (stored as a Label) on unknown words.
@@ -378,6 +385,7 @@ public class BaseUnknownWordModel implements UnknownWordModel {
       System.err.println("UWM.addTagging: Shouldn't call with seen word!");
    } else {
       unSeenCounter.incrementCount(itw, count);
+      countsChanged();
       // if (itw.tag() == nullTag) {
       // sigs.add(itw);
       // }
@@ -388,4 +396,23 @@ public class BaseUnknownWordModel implements UnknownWordModel {
     return unSeenCounter;
   }
 
+  /** Returns a read-only copy of unSeenCounter for fast lookup. */
+  protected IntTaggedWordCounts unSeenCounts() {
+    IntTaggedWordCounts counts = unSeenCounts;
+    if (counts == null) {
+      counts = new IntTaggedWordCounts(unSeenCounter);
+      unSeenCounts = counts;
+    }
+    return counts;
+  }
+
+  /**
+   * Drops the copy of unSeenCounter that scoring reads, so that scoring
+   * uses the counter as it is now.  Call this after changing the counter
+   * directly, rather than through train() or addTagging().
+   */
+  public void countsChanged() {
+    unSeenCounts = null;
+  }
+
 }
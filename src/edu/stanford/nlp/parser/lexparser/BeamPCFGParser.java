@@ -0,0 +1,269 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.util.Index;
+
+/** A PCFG parser that does CKY with a beam in each chart cell.  Once the
+ *  binary and unary rules for a span have been done, only the best
+ *  {@link TestOptions#beamSize} states in the cell, and only those within
+ *  {@link TestOptions#beamMargin} of the best state in the cell, are kept;
+ *  the rest are removed from the chart.
+ *  <br>
+ *  The states surviving in each cell are listed, and the inside
+ *  pass for longer spans iterates over just these survivors (as left
+ *  children with {@link BinaryGrammar#splitRightChildrenWithLC} and as
+ *  right children with {@link BinaryGrammar#splitLeftChildrenWithRC})
+ *  rather than over all states.  The time per span is thus bounded by the
+ *  beam size rather than the grammar size, giving a predictable parsing
+ *  time.  The search is not exact: with the default beam, the parse found
+ *  often differs from the exhaustive one (see
+ *  {@link TestOptions#beamCKY} for measured speeds and accuracies).
+ *  <br>
+ *  The cells filled in by chart initialization (the tags and their
+ *  unaries) are not pruned, nor is the cell for the whole sentence.  If
+ *  the beam loses every parse of the sentence, it is reparsed
+ *  exhaustively.  Parser constraints and length normalization are not
+ *  supported by the beam inside pass; when either is in use, parsing is
+ *  exhaustive.
+ */
+public class BeamPCFGParser extends ExhaustivePCFGParser {
+
+  // the states which survived the beam, cell after cell, and where the
+  // states of each cell start and end in it: start idx, end idx -> offset.
+  // These are kept from sentence to sentence, and only grow.
+  private int[] survivors;
+  private int numSurvivors;
+  private int[][] survivorsStart;
+  private int[][] survivorsEnd;
+
+  // scratch space for finding the beam threshold of a cell
+  private float[] cellScores;
+
+
+  public BeamPCFGParser(BinaryGrammar bg, UnaryGrammar ug, Lexicon lex, Options op, Index<String> stateIndex, Index<String> wordIndex, Index<String> tagIndex) {
+    super(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+  }
+
+
+  @Override
+  public void releaseArrays() {
+    super.releaseArrays();
+    survivors = null;
+    survivorsStart = null;
+    survivorsEnd = null;
+  }
+
+  /** Fills in the iScore array of each category over each span
+   *  of length 2 or more, keeping only the beam of each cell.
+   */
+  @Override
+  void doInsideScores() {
+    if (getConstraints() != null || op.testOptions.lengthNormalization) {
+      super.doInsideScores();
+      return;
+    }
+    doBeamInsideScores();
+    int goal = stateIndex.indexOf(goalStr);
+    if (iScore[0][length][goal] == Float.NEGATIVE_INFINITY) {
+      // The beam lost the parse: start again from the initialized chart.
+      // The extents only ever grow, and only record constituents which
+      // the exhaustive pass will also find, so they can be left as is.
+      if (op.testOptions.verbose) {
+        System.err.println("Beam search found no parse; reparsing exhaustively.");
+      }
+      for (int start = 0; start < length; start++) {
+        for (int end = start + 2; end <= length; end++) {
+          Arrays.fill(iScore[start][end], Float.NEGATIVE_INFINITY);
+        }
+      }
+      super.doInsideScores();
+    }
+  }
+
+
+  private void doBeamInsideScores() {
+    if (survivorsStart == null || survivorsStart.length < length + 1) {
+      survivorsStart = new int[length + 1][length + 1];
+      survivorsEnd = new int[length + 1][length + 1];
+    }
+    if (survivors == null) {
+      survivors = new int[4 * numStates];
+    }
+    numSurvivors = 0;
+    if (cellScores == null || cellScores.length < numStates) {
+      cellScores = new float[numStates];
+    }
+    // everything that chart initialization put in the chart survives
+    for (int start = 0; start < length; start++) {
+      for (int end = start + 1; end <= length; end++) {
+        addSurvivors(start, end);
+      }
+    }
+
+    for (int diff = 2; diff <= length; diff++) {
+      // usually stop one short because boundary symbol only combines
+      // with whole sentence span
+      for (int start = 0; start < ((diff == length) ? 1: length - diff); start++) {
+        int end = start + diff;
+        float[] iScore_start_end = iScore[start][end];
+
+        for (int split = start + 1; split < end; split++) {
+          float[] iScore_start_split = iScore[start][split];
+          float[] iScore_split_end = iScore[split][end];
+          // do left restricted rules
+          for (int i = survivorsStart[start][split], iEnd = survivorsEnd[start][split]; i < iEnd; i++) {
+            int leftState = survivors[i];
+            float lS = iScore_start_split[leftState];
+            int[] rightChildren = bg.splitRightChildrenWithLC(leftState);
+            int[] parents = bg.splitParentsWithLC(leftState);
+            float[] scores = bg.splitScoresWithLC(leftState);
+            for (int rule = 0; rule < rightChildren.length; rule++) {
+              float rS = iScore_split_end[rightChildren[rule]];
+              if (rS == Float.NEGATIVE_INFINITY) {
+                continue;
+              }
+              float tot = scores[rule] + lS + rS;
+              int parentState = parents[rule];
+              if (tot > iScore_start_end[parentState]) {
+                iScore_start_end[parentState] = tot;
+              }
+            }
+          }
+          // do right restricted rules
+          for (int i = survivorsStart[split][end], iEnd = survivorsEnd[split][end]; i < iEnd; i++) {
+            int rightState = survivors[i];
+            float rS = iScore_split_end[rightState];
+            int[] leftChildren = bg.splitLeftChildrenWithRC(rightState);
+            int[] parents = bg.splitParentsWithRC(rightState);
+            float[] scores = bg.splitScoresWithRC(rightState);
+            for (int rule = 0; rule < leftChildren.length; rule++) {
+              float lS = iScore_start_split[leftChildren[rule]];
+              if (lS == Float.NEGATIVE_INFINITY) {
+                continue;
+              }
+              float tot = scores[rule] + lS + rS;
+              int parentState = parents[rule];
+              if (tot > iScore_start_end[parentState]) {
+                iScore_start_end[parentState] = tot;
+              }
+            }
+          }
+        } // for split
+
+        // do unary rules
+        for (int state = 0; state < numStates; state++) {
+          float iS = iScore_start_end[state];
+          if (iS == Float.NEGATIVE_INFINITY) {
+            continue;
+          }
+          UnaryRule[] unaries = ug.closedRulesByChild(state);
+          for (UnaryRule ur : unaries) {
+            int parentState = ur.parent;
+            float tot = iS + ur.score;
+            if (tot > iScore_start_end[parentState]) {
+              iScore_start_end[parentState] = tot;
+            }
+          }
+        }
+
+        if (diff < length) {
+          applyBeam(iScore_start_end);
+        }
+        addSurvivors(start, end);
+        int[] narrowRExtent_start = narrowRExtent[start];
+        int[] wideRExtent_start = wideRExtent[start];
+        int[] narrowLExtent_end = narrowLExtent[end];
+        int[] wideLExtent_end = wideLExtent[end];
+        for (int i = survivorsStart[start][end], iEnd = survivorsEnd[start][end]; i < iEnd; i++) {
+          updateExtents(start, end, survivors[i], narrowLExtent_end, wideLExtent_end, narrowRExtent_start, wideRExtent_start);
+        }
+      } // for start
+    } // for diff (i.e., span)
+  }
+
+  /** Removes from the cell all the states that fall outside the beam. */
+  private void applyBeam(float[] cell) {
+    int numScores = 0;
+    float best = Float.NEGATIVE_INFINITY;
+    for (int state = 0; state < numStates; state++) {
+      float score = cell[state];
+      if (score != Float.NEGATIVE_INFINITY) {
+        cellScores[numScores++] = score;
+        if (score > best) {
+          best = score;
+        }
+      }
+    }
+    float threshold = best + op.testOptions.beamMargin;
+    int beamSize = op.testOptions.beamSize;
+    if (beamSize > 0 && numScores > beamSize) {
+      float kthBest = select(cellScores, numScores, numScores - beamSize);
+      if (kthBest > threshold) {
+        threshold = kthBest;
+      }
+    }
+    if (threshold == Float.NEGATIVE_INFINITY) {
+      return;
+    }
+    for (int state = 0; state < numStates; state++) {
+      if (cell[state] < threshold) {
+        cell[state] = Float.NEGATIVE_INFINITY;
+      }
+    }
+  }
+
+  /** Lists the states with a finite score in the cell as its survivors. */
+  private void addSurvivors(int start, int end) {
+    if (survivors.length - numSurvivors < numStates) {
+      int[] more = new int[Math.max(2 * survivors.length, numSurvivors + numStates)];
+      System.arraycopy(survivors, 0, more, 0, numSurvivors);
+      survivors = more;
+    }
+    float[] cell = iScore[start][end];
+    survivorsStart[start][end] = numSurvivors;
+    for (int state = 0; state < numStates; state++) {
+      if (cell[state] != Float.NEGATIVE_INFINITY) {
+        survivors[numSurvivors++] = state;
+      }
+    }
+    survivorsEnd[start][end] = numSurvivors;
+  }
+
+  /** Returns the k-th smallest (counting from 0) of the first n elements
+   *  of the array, partially reordering them (Hoare's quickselect).
+   */
+  private static float select(float[] a, int n, int k) {
+    int lo = 0;
+    int hi = n - 1;
+    while (lo < hi) {
+      float pivot = a[(lo + hi) >>> 1];
+      int i = lo;
+      int j = hi;
+      while (i <= j) {
+        while (a[i] < pivot) {
+          i++;
+        }
+        while (a[j] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          float tmp = a[i];
+          a[i] = a[j];
+          a[j] = tmp;
+          i++;
+          j--;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        break;
+      }
+    }
+    return a[k];
+  }
+
+}
@@ -28,11 +28,11 @@ public class BiLexPCFGParser implements KBestViterbiParser {
   protected static final boolean VERY_VERBOSE = false;
 
   protected HookChart chart;
-  protected Heap<Item> agenda;
+  protected ItemAgenda agenda;
   protected int length;
   protected int[] words;
   protected Edge goal;
-  protected Interner interner;
+  protected ItemPool itemPool;
   protected Scorer scorer;
   protected ExhaustivePCFGParser fscorer;
   protected ExhaustiveDependencyParser dparser;
@@ -210,13 +210,12 @@ public class BiLexPCFGParser implements KBestViterbiParser {
     // if (tempEdge.iScore > scorer.iScore(tempEdge)+1e-4) {
     //   System.err.println(tempEdge+" has i "+tempEdge.iScore+" iE "+scorer.iScore(tempEdge));
     // }
-    Edge resultEdge = (Edge) interner.intern(tempEdge);
+    Edge resultEdge = itemPool.find(tempEdge);
     if (VERBOSE) {
-      System.err.printf("Formed %s %s %.2f was %.2f better? %b\n", (resultEdge == tempEdge ? "new" : "pre-existing"), resultEdge, tempEdge.iScore, resultEdge.iScore, better(tempEdge.iScore, resultEdge.iScore));
+      System.err.printf("Formed %s %s %.2f was %.2f better? %b\n", (resultEdge == null ? "new" : "pre-existing"), tempEdge, tempEdge.iScore, (resultEdge == null ? Double.NEGATIVE_INFINITY : resultEdge.iScore), resultEdge == null || better(tempEdge.iScore, resultEdge.iScore));
     }
-    if (resultEdge == tempEdge) {
-      tempEdge = new Edge(op.testOptions.exhaustiveTest);
-      discoverEdge(resultEdge);
+    if (resultEdge == null) {
+      discoverEdge(itemPool.add(tempEdge));
     } else {
       if (better(tempEdge.iScore, resultEdge.iScore) && resultEdge.oScore > Double.NEGATIVE_INFINITY) {
         // we've found a better way of making an edge that may make a parse
@@ -510,19 +509,17 @@ public class BiLexPCFGParser implements KBestViterbiParser {
       }
     }
     relaxHook2++;
-    Hook resultHook = (Hook) interner.intern(tempHook);
+    Hook resultHook = itemPool.find(tempHook);
     if (VERBOSE) {
-      System.err.printf("Formed %s %s %f was %f\n", resultHook, (resultHook == tempHook ? "new" : "old"), tempHook.iScore, resultHook.iScore);
-      if (resultHook.backEdge != null) {
-        System.err.println("  Backtrace: " + resultHook.backEdge);
+      System.err.printf("Formed %s %s %f was %f\n", tempHook, (resultHook == null ? "new" : "old"), tempHook.iScore, (resultHook == null ? Double.NEGATIVE_INFINITY : resultHook.iScore));
+      if (tempHook.backEdge != null) {
+        System.err.println("  Backtrace: " + tempHook.backEdge);
       }
     }
-    if (resultHook == tempHook) {
+    if (resultHook == null) {
       relaxHook3++;
-      tempHook = new Hook(op.testOptions.exhaustiveTest);
-      discoverHook(resultHook);
-    }
-    if (better(tempHook.iScore, resultHook.iScore)) {
+      discoverHook(itemPool.add(tempHook));
+    } else if (better(tempHook.iScore, resultHook.iScore)) {
       resultHook.iScore = tempHook.iScore;
       resultHook.backEdge = tempHook.backEdge;
       try {
@@ -719,15 +716,22 @@ public class BiLexPCFGParser implements KBestViterbiParser {
 
   protected void initialize(List<? extends HasWord> words) {
     length = words.size();
-    interner = new Interner();
-    agenda = new ArrayHeap<Item>(ScoredComparator.DESCENDING_COMPARATOR);
-    chart = new HookChart();
+    // the pool, agenda and chart are kept and reused from sentence to sentence
+    if (itemPool == null || itemPool.exhaustiveTest() != op.testOptions.exhaustiveTest) {
+      itemPool = new ItemPool(op.testOptions.exhaustiveTest);
+      agenda = new ItemAgenda();
+      chart = new HookChart();
+    } else {
+      itemPool.clear();
+      agenda.clear();
+      chart.clear();
+    }
     setGoal(length);
     List<Item> initialItems = makeInitialItems(words);
 //    scoreDependencies();
     for (int i = 0, iiSize = initialItems.size(); i < iiSize; i++) {
       Item item = initialItems.get(i);
-      item = (Item) interner.intern(item);
+      item = itemPool.intern(item);
       //if (VERBOSE) System.err.println("Initial: "+item);
       discoverItem(item);
     }
@@ -801,8 +805,6 @@ public class BiLexPCFGParser implements KBestViterbiParser {
         }
         if (op.testOptions.printFactoredKGood <= 0) {
           goal = (Edge) item;
-          interner = null;
-          agenda = null;
           return true;
         } else {
           // Store the parse
@@ -817,8 +819,6 @@ public class BiLexPCFGParser implements KBestViterbiParser {
             if (VERBOSE) {
               System.err.println("Found last parse!");
             }
-            interner = null;
-            agenda = null;
             return true;
           }
         }
@@ -831,8 +831,6 @@ public class BiLexPCFGParser implements KBestViterbiParser {
             System.err.println("Aborting kGood search because of an unacceptable (-Inf) item: " + item);
           }
           goal = nGoodTrees.get(0);
-          interner = null;
-          agenda = null;
           return true;
         }
         System.err.println("FactoredParser: no consistent parse [hit A*-blocked edges, aborting].");
@@ -848,8 +846,6 @@ public class BiLexPCFGParser implements KBestViterbiParser {
           System.err.println("DEBUG: aborting search because of reaching the MAX_ITEMS work limit [" +
                              op.testOptions.MAX_ITEMS + " items]");
           goal = nGoodTrees.get(0);
-          interner = null;
-          agenda = null;
           return true;
         }
         System.err.println("FactoredParser: exceeded MAX_ITEMS work limit [" +
@@ -873,8 +869,6 @@ public class BiLexPCFGParser implements KBestViterbiParser {
     if (nGoodTrees.size() > 0) {
       System.err.println("DEBUG: aborting search because of empty agenda");
       goal = nGoodTrees.get(0);
-      interner = null;
-      agenda = null;
       return true;
     }
     System.err.println("FactoredParser: emptied agenda, no parse found!");
@@ -952,17 +946,14 @@ public class BiLexPCFGParser implements KBestViterbiParser {
         }
       }
       relaxHook2++;
-      Hook resultHook = tempHook;
-      //Hook resultHook = (Hook)interner.intern(tempHook);
+      // hooks aren't merged, so every hook is a new one
+      Hook resultHook = itemPool.copy(tempHook);
       if (VERBOSE) {
-        System.err.println("Formed " + resultHook + " " + (resultHook == tempHook ? "new" : "old") + " " + tempHook.iScore + " was " + resultHook.iScore);
-      }
-      if (resultHook == tempHook) {
-        relaxHook3++;
-        tempHook = new Hook(op.testOptions.exhaustiveTest);
-        processHook(resultHook);
-        builtHooks++;
+        System.err.println("Formed " + resultHook + " new " + resultHook.iScore);
       }
+      relaxHook3++;
+      processHook(resultHook);
+      builtHooks++;
     }
 
     N5BiLexPCFGParser(Scorer scorer, ExhaustivePCFGParser fscorer, ExhaustiveDependencyParser leach, BinaryGrammar bg, UnaryGrammar ug, DependencyGrammar dg, Lexicon lex, Options op, Index<String> stateIndex, Index<String> wordIndex, Index<String> tagIndex) {
@@ -27,6 +27,18 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule> {
   private transient BinaryRule[][] splitRulesWithLC;
   private transient BinaryRule[][] splitRulesWithRC;
   //  private transient BinaryRule[][] splitRulesWithParent = null;
+  // The same rules as splitRulesWithLC, splitRulesWithRC and rulesWithParent,
+  // packed into parallel primitive arrays so that parser inner loops don't
+  // have to dereference a BinaryRule per rule. Built by splitRules().
+  private transient int[][] splitRightChildrenWithLC;
+  private transient int[][] splitParentsWithLC;
+  private transient float[][] splitScoresWithLC;
+  private transient int[][] splitLeftChildrenWithRC;
+  private transient int[][] splitParentsWithRC;
+  private transient float[][] splitScoresWithRC;
+  private transient int[][] leftChildrenWithParent;
+  private transient int[][] rightChildrenWithParent;
+  private transient float[][] scoresWithParent;
   private transient Map<BinaryRule,BinaryRule> ruleMap;
   // for super speed! (maybe)
   private transient boolean[] synthetic;
@@ -98,6 +110,60 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule> {
       // parent accessor
       //      splitRulesWithParent[state] = toBRArray(rulesWithParent[state]);
     }
+    packRules();
+  }
+
+  /**
+   * Builds the packed primitive rule tables from the split rule arrays
+   * and the rules by parent.  Rule scores must not be changed after this
+   * (or else splitRules() must be called again).
+   */
+  private void packRules() {
+    int numStates = splitRulesWithLC.length;
+    splitRightChildrenWithLC = new int[numStates][];
+    splitParentsWithLC = new int[numStates][];
+    splitScoresWithLC = new float[numStates][];
+    splitLeftChildrenWithRC = new int[numStates][];
+    splitParentsWithRC = new int[numStates][];
+    splitScoresWithRC = new float[numStates][];
+    leftChildrenWithParent = new int[numStates][];
+    rightChildrenWithParent = new int[numStates][];
+    scoresWithParent = new float[numStates][];
+    for (int state = 0; state < numStates; state++) {
+      BinaryRule[] rules = splitRulesWithLC[state];
+      int numRules = rules.length;
+      splitRightChildrenWithLC[state] = new int[numRules];
+      splitParentsWithLC[state] = new int[numRules];
+      splitScoresWithLC[state] = new float[numRules];
+      for (int i = 0; i < numRules; i++) {
+        splitRightChildrenWithLC[state][i] = rules[i].rightChild;
+        splitParentsWithLC[state][i] = rules[i].parent;
+        splitScoresWithLC[state][i] = rules[i].score;
+      }
+
+      rules = splitRulesWithRC[state];
+      numRules = rules.length;
+      splitLeftChildrenWithRC[state] = new int[numRules];
+      splitParentsWithRC[state] = new int[numRules];
+      splitScoresWithRC[state] = new float[numRules];
+      for (int i = 0; i < numRules; i++) {
+        splitLeftChildrenWithRC[state][i] = rules[i].leftChild;
+        splitParentsWithRC[state][i] = rules[i].parent;
+        splitScoresWithRC[state][i] = rules[i].score;
+      }
+
+      List<BinaryRule> ruleList = rulesWithParent[state];
+      numRules = ruleList.size();
+      leftChildrenWithParent[state] = new int[numRules];
+      rightChildrenWithParent[state] = new int[numRules];
+      scoresWithParent[state] = new float[numRules];
+      for (int i = 0; i < numRules; i++) {
+        BinaryRule br = ruleList.get(i);
+        leftChildrenWithParent[state][i] = br.leftChild;
+        rightChildrenWithParent[state][i] = br.rightChild;
+        scoresWithParent[state][i] = br.score;
+      }
+    }
   }
 
   public BinaryRule[] splitRulesWithLC(int state) {
@@ -114,6 +180,51 @@ public class BinaryGrammar implements Serializable, Iterable<BinaryRule> {
     return splitRulesWithRC[state];
   }
 
+  /** The right children of the rules in splitRulesWithLC(state), in the same order. */
+  public int[] splitRightChildrenWithLC(int state) {
+    return splitRightChildrenWithLC[state];
+  }
+
+  /** The parents of the rules in splitRulesWithLC(state), in the same order. */
+  public int[] splitParentsWithLC(int state) {
+    return splitParentsWithLC[state];
+  }
+
+  /** The scores of the rules in splitRulesWithLC(state), in the same order. */
+  public float[] splitScoresWithLC(int state) {
+    return splitScoresWithLC[state];
+  }
+
+  /** The left children of the rules in splitRulesWithRC(state), in the same order. */
+  public int[] splitLeftChildrenWithRC(int state) {
+    return splitLeftChildrenWithRC[state];
+  }
+
+  /** The parents of the rules in splitRulesWithRC(state), in the same order. */
+  public int[] splitParentsWithRC(int state) {
+    return splitParentsWithRC[state];
+  }
+
+  /** The scores of the rules in splitRulesWithRC(state), in the same order. */
+  public float[] splitScoresWithRC(int state) {
+    return splitScoresWithRC[state];
+  }
+
+  /** The left children of the rules in ruleListByParent(state), in the same order. */
+  public int[] leftChildrenWithParent(int state) {
+    return leftChildrenWithParent[state];
+  }
+
+  /** The right children of the rules in ruleListByParent(state), in the same order. */
+  public int[] rightChildrenWithParent(int state) {
+    return rightChildrenWithParent[state];
+  }
+
+  /** The scores of the rules in ruleListByParent(state), in the same order. */
+  public float[] scoresWithParent(int state) {
+    return scoresWithParent[state];
+  }
+
   //  public BinaryRule[] splitRulesWithParent(int state) {
   //    return splitRulesWithParent[state];
   //  }
@@ -1,6 +1,8 @@
 package edu.stanford.nlp.parser.lexparser;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import edu.stanford.nlp.stats.ClassicCounter;
@@ -16,6 +18,9 @@ public class BinaryGrammarExtractor extends AbstractTreeExtractor<Pair<UnaryGram
   protected ClassicCounter<String> symbolCounter = new ClassicCounter<String>();
   private Set<BinaryRule> binaryRules = new HashSet<BinaryRule>();
   private Set<UnaryRule> unaryRules = new HashSet<UnaryRule>();
+  // the rules in the order they were first seen, for addCounts()
+  private List<BinaryRule> binaryRuleList = new ArrayList<BinaryRule>();
+  private List<UnaryRule> unaryRuleList = new ArrayList<UnaryRule>();
 
   //  protected void tallyTree(Tree t, double weight) {
   //    super.tallyTree(t, weight);
@@ -37,7 +42,9 @@ public class BinaryGrammarExtractor extends AbstractTreeExtractor<Pair<UnaryGram
                                            true));
       symbolCounter.incrementCount(stateIndex.get(ur.parent), weight);
       unaryRuleCounter.incrementCount(ur, weight);
-      unaryRules.add(ur);
+      if (unaryRules.add(ur)) {
+        unaryRuleList.add(ur);
+      }
     } else {
       BinaryRule br = new BinaryRule(stateIndex.indexOf(lt.label().value(), true),
                          stateIndex.indexOf(lt.children()[0].label().value(),
@@ -46,7 +53,43 @@ public class BinaryGrammarExtractor extends AbstractTreeExtractor<Pair<UnaryGram
                                             true));
       symbolCounter.incrementCount(stateIndex.get(br.parent), weight);
       binaryRuleCounter.incrementCount(br, weight);
-      binaryRules.add(br);
+      if (binaryRules.add(br)) {
+        binaryRuleList.add(br);
+      }
+    }
+  }
+
+  /**
+   * Adds the counts tallied by another extractor, which has its own state
+   * index, to the counts of this one.  States and rules new to this
+   * extractor are added in the order in which the other one first saw
+   * them.  So if a list of trees is cut into contiguous pieces, each piece
+   * is tallied by a separate extractor, and these are added in order to an
+   * empty extractor, the grammar formed (and its state index) is the same
+   * as if the whole list had been tallied by a single extractor.
+   */
+  void addCounts(BinaryGrammarExtractor other) {
+    Index<String> otherIndex = other.stateIndex;
+    int[] states = new int[otherIndex.size()];
+    for (int i = 0; i < states.length; i++) {
+      states[i] = stateIndex.indexOf(otherIndex.get(i), true);
+    }
+    for (UnaryRule otherRule : other.unaryRuleList) {
+      UnaryRule ur = new UnaryRule(states[otherRule.parent], states[otherRule.child]);
+      unaryRuleCounter.incrementCount(ur, other.unaryRuleCounter.getCount(otherRule));
+      if (unaryRules.add(ur)) {
+        unaryRuleList.add(ur);
+      }
+    }
+    for (BinaryRule otherRule : other.binaryRuleList) {
+      BinaryRule br = new BinaryRule(states[otherRule.parent], states[otherRule.leftChild], states[otherRule.rightChild]);
+      binaryRuleCounter.incrementCount(br, other.binaryRuleCounter.getCount(otherRule));
+      if (binaryRules.add(br)) {
+        binaryRuleList.add(br);
+      }
+    }
+    for (String symbol : other.symbolCounter.keySet()) {
+      symbolCounter.incrementCount(symbol, other.symbolCounter.getCount(symbol));
     }
   }
 
@@ -0,0 +1,254 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * A JVM-wide pool of the chart arrays used by {@link ExhaustivePCFGParser}.
+ * <p>
+ * For long sentences the charts run to hundreds of megabytes, and
+ * allocating a fresh set for every {@link LexicalizedParserQuery} (as
+ * {@link LexicalizedParser#apply} does) means a great deal of allocation
+ * and garbage collection.  Instead, parsers lease a {@link Chart} sized for
+ * the sentence at hand and give it back when done, so that it can be reused
+ * by any other parser whose grammar has the same shape (number of states and
+ * tags, and the same choice of outside and length-normalization arrays).
+ * <p>
+ * Chart sizes are rounded up to a multiple of {@link #BUCKET_WIDTH} so that
+ * sentences of similar lengths can share charts.  Charts are not wiped when
+ * leased or returned: the parser only ever clears the cells covered by the
+ * current sentence, so a larger chart costs no extra clearing time.
+ * Idle charts are only softly reachable, so the garbage collector can
+ * reclaim them under memory pressure.
+ */
+class ChartPool {
+
+  /** Chart sizes are rounded up to a multiple of this. */
+  static final int BUCKET_WIDTH = 8;
+
+  /** The maximum number of idle charts kept for any one shape. */
+  private static final int MAX_IDLE_PER_SHAPE = Runtime.getRuntime().availableProcessors() + 1;
+
+  private static final Map<Shape,LinkedList<SoftReference<Chart>>> idle = new HashMap<Shape,LinkedList<SoftReference<Chart>>>();
+
+  private ChartPool() {} // static methods only
+
+
+  /**
+   * The full set of chart arrays for one parse.  A chart of size
+   * <code>size</code> can hold sentences of up to <code>size - 1</code>
+   * words (the extra position is for the boundary symbol).
+   */
+  static class Chart {
+
+    final Shape shape;
+    final int size;
+
+    final float[][][] iScore;
+    final float[][][] oScore;
+    final int[][][] wordsInSpan;
+
+    final boolean[][] iPossibleByL;
+    final boolean[][] iPossibleByR;
+    final boolean[][] oPossibleByL;
+    final boolean[][] oPossibleByR;
+    final boolean[][] oFilteredStart;
+    final boolean[][] oFilteredEnd;
+
+    final int[][] narrowLExtent;
+    final int[][] wideLExtent;
+    final int[][] narrowRExtent;
+    final int[][] wideRExtent;
+
+    final boolean[][] tags;
+
+    Chart(Shape shape, int size) {
+      this.shape = shape;
+      this.size = size;
+      int numStates = shape.numStates;
+      // allocate just the parts of iScore and oScore used (end > start, etc.)
+      iScore = new float[size + 1][size + 1][];
+      for (int start = 0; start <= size; start++) {
+        for (int end = start + 1; end <= size; end++) {
+          iScore[start][end] = new float[numStates];
+        }
+      }
+      if (shape.outside) {
+        oScore = new float[size + 1][size + 1][];
+        for (int start = 0; start <= size; start++) {
+          for (int end = start + 1; end <= size; end++) {
+            oScore[start][end] = new float[numStates];
+          }
+        }
+        oPossibleByL = new boolean[size + 1][numStates];
+        oPossibleByR = new boolean[size + 1][numStates];
+        oFilteredStart = new boolean[size + 1][numStates];
+        oFilteredEnd = new boolean[size + 1][numStates];
+      } else {
+        oScore = null;
+        oPossibleByL = oPossibleByR = oFilteredStart = oFilteredEnd = null;
+      }
+      iPossibleByL = new boolean[size + 1][numStates];
+      iPossibleByR = new boolean[size + 1][numStates];
+      narrowRExtent = new int[size + 1][numStates];
+      wideRExtent = new int[size + 1][numStates];
+      narrowLExtent = new int[size + 1][numStates];
+      wideLExtent = new int[size + 1][numStates];
+      tags = new boolean[size + 1][shape.numTags];
+      if (shape.lengthNormalization) {
+        wordsInSpan = new int[size + 1][size + 1][];
+        for (int start = 0; start <= size; start++) {
+          for (int end = start + 1; end <= size; end++) {
+            wordsInSpan[start][end] = new int[numStates];
+          }
+        }
+      } else {
+        wordsInSpan = null;
+      }
+    }
+
+  } // end static class Chart
+
+
+  /** The things which must agree for two parsers to share a chart. */
+  static class Shape {
+
+    final int numStates;
+    final int numTags;
+    final boolean outside;
+    final boolean lengthNormalization;
+
+    Shape(int numStates, int numTags, boolean outside, boolean lengthNormalization) {
+      this.numStates = numStates;
+      this.numTags = numTags;
+      this.outside = outside;
+      this.lengthNormalization = lengthNormalization;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if ( ! (o instanceof Shape)) {
+        return false;
+      }
+      Shape s = (Shape) o;
+      return numStates == s.numStates && numTags == s.numTags &&
+        outside == s.outside && lengthNormalization == s.lengthNormalization;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = numStates;
+      result = 31 * result + numTags;
+      result = 31 * result + (outside ? 1 : 0);
+      result = 31 * result + (lengthNormalization ? 1 : 0);
+      return result;
+    }
+
+  } // end static class Shape
+
+
+  /**
+   * Returns a chart of at least the given size, reusing an idle one if
+   * there is a suitable one in the pool.  An idle chart is not reused if it
+   * is more than about twice as large as needed, so that short sentences
+   * don't tie up very large charts.
+   *
+   * @param shape The shape of chart needed
+   * @param minSize The smallest acceptable chart size
+   * @param maxSize The largest acceptable chart size, whether reused or
+   *     newly allocated.  If this is less than minSize, a chart of exactly
+   *     minSize is returned.
+   * @return A chart whose size is at least minSize
+   * @throws OutOfMemoryError If no chart is available and a new one
+   *     cannot be allocated even after emptying the pool
+   */
+  static Chart lease(Shape shape, int minSize, int maxSize) {
+    int maxReused = Math.min(2 * minSize + BUCKET_WIDTH, Math.max(minSize, maxSize));
+    synchronized (idle) {
+      LinkedList<SoftReference<Chart>> charts = idle.get(shape);
+      if (charts != null) {
+        Chart best = null;
+        SoftReference<Chart> bestRef = null;
+        for (Iterator<SoftReference<Chart>> it = charts.iterator(); it.hasNext(); ) {
+          SoftReference<Chart> ref = it.next();
+          Chart chart = ref.get();
+          if (chart == null) {
+            it.remove();
+          } else if (chart.size >= minSize && chart.size <= maxReused &&
+                     (best == null || chart.size < best.size)) {
+            best = chart;
+            bestRef = ref;
+          }
+        }
+        if (best != null) {
+          charts.remove(bestRef);
+          return best;
+        }
+      }
+    }
+    int size = ((minSize + BUCKET_WIDTH - 1) / BUCKET_WIDTH) * BUCKET_WIDTH;
+    if (size > maxSize) {
+      size = Math.max(minSize, maxSize);
+    }
+    try {
+      return new Chart(shape, size);
+    } catch (OutOfMemoryError oome) {
+      // idle charts might be what is using the memory
+      clear();
+      return new Chart(shape, size);
+    }
+  }
+
+  /**
+   * Returns a chart to the pool.  The caller must not use any of its
+   * arrays afterwards.
+   */
+  static void release(Chart chart) {
+    if (chart == null) {
+      return;
+    }
+    synchronized (idle) {
+      LinkedList<SoftReference<Chart>> charts = idle.get(chart.shape);
+      if (charts == null) {
+        charts = new LinkedList<SoftReference<Chart>>();
+        idle.put(chart.shape, charts);
+      }
+      for (Iterator<SoftReference<Chart>> it = charts.iterator(); it.hasNext(); ) {
+        if (it.next().get() == null) {
+          it.remove();
+        }
+      }
+      if (charts.size() >= MAX_IDLE_PER_SHAPE) {
+        // drop the smallest, since it is cheapest to recreate
+        SoftReference<Chart> smallest = null;
+        int smallestSize = Integer.MAX_VALUE;
+        for (SoftReference<Chart> ref : charts) {
+          Chart c = ref.get();
+          if (c != null && c.size < smallestSize) {
+            smallest = ref;
+            smallestSize = c.size;
+          }
+        }
+        if (smallestSize > chart.size) {
+          return;
+        }
+        charts.remove(smallest);
+      }
+      charts.addFirst(new SoftReference<Chart>(chart));
+    }
+  }
+
+  /** Drops all idle charts, so that their memory can be reclaimed. */
+  static void clear() {
+    synchronized (idle) {
+      idle.clear();
+    }
+  }
+
+}
@@ -64,7 +64,7 @@ public class ChineseLexicon extends BaseLexicon {
 
   @Override
   public float score(IntTaggedWord iTW, int loc, String word) {
-    double c_W = seenCounter.getCount(iTW);
+    double c_W = seenCounts().getCount(iTW);
     boolean seen = (c_W > 0.0);
 
     if (seen) {
@@ -83,6 +83,14 @@ public class ChineseSimWordAvgDepGrammar extends MLEDependencyGrammar {
     return op.testOptions.depWeight * Math.log(probTBwithSimWords(dependency));
   }
 
+  /** Goes through {@link #scoreTB(IntDependency)}, rather than the
+   *  superclass's scoring of plain ints.
+   */
+  @Override
+  public double scoreTB(int headWord, int headTag, int argWord, int argTag, boolean leftHeaded, int dist) {
+    return scoreTB(new IntDependency(headWord, headTag, argWord, argTag, leftHeaded, dist));
+  }
+
   public void setLex(Lexicon lex) {
     this.lex = lex;
   }
@@ -185,6 +185,7 @@ public class ChineseUnknownWordModel extends BaseUnknownWordModel {
    */
   @Override
   public void train(Collection<Tree> trees) {
+    countsChanged();
     if (useFirst) {
       System.err.println("ChineseUWM: treating unknown word as the average of their equivalents by first-character identity. useUnicodeType: " + useUnicodeType);
     }
@@ -26,9 +26,13 @@
 
 package edu.stanford.nlp.parser.lexparser;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import edu.stanford.nlp.io.EncodingPrintWriter;
 import edu.stanford.nlp.ling.LabeledWord;
@@ -66,6 +70,21 @@ public class EnglishUnknownWordModel extends BaseUnknownWordModel {
 
   private static final int MAX_UNKNOWN = 7;
 
+  /** The largest number of signature indices kept in each signature cache. */
+  private static final int SIGNATURE_CACHE_SIZE = 10000;
+
+  /** Recently computed signature indices, by word.  The signature of a word
+   *  depends on its sentence position only in whether it is the first word,
+   *  so there is one cache for first words and one for all the others.
+   *  A signature can also depend on which words the lexicon knows, so the
+   *  caches are only used in scoring, and train() empties them.
+   *  They are concurrent maps, so that threads parsing at once don't wait
+   *  on each other to look words up, and a cache which fills up is just
+   *  emptied.
+   */
+  private transient Map<String,Integer> initialSignatureCache;
+  private transient Map<String,Integer> signatureCache;
+
   public EnglishUnknownWordModel(Options op, Lexicon lex, Index<String> wordIndex, Index<String> tagIndex) {
     super(op, lex, wordIndex, tagIndex);
     unknownLevel = op.lexOptions.useUnknownWordSignatures;
@@ -80,6 +99,23 @@ public class EnglishUnknownWordModel extends BaseUnknownWordModel {
     this.smartMutation = op.lexOptions.smartMutation;
     this.unknownSuffixSize = op.lexOptions.unknownSuffixSize;
     this.unknownPrefixSize = op.lexOptions.unknownPrefixSize;
+    initSignatureCaches();
+  }
+
+  private void initSignatureCaches() {
+    initialSignatureCache = newSignatureCache();
+    signatureCache = newSignatureCache();
+  }
+
+  private static Map<String,Integer> newSignatureCache() {
+    return new ConcurrentHashMap<String,Integer>(1024);
+  }
+
+  private void readObject(ObjectInputStream ois)
+    throws IOException, ClassNotFoundException
+  {
+    ois.defaultReadObject();
+    initSignatureCaches();
   }
 
   /**
@@ -103,6 +139,7 @@ public class EnglishUnknownWordModel extends BaseUnknownWordModel {
   }
 
   public void train(Collection<Tree> trees, double weight, boolean keepTagsAsLabels) {
+    countsChanged();
     // Records the number of times word/tag pair was seen in training data.
     ClassicCounter<IntTaggedWord> seenCounter = new ClassicCounter<IntTaggedWord>();
 
@@ -168,6 +205,7 @@ public class EnglishUnknownWordModel extends BaseUnknownWordModel {
         }
       }
     }
+    initSignatureCaches();
     // index the possible tags for each word
     // numWords = wordIndex.size();
     // unknownWordIndex = wordIndex.indexOf(Lexicon.UNKNOWN_WORD, true);
@@ -237,14 +275,17 @@ public class EnglishUnknownWordModel extends BaseUnknownWordModel {
 
     // unknown word model for P(T|S)
 
-    int wordSig = getSignatureIndex(iTW.word, loc, word);
-    IntTaggedWord temp = new IntTaggedWord(wordSig, iTW.tag);
-    double c_TS = unSeenCounter.getCount(temp);
-    temp = new IntTaggedWord(wordSig, nullTag);
-    double c_S = unSeenCounter.getCount(temp);
-    double c_U = unSeenCounter.getCount(NULL_ITW);
-    temp = new IntTaggedWord(nullWord, iTW.tag);
-    double c_T = unSeenCounter.getCount(temp);
+    int wordSig = signatureIndex(iTW.word, loc, word, false);
+    IntTaggedWordCounts unSeenCounts = unSeenCounts();
+    double c_TS = 0.0;
+    double c_S = 0.0;
+    if (wordSig >= 0) {
+      // otherwise the signature was never seen in training
+      c_TS = unSeenCounts.getCount(wordSig, iTW.tag);
+      c_S = unSeenCounts.getCount(wordSig, nullTag);
+    }
+    double c_U = unSeenCounts.getCount(nullWord, nullTag);
+    double c_T = unSeenCounts.getCount(nullWord, iTW.tag);
 
     double p_T_U = c_T / c_U;
     if (unknownLevel == 0) {
@@ -261,8 +302,33 @@ public class EnglishUnknownWordModel extends BaseUnknownWordModel {
    */
   @Override
   public int getSignatureIndex(int index, int sentencePosition, String word) {
+    return signatureIndex(index, sentencePosition, word, true);
+  }
+
+  /**
+   * As getSignatureIndex, but if add is false, a signature which is not
+   * already in the word index is not added to it, and -1 is returned.
+   * Scoring doesn't add signatures, so that parsing doesn't change the
+   * word index, which can then be shared by threads parsing at once.
+   * Only scoring uses the signature caches, as in training the words the
+   * lexicon knows are still changing.
+   */
+  private int signatureIndex(int index, int sentencePosition, String word, boolean add) {
+    Map<String,Integer> cache = (sentencePosition == 0) ? initialSignatureCache : signatureCache;
+    if ( ! add) {
+      Integer sig = cache.get(word);
+      if (sig != null) {
+        return sig;
+      }
+    }
     String uwSig = getSignature(word, sentencePosition);
-    int sig = wordIndex.indexOf(uwSig, true);
+    int sig = wordIndex.indexOf(uwSig, add);
+    if ( ! add && sig >= 0) {
+      if (cache.size() >= SIGNATURE_CACHE_SIZE) {
+        cache.clear();
+      }
+      cache.put(word, sig);
+    }
     if (DEBUG_UWM) {
       System.err.println("Signature (" + unknownLevel + "): mapped " + word +
                          " (" + index + ") to " + uwSig + " (" + sig + ")");
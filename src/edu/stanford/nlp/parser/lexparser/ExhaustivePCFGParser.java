@@ -101,6 +101,9 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
   protected int numStates;
   protected int arraySize = 0;
 
+  /** The pooled chart that the score arrays currently belong to. */
+  private ChartPool.Chart chart;
+
   /**
    * When you want to force the parser to parse a particular
    * subsequence into a particular state.  Parses will only be made
@@ -653,47 +656,51 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
           if (end < min1) {
             continue;
           }
-          BinaryRule[] rules = bg.splitRulesWithLC(s);
-          for (BinaryRule br  : rules) {
-            float oS = oScore[start][end][br.parent];
+          int[] rightChildren = bg.splitRightChildrenWithLC(s);
+          int[] parents = bg.splitParentsWithLC(s);
+          float[] scores = bg.splitScoresWithLC(s);
+          for (int rule = 0; rule < rightChildren.length; rule++) {
+            int leftChild = s;
+            int rightChild = rightChildren[rule];
+            float oS = oScore[start][end][parents[rule]];
             if (oS == Float.NEGATIVE_INFINITY) {
               continue;
             }
-            int max1 = narrowLExtent[end][br.rightChild];
+            int max1 = narrowLExtent[end][rightChild];
             if (max1 < min1) {
               continue;
             }
             int min = min1;
             int max = max1;
             if (max - min > 2) {
-              int min2 = wideLExtent[end][br.rightChild];
+              int min2 = wideLExtent[end][rightChild];
               min = (min1 > min2 ? min1 : min2);
               if (max1 < min) {
                 continue;
               }
-              int max2 = wideRExtent[start][br.leftChild];
+              int max2 = wideRExtent[start][leftChild];
               max = (max1 < max2 ? max1 : max2);
               if (max < min) {
                 continue;
               }
             }
-            float pS = br.score;
+            float pS = scores[rule];
             for (int split = min; split <= max; split++) {
-              float lS = iScore[start][split][br.leftChild];
+              float lS = iScore[start][split][leftChild];
               if (lS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
-              float rS = iScore[split][end][br.rightChild];
+              float rS = iScore[split][end][rightChild];
               if (rS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
               float totL = pS + rS + oS;
-              if (totL > oScore[start][split][br.leftChild]) {
-                oScore[start][split][br.leftChild] = totL;
+              if (totL > oScore[start][split][leftChild]) {
+                oScore[start][split][leftChild] = totL;
               }
               float totR = pS + lS + oS;
-              if (totR > oScore[split][end][br.rightChild]) {
-                oScore[split][end][br.rightChild] = totR;
+              if (totR > oScore[split][end][rightChild]) {
+                oScore[split][end][rightChild] = totR;
               }
             }
           }
@@ -703,47 +710,51 @@ public class ExhaustivePCFGParser implements Scorer, KBestViterbiParser {
           if (max1 < start) {
             continue;
           }
-          BinaryRule[] rules = bg.splitRulesWithRC(s);
-          for (BinaryRule br : rules) {
-            float oS = oScore[start][end][br.parent];
+          int[] leftChildren = bg.splitLeftChildrenWithRC(s);
+          int[] parents = bg.splitParentsWithRC(s);
+          float[] scores = bg.splitScoresWithRC(s);
+          for (int rule = 0; rule < leftChildren.length; rule++) {
+            int leftChild = leftChildren[rule];
+            int rightChild = s;
+            float oS = oScore[start][end][parents[rule]];
             if (oS == Float.NEGATIVE_INFINITY) {
               continue;
             }
-            int min1 = narrowRExtent[start][br.leftChild];
+            int min1 = narrowRExtent[start][leftChild];
             if (max1 < min1) {
               continue;
             }
             int min = min1;
             int max = max1;
             if (max - min > 2) {
-              int min2 = wideLExtent[end][br.rightChild];
+              int min2 = wideLExtent[end][rightChild];
               min = (min1 > min2 ? min1 : min2);
               if (max1 < min) {
                 continue;
               }
-              int max2 = wideRExtent[start][br.leftChild];
+              int max2 = wideRExtent[start][leftChild];
               max = (max1 < max2 ? max1 : max2);
               if (max < min) {
                 continue;
               }
             }
-            float pS = br.score;
+            float pS = scores[rule];
             for (int split = min; split <= max; split++) {
-              float lS = iScore[start][split][br.leftChild];
+              float lS = iScore[start][split][leftChild];
               if (lS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
-              float rS = iScore[split][end][br.rightChild];
+              float rS = iScore[split][end][rightChild];
               if (rS == Float.NEGATIVE_INFINITY) {
                 continue;
               }
               float totL = pS + rS + oS;
-              if (totL > oScore[start][split][br.leftChild]) {
-                oScore[start][split][br.leftChild] = totL;
+              if (totL > oScore[start][split][leftChild]) {
+                oScore[start][split][leftChild] = totL;
               }
               float totR = pS + lS + oS;
-              if (totR > oScore[split][end][br.rightChild]) {
-                oScore[split][end][br.rightChild] = totR;
+              if (totR > oScore[split][end][rightChild]) {
+                oScore[split][end][rightChild] = totR;
               }
             }
           }
@@ -839,10 +850,12 @@ oScore[split][end][br.rightChild] = totR;
           if (!iPossibleL) {
             continue;
           }
-          BinaryRule[] leftRules = bg.splitRulesWithLC(leftState);
-          //      if (spillGuts) System.out.println("Found " + leftRules.length + " left rules for state " + stateIndex.get(leftState));
-          for (BinaryRule rule : leftRules) {
-            int rightChild = rule.rightChild;
+          int[] rightChildren = bg.splitRightChildrenWithLC(leftState);
+          int[] parents = bg.splitParentsWithLC(leftState);
+          float[] scores = bg.splitScoresWithLC(leftState);
+          //      if (spillGuts) System.out.println("Found " + rightChildren.length + " left rules for state " + stateIndex.get(leftState));
+          for (int rule = 0; rule < rightChildren.length; rule++) {
+            int rightChild = rightChildren[rule];
             int narrowL = narrowLExtent_end[rightChild];
             boolean iPossibleR = (narrowL >= narrowR); // can this right constituent fit next to the left constituent?
             if (!iPossibleR) {
@@ -859,8 +872,8 @@ oScore[split][end][br.rightChild] = totR;
             if (min > max) { // can this left constituent stretch far enough to reach the right constituent?
               continue;
             }
-            float pS = rule.score;
-            int parentState = rule.parent;
+            float pS = scores[rule];
+            int parentState = parents[rule];
             float oldIScore = iScore_start_end[parentState];
             float bestIScore = oldIScore;
             boolean foundBetter;  // always set below for this rule
@@ -908,7 +921,7 @@ oScore[split][end][br.rightChild] = totR;
                   continue;
                 }
                 float tot = pS + lS + rS;
-                if (spillGuts) { System.err.println("Rule " + rule + " over [" + start + "," + end + ") has log score " + tot + " from L[" + stateIndex.get(leftState) + "=" + leftState + "] = "+ lS  + " R[" + stateIndex.get(rightChild) + "=" + rightChild + "] =  " + rS); }
+                if (spillGuts) { System.err.println("Rule " + stateIndex.get(parents[rule]) + " -> " + stateIndex.get(leftState) + " " + stateIndex.get(rightChild) + " over [" + start + "," + end + ") has log score " + tot + " from L[" + stateIndex.get(leftState) + "=" + leftState + "] = "+ lS  + " R[" + stateIndex.get(rightChild) + "=" + rightChild + "] =  " + rS); }
                 if (tot > bestIScore) {
                   bestIScore = tot;
                 }
@@ -975,12 +988,12 @@ oScore[split][end][br.rightChild] = totR;
           if (!iPossibleR) {
             continue;
           }
-          BinaryRule[] rightRules = bg.splitRulesWithRC(rightState);
-          //      if (spillGuts) System.out.println("Found " + rightRules.length + " right rules for state " + stateIndex.get(rightState));
-          for (BinaryRule rule : rightRules) {
-            //      if (spillGuts) System.out.println("Considering rule for " + start + " to " + end + ": " + rightRules[i]);
-
-            int leftChild = rule.leftChild;
+          int[] leftChildren = bg.splitLeftChildrenWithRC(rightState);
+          int[] parents = bg.splitParentsWithRC(rightState);
+          float[] scores = bg.splitScoresWithRC(rightState);
+          //      if (spillGuts) System.out.println("Found " + leftChildren.length + " right rules for state " + stateIndex.get(rightState));
+          for (int rule = 0; rule < leftChildren.length; rule++) {
+            int leftChild = leftChildren[rule];
             int narrowR = narrowRExtent_start[leftChild];
             boolean iPossibleL = (narrowR <= narrowL);
             if (!iPossibleL) {
@@ -997,8 +1010,8 @@ oScore[split][end][br.rightChild] = totR;
             if (min > max) {
               continue;
             }
-            float pS = rule.score;
-            int parentState = rule.parent;
+            float pS = scores[rule];
+            int parentState = parents[rule];
             float oldIScore = iScore_start_end[parentState];
             float bestIScore = oldIScore;
             boolean foundBetter; // always initialized below
@@ -1180,6 +1193,31 @@ oScore[split][end][br.rightChild] = totR;
     } // for diff (i.e., span)
   } // end doInsideScores()
 
+  /** Records in the extent arrays that a constituent with the given state
+   *  has been found over [start, end) for the first time.  The arrays
+   *  passed in are the rows for end (LExtent) and start (RExtent).
+   */
+  protected static void updateExtents(int start, int end, int state,
+                                    int[] narrowLExtent_end, int[] wideLExtent_end,
+                                    int[] narrowRExtent_start, int[] wideRExtent_start) {
+    if (start > narrowLExtent_end[state]) {
+      narrowLExtent_end[state] = start;
+      wideLExtent_end[state] = start;
+    } else {
+      if (start < wideLExtent_end[state]) {
+        wideLExtent_end[state] = start;
+      }
+    }
+    if (end < narrowRExtent_start[state]) {
+      narrowRExtent_start[state] = end;
+      wideRExtent_start[state] = end;
+    } else {
+      if (end > wideRExtent_start[state]) {
+        wideRExtent_start[state] = end;
+      }
+    }
+  }
+
 
   private void initializeChart(Lattice lr) {
     for (LatticeEdge edge : lr) {
@@ -2091,7 +2129,12 @@ oScore[split][end][br.rightChild] = totR;
   public void nudgeDownArraySize() {
     try {
       if (arraySize > 2) {
-        considerCreatingArrays(arraySize - 2);
+        // drop the current chart rather than returning it to the pool, so
+        // its memory can be reclaimed; asking for an exact size also keeps
+        // the pool from handing back an idle chart as large as this one
+        chart = null;
+        clearArrays();
+        considerCreatingArrays(arraySize - 2, true);
       }
     } catch (OutOfMemoryError oome) {
       oome.printStackTrace();
@@ -2099,83 +2142,86 @@ oScore[split][end][br.rightChild] = totR;
   }
 
   private void considerCreatingArrays(int length) {
+    considerCreatingArrays(length, false);
+  }
+
+  private void considerCreatingArrays(int length, boolean exactSize) {
     if (length > op.testOptions.maxLength + 1 || length >= myMaxLength) {
       throw new OutOfMemoryError("Refusal to create such large arrays.");
     } else {
       try {
-        createArrays(length + 1);
+        createArrays(length + 1, exactSize);
       } catch (OutOfMemoryError e) {
         myMaxLength = length;
         if (arraySize > 0) {
           try {
-            createArrays(arraySize);
+            createArrays(arraySize, true);
           } catch (OutOfMemoryError e2) {
             throw new RuntimeException("CANNOT EVEN CREATE ARRAYS OF ORIGINAL SIZE!!");
           }
         }
         throw e;
       }
-      arraySize = length + 1;
+      arraySize = chart.size;
       if (op.testOptions.verbose) {
         System.err.println("Created PCFG parser arrays of size " + arraySize);
       }
     }
   }
 
+  /**
+   * Makes the chart arrays large enough for sentences of up to
+   * <code>length - 1</code> words.  The arrays are leased from the
+   * {@link ChartPool}, so they may be somewhat larger than this.
+   */
   protected void createArrays(int length) {
-    // zero out some stuff first in case we recently ran out of memory and are reallocating
+    createArrays(length, false);
+  }
+
+  private void createArrays(int length, boolean exactSize) {
+    // give back the current chart first in case we recently ran out of memory and are reallocating
     clearArrays();
 
-    int numTags = tagIndex.size();
-    // allocate just the parts of iScore and oScore used (end > start, etc.)
-    //    System.out.println("initializing iScore arrays with length " + length + " and numStates " + numStates);
-    iScore = new float[length + 1][length + 1][];
-    for (int start = 0; start <= length; start++) {
-      for (int end = start + 1; end <= length; end++) {
-        iScore[start][end] = new float[numStates];
-      }
-    }
-    //    System.out.println("finished initializing iScore arrays");
-    if (op.doDep && ! op.testOptions.useFastFactored) {
-      //      System.out.println("initializing oScore arrays with length " + length + " and numStates " + numStates);
-      oScore = new float[length + 1][length + 1][];
-      for (int start = 0; start <= length; start++) {
-        for (int end = start + 1; end <= length; end++) {
-          oScore[start][end] = new float[numStates];
-        }
-      }
-      //      System.out.println("finished initializing oScore arrays");
-    }
-    iPossibleByL = new boolean[length + 1][numStates];
-    iPossibleByR = new boolean[length + 1][numStates];
-    narrowRExtent = new int[length + 1][numStates];
-    wideRExtent = new int[length + 1][numStates];
-    narrowLExtent = new int[length + 1][numStates];
-    wideLExtent = new int[length + 1][numStates];
-    if (op.doDep && ! op.testOptions.useFastFactored) {
-      oPossibleByL = new boolean[length + 1][numStates];
-      oPossibleByR = new boolean[length + 1][numStates];
-
-      oFilteredStart = new boolean[length + 1][numStates];
-      oFilteredEnd = new boolean[length + 1][numStates];
-    }
-    tags = new boolean[length + 1][numTags];
-
-    if (op.testOptions.lengthNormalization) {
-      wordsInSpan = new int[length + 1][length + 1][];
-      for (int start = 0; start <= length; start++) {
-        for (int end = start + 1; end <= length; end++) {
-          wordsInSpan[start][end] = new int[numStates];
-        }
-      }
-    }
-    //    System.out.println("ExhaustivePCFGParser constructor finished.");
+    ChartPool.Shape shape = new ChartPool.Shape(numStates, tagIndex.size(),
+                                                op.doDep && ! op.testOptions.useFastFactored,
+                                                op.testOptions.lengthNormalization);
+    int maxSize = exactSize ? length : op.testOptions.maxLength + 2;
+    chart = ChartPool.lease(shape, length, maxSize);
+
+    iScore = chart.iScore;
+    oScore = chart.oScore;
+    wordsInSpan = chart.wordsInSpan;
+    iPossibleByL = chart.iPossibleByL;
+    iPossibleByR = chart.iPossibleByR;
+    oPossibleByL = chart.oPossibleByL;
+    oPossibleByR = chart.oPossibleByR;
+    oFilteredStart = chart.oFilteredStart;
+    oFilteredEnd = chart.oFilteredEnd;
+    narrowRExtent = chart.narrowRExtent;
+    wideRExtent = chart.wideRExtent;
+    narrowLExtent = chart.narrowLExtent;
+    wideLExtent = chart.wideLExtent;
+    tags = chart.tags;
   }
 
   private void clearArrays() {
+    ChartPool.release(chart);
+    chart = null;
     iScore = oScore = null;
+    wordsInSpan = null;
     iPossibleByL = iPossibleByR = oFilteredEnd = oFilteredStart = oPossibleByL = oPossibleByR = tags = null;
     narrowRExtent = wideRExtent = narrowLExtent = wideLExtent = null;
   }
 
+  /**
+   * Gives the chart arrays back to the shared {@link ChartPool}, so that
+   * other parsers can use them.  Call this when done with the results of
+   * a parse.  The parser may still be used for further parses afterwards,
+   * but the scores and parses of the last sentence are no longer available.
+   */
+  public void releaseArrays() {
+    clearArrays();
+    arraySize = 0;
+  }
+
 } // end class ExhaustivePCFGParser
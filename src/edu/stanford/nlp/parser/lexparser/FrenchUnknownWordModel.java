@@ -41,6 +41,7 @@ public class FrenchUnknownWordModel extends BaseUnknownWordModel {
 
 
   private void train(Collection<Tree> trees, double weight, boolean keepTagsAsLabels) {
+    countsChanged();
     ClassicCounter<IntTaggedWord> seenCounter = new ClassicCounter<IntTaggedWord>();
 
     int tNum = 0;
@@ -123,14 +124,18 @@ public class FrenchUnknownWordModel extends BaseUnknownWordModel {
 
     //  unknown word model for P(T|S)
 
-    int wordSig = getSignatureIndex(iTW.word, loc, word);
-    IntTaggedWord temp = new IntTaggedWord(wordSig, iTW.tag);
-    double c_TS = unSeenCounter.getCount(temp);
-    temp = new IntTaggedWord(wordSig, nullTag);
-    double c_S = unSeenCounter.getCount(temp);
-    double c_U = unSeenCounter.getCount(NULL_ITW);
-    temp = new IntTaggedWord(nullWord, iTW.tag);
-    double c_T = unSeenCounter.getCount(temp);
+    // a signature not in the word index was never seen in training, and
+    // isn't added, so that parsing doesn't change the word index
+    int wordSig = wordIndex.indexOf(getSignature(word, loc));
+    IntTaggedWordCounts unSeenCounts = unSeenCounts();
+    double c_TS = 0.0;
+    double c_S = 0.0;
+    if (wordSig >= 0) {
+      c_TS = unSeenCounts.getCount(wordSig, iTW.tag);
+      c_S = unSeenCounts.getCount(wordSig, nullTag);
+    }
+    double c_U = unSeenCounts.getCount(nullWord, nullTag);
+    double c_T = unSeenCounts.getCount(nullWord, iTW.tag);
 
     double p_T_U = c_T / c_U;
 
@@ -6,137 +6,107 @@ import java.util.*;
  * A HookChart is a chart data structure designed for use with the efficient
  * O(n^4) chart parsing mechanisms targetted at lexicalized parsing, which
  * were introduced by Eisner and Satta.
+ * <p>
+ * The edges and hooks are indexed by state, head, tag and one end of their
+ * span, which are packed into a pair of longs and looked up in
+ * {@link PackedKeyTable}s.  A chart can be {@link #clear cleared} and
+ * reused for the next sentence, keeping its tables and lists.
  *
  * @author Dan Klein
  */
 class HookChart {
 
-  private Map<ChartIndex,List<Hook>> registeredPreHooks = new HashMap<ChartIndex,List<Hook>>();
-  private Map<ChartIndex,List<Hook>> registeredPostHooks = new HashMap<ChartIndex,List<Hook>>();
-  private Map<ChartIndex,List<Edge>> registeredEdgesByLeftIndex = new HashMap<ChartIndex,List<Edge>>();
-  private Map<ChartIndex,List<Edge>> registeredEdgesByRightIndex = new HashMap<ChartIndex,List<Edge>>();
-
-  private Map<WeakChartIndex,List<Edge>> realEdgesByL = new HashMap<WeakChartIndex,List<Edge>>();
-  private Map<WeakChartIndex,List<Edge>> realEdgesByR = new HashMap<WeakChartIndex,List<Edge>>();
-  private Set<ChartIndex> builtLIndexes = new HashSet<ChartIndex>();
-  private Set<ChartIndex> builtRIndexes = new HashSet<ChartIndex>();
-
-  private Interner interner = new Interner();
-
-  private static class ChartIndex {
-    public int state;
-    public int head;
-    public int tag;
-    public int loc;  // either the start or end of an edge
-
-    @Override
-    public int hashCode() {
-      return state ^ (head << 8) ^ (tag << 16) ^ (loc << 24);
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o instanceof ChartIndex) {
-        ChartIndex ci = (ChartIndex) o;
-        return state == ci.state && head == ci.head && tag == ci.tag && loc == ci.loc;
+  private final ListIndex<Hook> registeredPreHooks = new ListIndex<Hook>();
+  private final ListIndex<Hook> registeredPostHooks = new ListIndex<Hook>();
+  private final ListIndex<Edge> registeredEdgesByLeftIndex = new ListIndex<Edge>();
+  private final ListIndex<Edge> registeredEdgesByRightIndex = new ListIndex<Edge>();
+
+  private final ListIndex<Edge> realEdgesByL = new ListIndex<Edge>();
+  private final ListIndex<Edge> realEdgesByR = new ListIndex<Edge>();
+  private final PackedKeyTable builtLIndexes = new PackedKeyTable();
+  private final PackedKeyTable builtRIndexes = new PackedKeyTable();
+
+  /**
+   * A map from packed keys to lists of items, which keeps its lists for
+   * reuse when it is cleared.
+   */
+  private static class ListIndex<V> {
+
+    private final PackedKeyTable table = new PackedKeyTable();
+    private final List<List<V>> lists = new ArrayList<List<V>>();
+    private int numLists; // = 0;
+
+    public List<V> get(long key1, long key2) {
+      int i = table.get(key1, key2);
+      return i < 0 ? null : lists.get(i);
+    }
+
+    public void add(long key1, long key2, V item) {
+      int i = table.putIfAbsent(key1, key2, numLists);
+      if (i < 0) {
+        i = numLists++;
+        if (i == lists.size()) {
+          // make default size small: many only ever contain 1 or 2 items
+          lists.add(new ArrayList<V>(3));
+        }
       }
-      return false;
+      lists.get(i).add(item);
     }
 
-  } // end class ChartIndex
-
-  private static class WeakChartIndex {
-    public int state;
-    public int loc;  // either the start or end of an edge
-
-    @Override
-    public int hashCode() {
-      return state ^ (loc << 16);
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
+    public void clear() {
+      for (int i = 0; i < numLists; i++) {
+        lists.get(i).clear();
       }
-      if (o instanceof WeakChartIndex) {
-        WeakChartIndex ci = (WeakChartIndex) o;
-        return state == ci.state && loc == ci.loc;
-      }
-      return false;
+      numLists = 0;
+      table.clear();
     }
-  }
+
+  } // end class ListIndex
 
 
   private static final Collection<Edge> empty = Collections.emptyList();
   private static final Collection<Hook> emptyHooks = Collections.emptyList();
 
-  private ChartIndex tempIndex = new ChartIndex(); // used in many methods to decrease new's
-  private WeakChartIndex tempWeakIndex = new WeakChartIndex();  // used to decrease new's
+  /** The key for a head, tag and one end of a span.  The state is the
+   *  other key; real edges are indexed by just a state and an end.
+   */
+  private static long key(int head, int tag, int loc) {
+    return PackedKeyTable.pack(0, head, tag, loc);
+  }
+
 
+  /** Empties the chart, so it can be used for another sentence. */
+  public void clear() {
+    registeredPreHooks.clear();
+    registeredPostHooks.clear();
+    registeredEdgesByLeftIndex.clear();
+    registeredEdgesByRightIndex.clear();
+    realEdgesByL.clear();
+    realEdgesByR.clear();
+    builtLIndexes.clear();
+    builtRIndexes.clear();
+  }
 
   public void registerEdgeIndexes(Edge edge) {
-    tempIndex.state = edge.state;
-    tempIndex.head = edge.head;
-    tempIndex.tag = edge.tag;
-    tempIndex.loc = edge.start;
-    ChartIndex index = (ChartIndex) interner.intern(tempIndex);
-    builtLIndexes.add(index);
-    if (index == tempIndex) {
-      tempIndex = new ChartIndex();
-      tempIndex.state = edge.state;
-      tempIndex.head = edge.head;
-      tempIndex.tag = edge.tag;
-    }
-    //System.out.println("Edge registered: "+edge);
-    tempIndex.loc = edge.end;
-    index = (ChartIndex) interner.intern(tempIndex);
-    if (index == tempIndex) {
-      tempIndex = new ChartIndex();
-    }
-    builtRIndexes.add(index);
+    builtLIndexes.putIfAbsent(edge.state, key(edge.head, edge.tag, edge.start), 0);
+    builtRIndexes.putIfAbsent(edge.state, key(edge.head, edge.tag, edge.end), 0);
   }
 
   public void registerRealEdge(Edge edge) {
-    tempWeakIndex.state = edge.state;
-    tempWeakIndex.loc = edge.start;
-    WeakChartIndex index = (WeakChartIndex) interner.intern(tempWeakIndex);
-    insert(realEdgesByL, index, edge);
-    if (index == tempWeakIndex) {
-      tempWeakIndex = new WeakChartIndex();
-      tempWeakIndex.state = edge.state;
-    }
-    tempWeakIndex.loc = edge.end;
-    index = (WeakChartIndex) interner.intern(tempWeakIndex);
-    insert(realEdgesByR, index, edge);
-    if (index == tempWeakIndex) {
-      tempWeakIndex = new WeakChartIndex();
-    }
+    realEdgesByL.add(edge.state, edge.start, edge);
+    realEdgesByR.add(edge.state, edge.end, edge);
   }
 
   public boolean isBuiltL(int state, int start, int head, int tag) {
-    tempIndex.state = state;
-    tempIndex.head = head;
-    tempIndex.tag = tag;
-    tempIndex.loc = start;
-    return builtLIndexes.contains(tempIndex);
+    return builtLIndexes.get(state, key(head, tag, start)) >= 0;
   }
 
   public boolean isBuiltR(int state, int end, int head, int tag) {
-    tempIndex.state = state;
-    tempIndex.head = head;
-    tempIndex.tag = tag;
-    tempIndex.loc = end;
-    return builtRIndexes.contains(tempIndex);
+    return builtRIndexes.get(state, key(head, tag, end)) >= 0;
   }
 
   public Collection<Edge> getRealEdgesWithL(int state, int start) {
-    tempWeakIndex.state = state;
-    tempWeakIndex.loc = start;
-    Collection<Edge> edges = realEdgesByL.get(tempWeakIndex);
+    Collection<Edge> edges = realEdgesByL.get(state, start);
     if (edges == null) {
       return empty;
     }
@@ -144,9 +114,7 @@ class HookChart {
   }
 
   public Collection<Edge> getRealEdgesWithR(int state, int end) {
-    tempWeakIndex.state = state;
-    tempWeakIndex.loc = end;
-    Collection<Edge> edges = realEdgesByR.get(tempWeakIndex);
+    Collection<Edge> edges = realEdgesByR.get(state, end);
     if (edges == null) {
       return empty;
     }
@@ -154,11 +122,7 @@ class HookChart {
   }
 
   public Collection<Hook> getPreHooks(Edge edge) {
-    tempIndex.state = edge.state;
-    tempIndex.head = edge.head;
-    tempIndex.tag = edge.tag;
-    tempIndex.loc = edge.end;
-    Collection<Hook> result = registeredPreHooks.get(tempIndex);
+    Collection<Hook> result = registeredPreHooks.get(edge.state, key(edge.head, edge.tag, edge.end));
     if (result == null) {
       result = emptyHooks;
     }
@@ -167,11 +131,7 @@ class HookChart {
   }
 
   public Collection<Hook> getPostHooks(Edge edge) {
-    tempIndex.state = edge.state;
-    tempIndex.head = edge.head;
-    tempIndex.tag = edge.tag;
-    tempIndex.loc = edge.start;
-    Collection<Hook> result = registeredPostHooks.get(tempIndex);
+    Collection<Hook> result = registeredPostHooks.get(edge.state, key(edge.head, edge.tag, edge.start));
     if (result == null) {
       result = emptyHooks;
     }
@@ -180,16 +140,11 @@ class HookChart {
   }
 
   public Collection<Edge> getEdges(Hook hook) {
-    tempIndex.state = hook.subState;
-    tempIndex.head = hook.head;
-    tempIndex.tag = hook.tag;
     Collection<Edge> result;
     if (hook.isPreHook()) {
-      tempIndex.loc = hook.start;
-      result = registeredEdgesByRightIndex.get(tempIndex);
+      result = registeredEdgesByRightIndex.get(hook.subState, key(hook.head, hook.tag, hook.start));
     } else {
-      tempIndex.loc = hook.end;
-      result = registeredEdgesByLeftIndex.get(tempIndex);
+      result = registeredEdgesByLeftIndex.get(hook.subState, key(hook.head, hook.tag, hook.end));
     }
     if (result == null) {
       result = empty;
@@ -198,57 +153,16 @@ class HookChart {
     return result;
   }
 
-  // This hacks up a CollectionValuedMap.  Maybe convert to using that class?
-  private static <K,V> void insert(Map<K,List<V>> map, K index, V item) {
-    List<V> list = map.get(index);
-    if (list == null) {
-      // make default size small: many only ever contain 1 or 2 items
-      list = new ArrayList<V>(3);
-      map.put(index, list);
-    }
-    list.add(item);
-    // System.err.println("#### HookChart list length is " + list.size());
-  }
-
-
   public void addEdge(Edge edge) {
-    tempIndex.state = edge.state;
-    tempIndex.head = edge.head;
-    tempIndex.tag = edge.tag;
-    // left index
-    tempIndex.loc = edge.start;
-    ChartIndex index = (ChartIndex) interner.intern(tempIndex);
-    insert(registeredEdgesByLeftIndex, index, edge);
-    if (index == tempIndex) {
-      tempIndex = new ChartIndex();
-      tempIndex.state = edge.state;
-      tempIndex.head = edge.head;
-      tempIndex.tag = edge.tag;
-    }
-    tempIndex.loc = edge.end;
-    index = (ChartIndex) interner.intern(tempIndex);
-    insert(registeredEdgesByRightIndex, index, edge);
-    if (index == tempIndex) {
-      tempIndex = new ChartIndex();
-    }
+    registeredEdgesByLeftIndex.add(edge.state, key(edge.head, edge.tag, edge.start), edge);
+    registeredEdgesByRightIndex.add(edge.state, key(edge.head, edge.tag, edge.end), edge);
   }
 
   public void addHook(Hook hook) {
-    Map<ChartIndex,List<Hook>> map;
-    tempIndex.state = hook.subState;
-    tempIndex.head = hook.head;
-    tempIndex.tag = hook.tag;
     if (hook.isPreHook()) {
-      tempIndex.loc = hook.start;
-      map = registeredPreHooks;
+      registeredPreHooks.add(hook.subState, key(hook.head, hook.tag, hook.start), hook);
     } else {
-      tempIndex.loc = hook.end;
-      map = registeredPostHooks;
-    }
-    ChartIndex index = (ChartIndex) interner.intern(tempIndex);
-    insert(map, index, hook);
-    if (index == tempIndex) {
-      tempIndex = new ChartIndex();
+      registeredPostHooks.add(hook.subState, key(hook.head, hook.tag, hook.end), hook);
     }
   }
 
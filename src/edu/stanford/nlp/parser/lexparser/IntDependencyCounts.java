@@ -0,0 +1,94 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * A read-only copy of a <code>Counter&lt;IntDependency&gt;</code> for fast
+ * lookup while parsing.
+ * <p>
+ * The dependency grammar looks up over a dozen backed-off counts for each
+ * dependency it scores, and in a <code>ClassicCounter</code> each lookup
+ * means building an <code>IntDependency</code> and two
+ * <code>IntTaggedWord</code>s and hashing them into a <code>HashMap</code>.
+ * Here, a dependency is packed into two <code>long</code>s, one for the
+ * head word, head tag and direction and one for the argument word,
+ * argument tag and distance, and looked up in an open-addressing hash
+ * table of primitive arrays, so a lookup allocates nothing.  Words and tags
+ * may be the special negative values of <code>IntTaggedWord</code>.
+ * <p>
+ * Since it is never changed after construction, an instance may be shared
+ * between threads.  It is a snapshot: later changes to the counter it was
+ * built from are not seen.
+ */
+class IntDependencyCounts {
+
+  /** Marks an empty slot.  No head, tag and direction packs to this value. */
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private final long[] headKeys;
+  private final long[] argKeys;
+  private final double[] counts;
+  private final int mask;
+
+
+  IntDependencyCounts(Counter<IntDependency> counter) {
+    int capacity = 4;
+    while (capacity < counter.size() * 2) {
+      capacity <<= 1;
+    }
+    headKeys = new long[capacity];
+    argKeys = new long[capacity];
+    counts = new double[capacity];
+    mask = capacity - 1;
+    Arrays.fill(headKeys, EMPTY);
+    for (IntDependency dep : counter.keySet()) {
+      long headKey = packHead(dep.head.word, dep.head.tag, dep.leftHeaded);
+      long argKey = packArg(dep.arg.word, dep.arg.tag, dep.distance);
+      int slot = slot(headKey, argKey);
+      while (headKeys[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      headKeys[slot] = headKey;
+      argKeys[slot] = argKey;
+      counts[slot] = counter.getCount(dep);
+    }
+  }
+
+  /** Returns the count of the given dependency, or 0.0 if it was not in
+   *  the counter.  The tags and distance are taken as shorts, as an
+   *  <code>IntDependency</code> stores them.
+   */
+  double getCount(int headWord, int headTag, int argWord, int argTag, boolean leftHeaded, int distance) {
+    long headKey = packHead(headWord, (short) headTag, leftHeaded);
+    long argKey = packArg(argWord, (short) argTag, (short) distance);
+    int slot = slot(headKey, argKey);
+    long k;
+    while ((k = headKeys[slot]) != EMPTY) {
+      if (k == headKey && argKeys[slot] == argKey) {
+        return counts[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return 0.0;
+  }
+
+  private static long packHead(int word, short tag, boolean leftHeaded) {
+    return ((long) word << 32) | ((tag & 0xffffL) << 16) | (leftHeaded ? 1L : 0L);
+  }
+
+  private static long packArg(int word, short tag, short distance) {
+    return ((long) word << 32) | ((tag & 0xffffL) << 16) | (distance & 0xffffL);
+  }
+
+  private int slot(long headKey, long argKey) {
+    // spread the bits, since word and tag numbers are small and dense
+    long key = headKey * 0x9e3779b97f4a7c15L + argKey;
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+}
@@ -0,0 +1,85 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+import edu.stanford.nlp.stats.Counter;
+
+/**
+ * A read-only copy of a <code>Counter&lt;IntTaggedWord&gt;</code> for fast
+ * lookup while parsing.
+ * <p>
+ * Looking up a count in a <code>ClassicCounter</code> means building an
+ * <code>IntTaggedWord</code> and hashing it into a <code>HashMap</code>;
+ * the lexicon does this half a dozen times for every word and tag it
+ * scores.  Here, each (word, tag) pair is packed into a <code>long</code>
+ * and looked up in an open-addressing hash table of primitive arrays, so
+ * a lookup allocates nothing.  Either the word or the tag may be the
+ * wildcard value -1, as in <code>IntTaggedWord</code>.
+ * <p>
+ * Since it is never changed after construction, an instance may be shared
+ * between threads.  It is a snapshot: later changes to the counter it was
+ * built from are not seen.
+ */
+class IntTaggedWordCounts {
+
+  /** Marks an empty slot.  No (word, tag) pair packs to this value. */
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private final long[] keys;
+  private final double[] counts;
+  private final int mask;
+
+
+  IntTaggedWordCounts(Counter<IntTaggedWord> counter) {
+    int capacity = 4;
+    while (capacity < counter.size() * 2) {
+      capacity <<= 1;
+    }
+    keys = new long[capacity];
+    counts = new double[capacity];
+    mask = capacity - 1;
+    Arrays.fill(keys, EMPTY);
+    for (IntTaggedWord itw : counter.keySet()) {
+      long key = pack(itw.word, itw.tag);
+      int slot = slot(key);
+      while (keys[slot] != EMPTY) {
+        slot = (slot + 1) & mask;
+      }
+      keys[slot] = key;
+      counts[slot] = counter.getCount(itw);
+    }
+  }
+
+  /** Returns the count of the given (word, tag) pair, or 0.0 if it was
+   *  not in the counter.
+   */
+  double getCount(int word, int tag) {
+    long key = pack(word, tag);
+    int slot = slot(key);
+    long k;
+    while ((k = keys[slot]) != EMPTY) {
+      if (k == key) {
+        return counts[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return 0.0;
+  }
+
+  double getCount(IntTaggedWord itw) {
+    return getCount(itw.word, itw.tag);
+  }
+
+  private static long pack(int word, int tag) {
+    return ((long) word << 32) | (tag & 0xffffffffL);
+  }
+
+  private int slot(long key) {
+    // spread the bits, since word and tag numbers are small and dense
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+}
@@ -17,6 +17,9 @@ abstract public class Item implements Scored {
   public Edge backEdge;
   public double iScore = Double.NEGATIVE_INFINITY;
   public double oScore = Double.NEGATIVE_INFINITY;
+
+  /** Where this item is in an {@link ItemAgenda}, or -1 if it isn't in one. */
+  int agendaIndex = -1;
   
   private final boolean exhaustiveTest;
 
@@ -0,0 +1,169 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.stanford.nlp.util.Heap;
+import edu.stanford.nlp.util.ScoredComparator;
+
+/**
+ * The agenda of a {@link BiLexPCFGParser}: a heap of parse items with the
+ * best scoring item on top.
+ * <p>
+ * It orders items exactly as an <code>ArrayHeap</code> with
+ * <code>ScoredComparator.DESCENDING_COMPARATOR</code> would, including
+ * among items of equal score, but each item records its own position in
+ * the heap and the heap keeps the items' scores in a <code>double</code>
+ * array, so that adding an item or decreasing its key needs no hash
+ * lookup and comparisons need no calls to <code>score()</code>.  An item
+ * may therefore be in only one agenda at a time, and, as with
+ * <code>ArrayHeap</code>, its key must only be changed by calling
+ * {@link #decreaseKey} after changing its score.  Adding an item which is
+ * already on the agenda acts as a decrease key.
+ */
+class ItemAgenda implements Heap<Item> {
+
+  private Item[] items = new Item[256];
+  private double[] scores = new double[256];
+  private int size; // = 0;
+
+
+  public Item extractMin() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    Item min = items[0];
+    int last = size - 1;
+    if (last > 0) {
+      place(items[last], scores[last], 0);
+      items[last] = null;
+      size--;
+      heapifyDown(0);
+    } else {
+      items[0] = null;
+      size = 0;
+    }
+    min.agendaIndex = -1;
+    return min;
+  }
+
+  public Item min() {
+    if (size == 0) {
+      throw new NoSuchElementException();
+    }
+    return items[0];
+  }
+
+  public boolean add(Item item) {
+    decreaseKey(item);
+    return true;
+  }
+
+  /**
+   * Moves the item up the heap after its score has improved, or adds it
+   * if it is not on the agenda.  If its score has got worse, the item is
+   * not moved down.
+   *
+   * @return The number of places the item moved up
+   */
+  public int decreaseKey(Item item) {
+    int index = item.agendaIndex;
+    if (index < 0) {
+      if (size == items.length) {
+        grow();
+      }
+      index = size++;
+      items[index] = item;
+      item.agendaIndex = index;
+    }
+    scores[index] = item.score();
+    return heapifyUp(index);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the items on the agenda, best first, without changing it. */
+  public Iterator<Item> iterator() {
+    List<Item> list = new ArrayList<Item>(size);
+    for (int i = 0; i < size; i++) {
+      list.add(items[i]);
+    }
+    Collections.sort(list, ScoredComparator.DESCENDING_COMPARATOR);
+    return list.iterator();
+  }
+
+  /** Empties the agenda, keeping its arrays for the next sentence. */
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      items[i].agendaIndex = -1;
+      items[i] = null;
+    }
+    size = 0;
+  }
+
+  private void place(Item item, double score, int index) {
+    items[index] = item;
+    scores[index] = score;
+    item.agendaIndex = index;
+  }
+
+  private int heapifyUp(int index) {
+    Item item = items[index];
+    double score = scores[index];
+    int numSwaps = 0;
+    while (index > 0) {
+      int parent = (index - 1) / 2;
+      if ( ! (score > scores[parent])) {
+        break;
+      }
+      place(items[parent], scores[parent], index);
+      index = parent;
+      numSwaps++;
+    }
+    place(item, score, index);
+    return numSwaps;
+  }
+
+  private void heapifyDown(int index) {
+    Item item = items[index];
+    double score = scores[index];
+    while (true) {
+      int best = index;
+      double bestScore = score;
+      int left = index * 2 + 1;
+      if (left < size && bestScore < scores[left]) {
+        best = left;
+        bestScore = scores[left];
+      }
+      int right = left + 1;
+      if (right < size && bestScore < scores[right]) {
+        best = right;
+      }
+      if (best == index) {
+        break;
+      }
+      place(items[best], scores[best], index);
+      index = best;
+    }
+    place(item, score, index);
+  }
+
+  private void grow() {
+    Item[] newItems = new Item[items.length * 2];
+    System.arraycopy(items, 0, newItems, 0, size);
+    items = newItems;
+    double[] newScores = new double[scores.length * 2];
+    System.arraycopy(scores, 0, newScores, 0, size);
+    scores = newScores;
+  }
+
+}
@@ -0,0 +1,154 @@
+package edu.stanford.nlp.parser.lexparser;
+
+/**
+ * The edges and hooks built by a {@link BiLexPCFGParser} for one sentence,
+ * with one copy of each distinct item.  This does the job an
+ * <code>Interner</code> used to: {@link #find} returns the item already
+ * built with the same span, state, head and tag (and substate, for hooks),
+ * and {@link #add} stores a copy of a new one.
+ * <p>
+ * An item is found by packing its fields into two longs and looking them
+ * up in a {@link PackedKeyTable}, so no key objects are made.  The items
+ * themselves are kept in slabs, and {@link #clear} lets the next sentence
+ * reuse the same <code>Edge</code> and <code>Hook</code> objects rather
+ * than allocating new ones, so an item from one sentence must not be used
+ * once the pool has been cleared for the next.  Sentence positions and
+ * tag numbers are packed in 16 bits each.
+ */
+class ItemPool {
+
+  private final boolean exhaustiveTest;
+
+  private final PackedKeyTable edgeIndex = new PackedKeyTable();
+  private final PackedKeyTable hookIndex = new PackedKeyTable();
+
+  private Edge[] edges = new Edge[256];
+  private int numEdges; // = 0;
+  private Hook[] hooks = new Hook[256];
+  private int numHooks; // = 0;
+
+
+  ItemPool(boolean exhaustiveTest) {
+    this.exhaustiveTest = exhaustiveTest;
+  }
+
+  /** Whether the items of this pool score themselves by inside score only. */
+  boolean exhaustiveTest() {
+    return exhaustiveTest;
+  }
+
+  /** Returns the stored edge equal to the given one, or null if there is none. */
+  Edge find(Edge edge) {
+    int i = edgeIndex.get(edge.state, key(edge));
+    return i < 0 ? null : edges[i];
+  }
+
+  /** Returns the stored hook equal to the given one, or null if there is none. */
+  Hook find(Hook hook) {
+    int i = hookIndex.get(key(hook.state, hook.subState), key(hook));
+    return i < 0 ? null : hooks[i];
+  }
+
+  /**
+   * Stores a copy of an edge which is not yet in the pool, and returns
+   * the copy.  The copy is not on any agenda.
+   */
+  Edge add(Edge edge) {
+    if (numEdges == edges.length) {
+      Edge[] newEdges = new Edge[edges.length * 2];
+      System.arraycopy(edges, 0, newEdges, 0, numEdges);
+      edges = newEdges;
+    }
+    Edge copy = edges[numEdges];
+    if (copy == null) {
+      copy = new Edge(exhaustiveTest);
+      edges[numEdges] = copy;
+    }
+    copyItem(edge, copy);
+    copy.backHook = edge.backHook;
+    edgeIndex.putIfAbsent(edge.state, key(edge), numEdges);
+    numEdges++;
+    return copy;
+  }
+
+  /**
+   * Stores a copy of a hook which is not yet in the pool, and returns
+   * the copy.  The copy is not on any agenda.
+   */
+  Hook add(Hook hook) {
+    Hook copy = copy(hook);
+    hookIndex.putIfAbsent(key(hook.state, hook.subState), key(hook), numHooks - 1);
+    return copy;
+  }
+
+  /**
+   * Returns a copy of a hook from the pool without recording it, for
+   * parsers which don't merge equal hooks.
+   */
+  Hook copy(Hook hook) {
+    if (numHooks == hooks.length) {
+      Hook[] newHooks = new Hook[hooks.length * 2];
+      System.arraycopy(hooks, 0, newHooks, 0, numHooks);
+      hooks = newHooks;
+    }
+    Hook copy = hooks[numHooks];
+    if (copy == null) {
+      copy = new Hook(exhaustiveTest);
+      hooks[numHooks] = copy;
+    }
+    copyItem(hook, copy);
+    copy.subState = hook.subState;
+    numHooks++;
+    return copy;
+  }
+
+  /**
+   * Returns the stored item equal to the given edge or hook, storing a
+   * copy of it if there is none.
+   */
+  Item intern(Item item) {
+    if (item.isEdge()) {
+      Edge edge = find((Edge) item);
+      return edge == null ? add((Edge) item) : edge;
+    } else {
+      Hook hook = find((Hook) item);
+      return hook == null ? add((Hook) item) : hook;
+    }
+  }
+
+  int size() {
+    return numEdges + numHooks;
+  }
+
+  /**
+   * Forgets all the items so that their objects can be reused.  The
+   * slabs are kept at their size.
+   */
+  void clear() {
+    numEdges = 0;
+    numHooks = 0;
+    edgeIndex.clear();
+    hookIndex.clear();
+  }
+
+  private static void copyItem(Item from, Item to) {
+    to.start = from.start;
+    to.end = from.end;
+    to.state = from.state;
+    to.head = from.head;
+    to.tag = from.tag;
+    to.backEdge = from.backEdge;
+    to.iScore = from.iScore;
+    to.oScore = from.oScore;
+    to.agendaIndex = -1;
+  }
+
+  private static long key(Item item) {
+    return PackedKeyTable.pack(item.start, item.end, item.head, item.tag);
+  }
+
+  private static long key(int state, int subState) {
+    return ((long) state << 32) | (subState & 0xffffffffL);
+  }
+
+}
@@ -171,7 +171,7 @@ public class LexicalizedParser implements Function<Object,Tree> {
     if (isTextGrammar) {
       pd = getParserDataFromTextFile(parserFileOrUrl, op);
     } else {
-      pd = getParserDataFromSerializedFile(parserFileOrUrl);
+      pd = getParserDataFromFile(parserFileOrUrl, op);
       this.op = pd.pt;
     }
     makeParsers();
@@ -276,8 +276,21 @@ public class LexicalizedParser implements Function<Object,Tree> {
       throw new IllegalArgumentException("Can only parse Sentence/List/String");
     }
 
+    LexicalizedParserQuery pq = new LexicalizedParserQuery(this);
+    try {
+      return parseWithFallback(pq, lst);
+    } finally {
+      pq.releaseArrays();
+    }
+  }
+
+  /**
+   * Parses a sentence with the given query, returning the same trivial
+   * (X ...) tree as {@link #apply} if parsing fails or throws.
+   * The query may be reused for further sentences afterwards.
+   */
+  Tree parseWithFallback(LexicalizedParserQuery pq, List<? extends HasWord> lst) {
     try {
-      LexicalizedParserQuery pq = new LexicalizedParserQuery(this);
       if (pq.parse(lst)) {
         Tree bestparse = pq.getBestParse();
         // -10000 denotes unknown words
@@ -311,10 +324,14 @@ public class LexicalizedParser implements Function<Object,Tree> {
 
   public Tree parseTree(List<? extends HasWord> sentence) {
     LexicalizedParserQuery pq = new LexicalizedParserQuery(this);
-    if (pq.parse(sentence)) {
-      return pq.getBestParse();
-    } else {
-      return null;
+    try {
+      if (pq.parse(sentence)) {
+        return pq.getBestParse();
+      } else {
+        return null;
+      }
+    } finally {
+      pq.releaseArrays();
     }
   }
 
@@ -322,7 +339,29 @@ public class LexicalizedParser implements Function<Object,Tree> {
     return new LexicalizedParserQuery(this);
   }
 
+  /**
+   * Parses a list of sentences using several threads, which all share
+   * this parser's grammar.  The trees are returned in the order of the
+   * input sentences; sentences that cannot be parsed are given the
+   * trivial (X ...) tree, as in {@link #apply}.
+   *
+   * @param sentences The sentences to parse
+   * @param threads The number of threads to parse with
+   * @return A list of trees, one per input sentence
+   */
+  public List<Tree> parseAll(List<? extends List<? extends HasWord>> sentences, int threads) {
+    ParallelLexicalizedParser parallel = new ParallelLexicalizedParser(this, threads);
+    try {
+      return parallel.parseAll(sentences);
+    } finally {
+      parallel.shutdown();
+    }
+  }
+
   public static ParserData getParserDataFromFile(String parserFileOrUrl, Options op) {
+    if (ParserDataBinaryFormat.isBinaryFile(parserFileOrUrl)) {
+      return ParserDataBinaryFormat.load(parserFileOrUrl);
+    }
     ParserData pd = getParserDataFromSerializedFile(parserFileOrUrl);
     if (pd == null) {
       pd = getParserDataFromTextFile(parserFileOrUrl, op);
@@ -602,6 +641,12 @@ public class LexicalizedParser implements Function<Object,Tree> {
     }
     List<Tree> binaryTrainTrees = new ArrayList<Tree>();
     List<Tree> binaryTuneTrees = new ArrayList<Tree>();
+    ParallelTrainer parallel = null;
+    TreeTransformer trainTransformer = null;
+    if (op.trainOptions.trainingThreads > 1 && canBinarizeInParallel(op)) {
+      parallel = new ParallelTrainer(op.trainOptions.trainingThreads);
+      trainTransformer = trainTreeTransformer(collinsPuncTransformer, binarizer);
+    }
 
     if (op.trainOptions.selectiveSplit) {
       op.trainOptions.splitters = ParentAnnotationStats.getSplitCategories(trainTreebank, op.trainOptions.tagSelectiveSplit, 0, op.trainOptions.selectiveSplitCutOff, op.trainOptions.tagSelectiveSplitCutOff, tlp);
@@ -626,24 +671,39 @@ public class LexicalizedParser implements Function<Object,Tree> {
       int ptt = op.trainOptions.printTreeTransformations;
       op.trainOptions.printTreeTransformations = 0;
       binarizer.setDoSelectiveSplit(false);
-      for (Tree tree : trainTreebank) {
-        if (op.trainOptions.collinsPunc) {
-          tree = collinsPuncTransformer.transformTree(tree);
+      if (parallel != null) {
+        parallel.transformTrees(trainTreebank, trainTransformer, null);
+      } else {
+        for (Tree tree : trainTreebank) {
+          if (op.trainOptions.collinsPunc) {
+            tree = collinsPuncTransformer.transformTree(tree);
+          }
+          binarizer.transformTree(tree);
         }
-        binarizer.transformTree(tree);
       }
       binarizer.setDoSelectiveSplit(true);
       op.trainOptions.printTreeTransformations = ptt;
     }
     // we've done all the setup now. here's where the train treebank is transformed.
-    for (Tree tree : trainTreebank) {
-      if (op.trainOptions.collinsPunc) {
-        tree = collinsPuncTransformer.transformTree(tree);
+    if (parallel != null) {
+      List<Tree> transformed = new ArrayList<Tree>();
+      parallel.transformTrees(trainTreebank, trainTransformer, transformed);
+      for (Tree tree : transformed) {
+        if (tree.yield().size() - 1 <= op.trainOptions.trainLengthLimit) {
+          // TEG: have to subtract off the boundary symbol!
+          binaryTrainTrees.add(tree);
+        }
       }
-      tree = binarizer.transformTree(tree);
-      if (tree.yield().size() - 1 <= op.trainOptions.trainLengthLimit) {
-        // TEG: have to subtract off the boundary symbol!
-        binaryTrainTrees.add(tree);
+    } else {
+      for (Tree tree : trainTreebank) {
+        if (op.trainOptions.collinsPunc) {
+          tree = collinsPuncTransformer.transformTree(tree);
+        }
+        tree = binarizer.transformTree(tree);
+        if (tree.yield().size() - 1 <= op.trainOptions.trainLengthLimit) {
+          // TEG: have to subtract off the boundary symbol!
+          binaryTrainTrees.add(tree);
+        }
       }
     }
     if (op.trainOptions.printAnnotatedStateCounts) {
@@ -665,6 +725,10 @@ public class LexicalizedParser implements Function<Object,Tree> {
       }
     }
 
+    if (parallel != null) {
+      parallel.shutdown();
+    }
+
     Timing.tick("done.");
     if (op.testOptions.verbose) {
       binarizer.dumpStats();
@@ -673,6 +737,34 @@ public class LexicalizedParser implements Function<Object,Tree> {
     return new Pair<List<Tree>,List<Tree>>(binaryTrainTrees, binaryTuneTrees);
   }
 
+  /** Whether the training trees can be annotated and binarized on several
+   *  threads.  They can't be if the trees are to be printed as they are
+   *  transformed, or if counts of the annotated trees are wanted, since
+   *  these are done in the order of the treebank.
+   */
+  private static boolean canBinarizeInParallel(Options op) {
+    return op.trainOptions.printTreeTransformations <= 0 &&
+        ! op.trainOptions.printAnnotatedRuleCounts &&
+        ! op.trainOptions.printAnnotatedStateCounts &&
+        ! op.trainOptions.selectivePostSplit;
+  }
+
+  /** Returns a transformer doing what the (sequential) training loops do
+   *  to each tree: the Collins punctuation transform, if any, followed by
+   *  annotation and binarization.
+   */
+  private static TreeTransformer trainTreeTransformer(final CollinsPuncTransformer collinsPuncTransformer,
+                                                      final TreeAnnotatorAndBinarizer binarizer) {
+    return new TreeTransformer() {
+      public Tree transformTree(Tree tree) {
+        if (collinsPuncTransformer != null) {
+          tree = collinsPuncTransformer.transformTree(tree);
+        }
+        return binarizer.transformTree(tree);
+      }
+    };
+  }
+
   private static void removeDeleteSplittersFromSplitters(TreebankLanguagePack tlp, Options op) {
     if (op.trainOptions.deleteSplitters != null) {
       List<String> deleted = new ArrayList<String>();
@@ -714,7 +806,14 @@ public class LexicalizedParser implements Function<Object,Tree> {
     // Extractor lexExtractor = new LexiconExtractor();
     //TreeExtractor uwmExtractor = new UnknownWordModelExtractor(binaryTrainTrees.size());
     System.err.print("Extracting PCFG...");
-    Pair<UnaryGrammar,BinaryGrammar> bgug = bgExtractor.extract(binaryTrainTrees);
+    Pair<UnaryGrammar,BinaryGrammar> bgug;
+    if (op.trainOptions.trainingThreads > 1) {
+      ParallelTrainer parallel = new ParallelTrainer(op.trainOptions.trainingThreads);
+      bgug = parallel.extractPCFG(binaryTrainTrees, op, stateIndex);
+      parallel.shutdown();
+    } else {
+      bgug = bgExtractor.extract(binaryTrainTrees);
+    }
     Timing.tick("done.");
 
     //TODO: wsg2011 Not sure if this should come before or after grammar compaction
@@ -1025,13 +1124,17 @@ public class LexicalizedParser implements Function<Object,Tree> {
    * <code>1-300,500-725,9000</code> or just as <code>1</code> (if all your
    * trees are in a single file, just give a dummy argument such as
    * <code>0</code> or <code>1</code>).
-   * The parser can write a grammar as either a serialized Java object file
-   * or in a text format (or as both), specified with the following options:
+   * The parser can write a grammar as a serialized Java object file,
+   * in a text format, or in a binary format which is the fastest to load
+   * (or as several of these), specified with the following options:
    * <p>
    * <code>java edu.stanford.nlp.parser.lexparser.LexicalizedParser
    * [-v] -train
    * trainFilesPath [fileRange] [-saveToSerializedFile grammarPath]
-   * [-saveToTextFile grammarPath]</code><p>
+   * [-saveToTextFile grammarPath] [-saveToBinaryFile grammarPath]</code><p>
+   * A binary grammar file is recognized and loaded wherever a serialized
+   * grammar can be given, but it must be a local file; see
+   * {@link ParserDataBinaryFormat}. <p>
    * If no files are supplied to parse, then a hardwired sentence
    * is parsed. <p>
    *
@@ -1161,10 +1264,12 @@ public class LexicalizedParser implements Function<Object,Tree> {
     boolean train = false;
     boolean saveToSerializedFile = false;
     boolean saveToTextFile = false;
+    boolean saveToBinaryFile = false;
     String serializedInputFileOrUrl = null;
     String textInputFileOrUrl = null;
     String serializedOutputFileOrUrl = null;
     String textOutputFileOrUrl = null;
+    String binaryOutputFile = null;
     String treebankPath = null;
     Treebank testTreebank = null;
     Treebank tuneTreebank = null;
@@ -1304,6 +1409,11 @@ public class LexicalizedParser implements Function<Object,Tree> {
         saveToTextFile = true;
         textOutputFileOrUrl = args[argIndex + 1];
         argIndex += 2;
+      } else if (args[argIndex].equalsIgnoreCase("-saveToBinaryFile")) {
+        // save the parser to a binary file, for fast loading
+        saveToBinaryFile = true;
+        binaryOutputFile = args[argIndex + 1];
+        argIndex += 2;
       } else if (args[argIndex].equalsIgnoreCase("-saveTrainTrees")) {
         // save the training trees to a binary file
         op.trainOptions.trainTreeFile = args[argIndex + 1];
@@ -1493,10 +1603,17 @@ public class LexicalizedParser implements Function<Object,Tree> {
         System.err.println("Usage: must specify a text grammar output path");
       }
     }
+    if (saveToBinaryFile) {
+      if (binaryOutputFile != null) {
+        ParserDataBinaryFormat.save(lp.pd, binaryOutputFile);
+      } else {
+        System.err.println("Usage: must specify a binary grammar output path");
+      }
+    }
     if (saveToSerializedFile) {
       if (serializedOutputFileOrUrl != null) {
         saveParserDataToSerialized(lp.pd, serializedOutputFileOrUrl);
-      } else if (textOutputFileOrUrl == null && testTreebank == null) {
+      } else if (textOutputFileOrUrl == null && binaryOutputFile == null && testTreebank == null) {
         // no saving/parsing request has been specified
         System.err.println("usage: " + "java edu.stanford.nlp.parser.lexparser.LexicalizedParser " + "-train trainFilesPath [fileRange] -saveToSerializedFile serializedParserFilename");
       }
@@ -1526,7 +1643,13 @@ public class LexicalizedParser implements Function<Object,Tree> {
 
     if (testTreebank != null) {
       // test parser on treebank
-      lp.parserQuery().testOnTreebank(testTreebank);
+      if (op.testOptions.testingThreads > 1) {
+        ParallelLexicalizedParser parallel = new ParallelLexicalizedParser(lp, op.testOptions.testingThreads);
+        parallel.testOnTreebank(testTreebank);
+        parallel.shutdown();
+      } else {
+        lp.parserQuery().testOnTreebank(testTreebank);
+      }
     } else if (argIndex >= args.length) {
       // no more arguments, so we just parse our own test sentence
       PrintWriter pwOut = op.tlpParams.pw();
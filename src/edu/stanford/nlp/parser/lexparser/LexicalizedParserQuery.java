@@ -27,6 +27,7 @@
 package edu.stanford.nlp.parser.lexparser;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStreamReader;
@@ -39,8 +40,13 @@ import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import edu.stanford.nlp.ling.CoreLabel;
 import edu.stanford.nlp.ling.HasTag;
@@ -117,6 +123,8 @@ public class LexicalizedParserQuery {
     if (op.doPCFG) {
       if (op.testOptions.iterativeCKY) {
         pparser = new IterativeCKYPCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
+      } else if (op.testOptions.beamCKY) {
+        pparser = new BeamPCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
       } else {
         pparser = new ExhaustivePCFGParser(bg, ug, lex, op, stateIndex, wordIndex, tagIndex);
       }
@@ -166,6 +174,18 @@ public class LexicalizedParserQuery {
     }
   }
 
+  /**
+   * Gives the PCFG parser's chart arrays back to the shared pool, so that
+   * other queries can reuse them.  Call this when finished with the
+   * results of a parse.  The query may still be used to parse further
+   * sentences, but the parses and scores of the last one are discarded.
+   */
+  public void releaseArrays() {
+    if (pparser != null) {
+      pparser.releaseArrays();
+    }
+  }
+
   /**
    * Parse a sentence represented as a List of tokens.
    * The text must already have been tokenized and
@@ -412,12 +432,31 @@ public class LexicalizedParserQuery {
    *          of the parser on the treebank.
    */
   public double testOnTreebank(Treebank testTreebank) {
+    return testOnTreebank(testTreebank, null, null);
+  }
+
+  /** Test the parser on a treebank, as {@link #testOnTreebank(Treebank)}
+   *  does.  If more than one worker query is given, the sentences are
+   *  parsed by the workers (which may include this query) on the threads
+   *  of the executor, but they are still printed and evaluated in the
+   *  order of the treebank, so the output is the same as when testing
+   *  with a single query.  In verbose mode, the parsers print as they
+   *  parse, so a single query is always used.
+   *
+   *  @param testTreebank The treebank to parse
+   *  @param workers The queries to parse with, or null to parse with this one
+   *  @param executor The threads to parse on, or null to parse on this one
+   *  @return The labeled precision/recall F<sub>1</sub> (EVALB measure)
+   *          of the parser on the treebank.
+   */
+  double testOnTreebank(Treebank testTreebank, List<LexicalizedParserQuery> workers, ExecutorService executor) {
     System.err.println("Testing on treebank");
+    TreebankTestState state = new TreebankTestState();
     Timing treebankTotalTtimer = new Timing();
-    TreePrint treePrint = getTreePrint();
+    state.treePrint = getTreePrint();
     TreebankLangParserParams tlpParams = op.tlpParams;
     TreebankLanguagePack tlp = op.langpack();
-    PrintWriter pwOut = tlpParams.pw();
+    state.pwOut = tlpParams.pw();
     PrintWriter pwErr = tlpParams.pw(System.err);
     if (op.testOptions.verbose) {
       pwErr.print("Testing ");
@@ -426,28 +465,24 @@ public class LexicalizedParserQuery {
     if (op.testOptions.evalb) {
       EvalbFormatWriter.initEVALBfiles(tlpParams);
     }
-
-    PrintWriter pwo = null;
     if (op.testOptions.writeOutputFiles) {
       String fname = op.testOptions.outputFilesPrefix + "." + op.testOptions.outputFilesExtension;
       try {
-        pwo = op.tlpParams.pw(new FileOutputStream(fname));
+        state.pwo = op.tlpParams.pw(new FileOutputStream(fname));
       } catch (IOException ioe) {
         ioe.printStackTrace();
       }
     }
-
-    PrintWriter statsPwo = null;
     if(op.testOptions.outputkBestEquivocation != null) {
       try {
-        statsPwo = op.tlpParams.pw(new FileOutputStream(op.testOptions.outputkBestEquivocation));
+        state.statsPwo = op.tlpParams.pw(new FileOutputStream(op.testOptions.outputkBestEquivocation));
       } catch(IOException ioe) {
         ioe.printStackTrace();
       }
     }
 
-    TreeTransformer tc = tlpParams.collinizer();
-    TreeTransformer br = new BoundaryRemover();
+    state.tc = tlpParams.collinizer();
+    state.br = new BoundaryRemover();
 
     // evaluation setup
     boolean runningAverages = Boolean.parseBoolean(op.testOptions.evals.getProperty("runningAverages"));
@@ -455,453 +490,571 @@ public class LexicalizedParserQuery {
     boolean tsv = Boolean.parseBoolean(op.testOptions.evals.getProperty("tsv"));
     tlpParams.setupForEval();
     // subcategoryStripper = tlpParams.subcategoryStripper(); // NOT NEEDED. THIS WAS DONE ON CLASS INITIALIZATION
-
-    AbstractEval pcfgLB = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgLB"))) {
-      pcfgLB = new Evalb("pcfg LP/LR", runningAverages);
+      state.pcfgLB = new Evalb("pcfg LP/LR", runningAverages);
     }
-    LeafAncestorEval pcfgLA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgLA"))) {
-      pcfgLA = new LeafAncestorEval("pcfg LeafAncestor");
+      state.pcfgLA = new LeafAncestorEval("pcfg LeafAncestor");
     }
-    AbstractEval pcfgCB = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgCB"))) {
-      pcfgCB = new Evalb.CBEval("pcfg CB", runningAverages);
+      state.pcfgCB = new Evalb.CBEval("pcfg CB", runningAverages);
     }
-    AbstractEval pcfgDA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgDA"))) {
-      pcfgDA = new UnlabeledAttachmentEval("pcfg DA", runningAverages, tlp.headFinder());
+      state.pcfgDA = new UnlabeledAttachmentEval("pcfg DA", runningAverages, tlp.headFinder());
     }
-    AbstractEval pcfgTA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgTA"))) {
-      pcfgTA = new TaggingEval("pcfg Tag", runningAverages, pparser.lex);
+      state.pcfgTA = new TaggingEval("pcfg Tag", runningAverages, pparser.lex);
     }
-    AbstractEval depDA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("depDA"))) {
-      depDA = new UnlabeledAttachmentEval("dep DA", runningAverages, null, tlp.punctuationWordRejectFilter());
+      state.depDA = new UnlabeledAttachmentEval("dep DA", runningAverages, null, tlp.punctuationWordRejectFilter());
     }
-    AbstractEval depTA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("depTA"))) {
-      depTA = new TaggingEval("dep Tag", runningAverages, pparser.lex);
+      state.depTA = new TaggingEval("dep Tag", runningAverages, pparser.lex);
     }
-    AbstractEval factLB = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("factLB"))) {
-      factLB = new Evalb("factor LP/LR", runningAverages);
+      state.factLB = new Evalb("factor LP/LR", runningAverages);
     }
-    LeafAncestorEval factLA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("factLA"))) {
-      factLA = new LeafAncestorEval("factor LeafAncestor");
+      state.factLA = new LeafAncestorEval("factor LeafAncestor");
     }
-    AbstractEval factCB = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("factCB"))) {
-      factCB = new Evalb.CBEval("fact CB", runningAverages);
+      state.factCB = new Evalb.CBEval("fact CB", runningAverages);
     }
-    AbstractEval factDA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("factDA"))) {
-      factDA = new UnlabeledAttachmentEval("factor DA", runningAverages, null);
+      state.factDA = new UnlabeledAttachmentEval("factor DA", runningAverages, null);
     }
-    AbstractEval factTA = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("factTA"))) {
       if (op.doPCFG) {
-        factTA = new TaggingEval("factor Tag", runningAverages, pparser.lex);
+        state.factTA = new TaggingEval("factor Tag", runningAverages, pparser.lex);
       } else {
         // only doing dep parser, and need to get tags out in special way....
-        factTA = new TaggingEval("factor Tag", runningAverages, pparser.lex);
+        state.factTA = new TaggingEval("factor Tag", runningAverages, pparser.lex);
       }
     }
-    AbstractEval pcfgRUO = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgRUO"))) {
-      pcfgRUO = new AbstractEval.RuleErrorEval("pcfg Rule under/over");
+      state.pcfgRUO = new AbstractEval.RuleErrorEval("pcfg Rule under/over");
     }
-    AbstractEval pcfgCUO = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgCUO"))) {
-      pcfgCUO = new AbstractEval.CatErrorEval("pcfg Category under/over");
+      state.pcfgCUO = new AbstractEval.CatErrorEval("pcfg Category under/over");
     }
-    AbstractEval pcfgCatE = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgCatE"))) {
-      pcfgCatE = new EvalbByCat("pcfg Category Eval", runningAverages);
+      state.pcfgCatE = new EvalbByCat("pcfg Category Eval", runningAverages);
     }
-    AbstractEval.ScoreEval pcfgLL = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("pcfgLL"))) {
-      pcfgLL = new AbstractEval.ScoreEval("pcfgLL", runningAverages);
+      state.pcfgLL = new AbstractEval.ScoreEval("pcfgLL", runningAverages);
     }
-    AbstractEval.ScoreEval depLL = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("depLL"))) {
-      depLL = new AbstractEval.ScoreEval("depLL", runningAverages);
+      state.depLL = new AbstractEval.ScoreEval("depLL", runningAverages);
     }
-    AbstractEval.ScoreEval factLL = null;
     if (Boolean.parseBoolean(op.testOptions.evals.getProperty("factLL"))) {
-      factLL = new AbstractEval.ScoreEval("factLL", runningAverages);
+      state.factLL = new AbstractEval.ScoreEval("factLL", runningAverages);
     }
     // this one is for the various k Good/Best options.  Just for individual results
-    AbstractEval kGoodLB = new Evalb("kGood LP/LR", false);
+    state.kGoodLB = new Evalb("kGood LP/LR", false);
 
     // no annotation
-    TreeAnnotatorAndBinarizer binarizerOnly;
     if (!op.trainOptions.leftToRight) {
-      binarizerOnly = new TreeAnnotatorAndBinarizer(tlpParams, op.forceCNF, false, false, op);
+      state.binarizerOnly = new TreeAnnotatorAndBinarizer(tlpParams, op.forceCNF, false, false, op);
     } else {
-      binarizerOnly = new TreeAnnotatorAndBinarizer(tlpParams.headFinder(), new LeftHeadFinder(), tlpParams, op.forceCNF, false, false, op);
+      state.binarizerOnly = new TreeAnnotatorAndBinarizer(tlpParams.headFinder(), new LeftHeadFinder(), tlpParams, op.forceCNF, false, false, op);
     }
 
-    if(op.testOptions.preTag) {
-      try {
-        Class[] argsClass = { String.class };
-        Object[] arguments = { op.testOptions.taggerSerializedFile };
-        System.err.printf("Loading tagger from serialized file %s ...\n",op.testOptions.taggerSerializedFile);
-        tagger = (Function<List<? extends HasWord>,ArrayList<TaggedWord>>) Class.forName("edu.stanford.nlp.tagger.maxent.MaxentTagger").getConstructor(argsClass).newInstance(arguments);
-      } catch (Exception e) {
-        e.printStackTrace();
+    loadTagger();
+    if (workers != null && workers.size() > 1 && ! op.testOptions.verbose) {
+      for (LexicalizedParserQuery pq : workers) {
+        if (pq != this) {
+          pq.loadTagger();
+        }
       }
+      testInParallel(testTreebank, workers, executor, state, pwErr);
+    } else {
+      Timing timer = new Timing();
+      for (Tree goldTree : testTreebank) {
+        final ArrayList<? extends HasWord> sentence = getInputSentence(goldTree);
+
+        timer.start();
+
+        Tree tree;
+        try {
+          tree = parseTestSentence(sentence, state, pwErr);
+        } catch (UnsupportedOperationException uoe) {
+          skipTestSentence(state, pwErr);
+          continue;
+        }
+        testParsedSentence(goldTree, sentence, tree, state, pwErr);
+      } // for tree iterator
     }
 
-    int numSkippedEvals = 0;
-    boolean saidMemMessage = false;
-    Timing timer = new Timing();
-    for (Tree goldTree : testTreebank) {
-      final ArrayList<? extends HasWord> sentence = getInputSentence(goldTree);
+    //Done parsing...print the results of the evaluations
+    treebankTotalTtimer.done("Testing on treebank");
+    if (state.saidMemMessage) {
+      printOutOfMemory(pwErr);
+    }
+    if (op.testOptions.evalb) {
+      EvalbFormatWriter.closeEVALBfiles();
+    }
+    if(state.numSkippedEvals != 0) {
+      state.pwOut.printf("Unable to evaluate %d parser hypotheses due to yield mismatch\n",state.numSkippedEvals);
+    }
+    if (summary) {
+      if (state.pcfgLB != null) state.pcfgLB.display(false, pwErr);
+      if (state.pcfgLA != null) state.pcfgLA.display(false, pwErr);
+      if (state.pcfgCB != null) state.pcfgCB.display(false, pwErr);
+      if (state.pcfgDA != null) state.pcfgDA.display(false, pwErr);
+      if (state.pcfgTA != null) state.pcfgTA.display(false, pwErr);
+      if (state.pcfgLL != null && pparser != null) state.pcfgLL.display(false, pwErr);
+      if (state.depDA != null) state.depDA.display(false, pwErr);
+      if (state.depTA != null) state.depTA.display(false, pwErr);
+      if (state.depLL != null && dparser != null) state.depLL.display(false, pwErr);
+      if (state.factLB != null) state.factLB.display(false, pwErr);
+      if (state.factLA != null) state.factLA.display(false, pwErr);
+      if (state.factCB != null) state.factCB.display(false, pwErr);
+      if (state.factDA != null) state.factDA.display(false, pwErr);
+      if (state.factTA != null) state.factTA.display(false, pwErr);
+      if (state.factLL != null && bparser != null) state.factLL.display(false, pwErr);
+      if (state.pcfgCatE != null) state.pcfgCatE.display(false, pwErr);
+    }
+    // these ones only have a display mode, so display if turned on!!
+    if (state.pcfgRUO != null) state.pcfgRUO.display(true, pwErr);
+    if (state.pcfgCUO != null) state.pcfgCUO.display(true, pwErr);
+    if (tsv) {
+      NumberFormat nf = new DecimalFormat("0.00");
+      pwErr.println("factF1\tfactDA\tfactEx\tpcfgF1\tdepDA\tfactTA\tnum");
+      if (state.factLB != null) pwErr.print(nf.format(state.factLB.getEvalbF1Percent()));
+      pwErr.print("\t");
+      if (dparser != null && state.factDA != null) pwErr.print(nf.format(state.factDA.getEvalbF1Percent()));
+      pwErr.print("\t");
+      if (state.factLB != null) pwErr.print(nf.format(state.factLB.getExactPercent()));
+      pwErr.print("\t");
+      if (state.pcfgLB != null) pwErr.print(nf.format(state.pcfgLB.getEvalbF1Percent()));
+      pwErr.print("\t");
+      if (dparser != null && state.depDA != null) pwErr.print(nf.format(state.depDA.getEvalbF1Percent()));
+      pwErr.print("\t");
+      if (pparser != null && state.factTA != null) pwErr.print(nf.format(state.factTA.getEvalbF1Percent()));
+      pwErr.print("\t");
+      if (state.factLB != null) pwErr.print(state.factLB.getNum());
+      pwErr.println();
+    }
+
+    double f1 = 0.0;
+    if (state.factLB != null) {
+      f1 = state.factLB.getEvalbF1();
+    }
+
+    //Close files (if necessary)
+    if(state.pwo != null) state.pwo.close();
+    if(state.statsPwo != null) state.statsPwo.close();
+
+    return f1;
+  } // end testOnTreebank()
+
 
-      timer.start();
 
-      pwErr.println("Parsing [len. " + sentence.size() + "]: " + Sentence.listToString(sentence));
+  /** Tests the sentences of the treebank with several queries on several
+   *  threads.  Each query repeatedly takes the next sentence and parses it,
+   *  keeping its messages about the parse, then waits until all earlier
+   *  sentences are done before printing these and printing and evaluating
+   *  its parse.  So the output and the evaluation results are the same as
+   *  when testing on one thread.
+   */
+  private static void testInParallel(Treebank testTreebank, List<LexicalizedParserQuery> workers, ExecutorService executor,
+                                     final TreebankTestState state, final PrintWriter pwErr) {
+    final Iterator<Tree> goldTrees = testTreebank.iterator();
+    List<Future<Object>> futures = new ArrayList<Future<Object>>(workers.size());
+    for (final LexicalizedParserQuery pq : workers) {
+      futures.add(executor.submit(new Callable<Object>() {
+        public Object call() {
+          pq.testSentencesInTurn(goldTrees, state, pwErr);
+          return null;
+        }
+      }));
+    }
+    try {
+      for (Future<Object> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      state.abort();
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      state.abort();
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+  }
+
+  /** The work of one query in testInParallel. */
+  private void testSentencesInTurn(Iterator<Tree> goldTrees, TreebankTestState state, PrintWriter pwErr) {
+    while (true) {
+      Tree goldTree;
+      int sentenceNum;
+      synchronized (goldTrees) {
+        if (state.aborted || ! goldTrees.hasNext()) {
+          return;
+        }
+        goldTree = goldTrees.next();
+        sentenceNum = state.numStarted++;
+      }
+
+      ByteArrayOutputStream messages = new ByteArrayOutputStream();
+      PrintWriter sentenceErr = op.tlpParams.pw(messages);
+      ArrayList<? extends HasWord> sentence = null;
       Tree tree = null;
+      boolean skipped = false;
+      Throwable failure = null;
       try {
-        if ( ! parse(sentence)) {
-          pwErr.print("Sentence couldn't be parsed by grammar.");
-          if (pparser != null && pparser.hasParse() && fallbackToPCFG) {
-            pwErr.println("... falling back to PCFG parse.");
-            tree = getBestPCFGParse(false);
-          } else {
-            pwErr.println();
+        sentence = getInputSentence(goldTree);
+        tree = parseTestSentence(sentence, state, sentenceErr);
+      } catch (UnsupportedOperationException uoe) {
+        skipped = true;
+      } catch (RuntimeException e) {
+        failure = e;
+      } catch (Error e) {
+        failure = e;
+      }
+      sentenceErr.flush();
+
+      if ( ! state.awaitTurn(sentenceNum)) {
+        return;
+      }
+      try {
+        if (failure != null) {
+          state.abort();
+          if (failure instanceof Error) {
+            throw (Error) failure;
           }
+          throw (RuntimeException) failure;
+        }
+        pwErr.flush();
+        byte[] bytes = messages.toByteArray();
+        System.err.write(bytes, 0, bytes.length);
+        System.err.flush();
+        if (skipped) {
+          skipTestSentence(state, pwErr);
         } else {
-          tree = getBestParse(false);
-          if (bparser != null) pwErr.println("FactoredParser parse score is " + bparser.getBestScore());
+          testParsedSentence(goldTree, sentence, tree, state, pwErr);
         }
+      } finally {
+        state.finishTurn();
+      }
+    }
+  }
 
-      } catch (OutOfMemoryError e) {
-        if (op.testOptions.maxLength != -0xDEADBEEF) {
-          // this means they explicitly asked for a length they cannot handle.
-          // Throw exception.  Avoid string concatenation before throw it.
-          pwErr.print("NOT ENOUGH MEMORY TO PARSE SENTENCES OF LENGTH ");
-          pwErr.println(op.testOptions.maxLength);
-          throw e;
+  /** Loads the tagger used to tag test sentences, if the options call for one. */
+  private void loadTagger() {
+    if (op.testOptions.preTag) {
+      try {
+        Class[] argsClass = { String.class };
+        Object[] arguments = { op.testOptions.taggerSerializedFile };
+        System.err.printf("Loading tagger from serialized file %s ...\n",op.testOptions.taggerSerializedFile);
+        tagger = (Function<List<? extends HasWord>,ArrayList<TaggedWord>>) Class.forName("edu.stanford.nlp.tagger.maxent.MaxentTagger").getConstructor(argsClass).newInstance(arguments);
+      } catch (Exception e) {
+        e.printStackTrace();
+      }
+    }
+  }
 
+  /** Parses a test sentence, printing messages about the parse to pwErr.
+   *  Returns the tree to print and evaluate, which is null if no parse
+   *  was found.
+   *
+   *  @throws UnsupportedOperationException If the sentence is too long
+   *     or of zero length
+   */
+  private Tree parseTestSentence(List<? extends HasWord> sentence, TreebankTestState state, PrintWriter pwErr) {
+    pwErr.println("Parsing [len. " + sentence.size() + "]: " + Sentence.listToString(sentence));
+    Tree tree = null;
+    try {
+      if ( ! parse(sentence)) {
+        pwErr.print("Sentence couldn't be parsed by grammar.");
+        if (pparser != null && pparser.hasParse() && fallbackToPCFG) {
+          pwErr.println("... falling back to PCFG parse.");
+          tree = getBestPCFGParse(false);
         } else {
-          if ( ! saidMemMessage) {
-            printOutOfMemory(pwErr);
-            saidMemMessage = true;
-          }
-          if (pparser.hasParse() && fallbackToPCFG) {
-            try {
-              String what = "dependency";
-              if (dparser.hasParse()) {
-                what = "factored";
-              }
-              pwErr.println("Sentence too long for " + what + " parser.  Falling back to PCFG parse...");
-              tree = getBestPCFGParse(false);
-            } catch (OutOfMemoryError oome) {
-              oome.printStackTrace();
-              pwErr.println("No memory to gather PCFG parse. Skipping...");
-              pparser.nudgeDownArraySize();
-            }
-          } else {
-            pwErr.println("Sentence has no parse using PCFG grammar (or no PCFG fallback).  Skipping...");
-          }
           pwErr.println();
         }
-      } catch (UnsupportedOperationException uoe) {
-        pwErr.println("Sentence too long (or zero words).");
-        if(pwo != null) {
-          pwo.println("(())");
-        }
-        continue;
-      }
-
-      //combo parse goes to System.out
-      if (op.testOptions.verbose) {
-        pwOut.println("ComboParser best");
-        Tree ot = tree;
-        if (ot != null && ! tlpParams.treebankLanguagePack().isStartSymbol(ot.value())) {
-          ot = ot.treeFactory().newTreeNode(tlpParams.treebankLanguagePack().startSymbol(), Collections.singletonList(ot));
-        }
-        treePrint.printTree(ot, pwOut);
       } else {
-        treePrint.printTree(tree, pwOut);
+        tree = getBestParse(false);
+        if (bparser != null) pwErr.println("FactoredParser parse score is " + bparser.getBestScore());
       }
 
-      // **OUTPUT**
-      // print various n-best like outputs (including 1-best)
-      // print various statistics
-      if (tree != null) {
-        if(op.testOptions.printAllBestParses) {
-          List<ScoredObject<Tree>> parses = pparser.getBestParses();
-          int sz = parses.size();
-          if (sz > 1) {
-            pwOut.println("There were " + sz + " best PCFG parses with score " + parses.get(0).score() + '.');
-            Tree transGoldTree = tc.transformTree(goldTree);
-            int iii = 0;
-            for (ScoredObject<Tree> sot : parses) {
-              iii++;
-              Tree tb = sot.object();
-              Tree tbd = debinarizer.transformTree(tb);
-              tbd = subcategoryStripper.transformTree(tbd);
-              pwOut.println("PCFG Parse #" + iii + " with score " + tbd.score());
-              tbd.pennPrint(pwOut);
-              Tree tbtr = tc.transformTree(tbd);
-              // pwOut.println("Tree size = " + tbtr.size() + "; depth = " + tbtr.depth());
-              kGoodLB.evaluate(tbtr, transGoldTree, pwErr);
+    } catch (OutOfMemoryError e) {
+      if (op.testOptions.maxLength != -0xDEADBEEF) {
+        // this means they explicitly asked for a length they cannot handle.
+        // Throw exception.  Avoid string concatenation before throw it.
+        pwErr.print("NOT ENOUGH MEMORY TO PARSE SENTENCES OF LENGTH ");
+        pwErr.println(op.testOptions.maxLength);
+        throw e;
+
+      } else {
+        if (state.firstMemMessage()) {
+          printOutOfMemory(pwErr);
+        }
+        if (pparser.hasParse() && fallbackToPCFG) {
+          try {
+            String what = "dependency";
+            if (dparser.hasParse()) {
+              what = "factored";
             }
+            pwErr.println("Sentence too long for " + what + " parser.  Falling back to PCFG parse...");
+            tree = getBestPCFGParse(false);
+          } catch (OutOfMemoryError oome) {
+            oome.printStackTrace();
+            pwErr.println("No memory to gather PCFG parse. Skipping...");
+            pparser.nudgeDownArraySize();
           }
+        } else {
+          pwErr.println("Sentence has no parse using PCFG grammar (or no PCFG fallback).  Skipping...");
         }
-        // Huang and Chiang (2006) Algorithm 3 output from the PCFG parser
-        else if (op.testOptions.printPCFGkBest > 0 && op.testOptions.outputkBestEquivocation == null) {
-          List<ScoredObject<Tree>> trees = getKBestPCFGParses(op.testOptions.printPCFGkBest);
-          Tree transGoldTree = tc.transformTree(goldTree);
-          int i = 0;
-          for (ScoredObject<Tree> tp : trees) {
-            i++;
-            pwOut.println("PCFG Parse #" + i + " with score " + tp.score());
-            Tree tbd = tp.object();
-            tbd.pennPrint(pwOut);
-            Tree tbtr = tc.transformTree(tbd);
-            kGoodLB.evaluate(tbtr, transGoldTree, pwErr);
+        pwErr.println();
+      }
+    }
+    return tree;
+  }
+
+  /** Notes that a test sentence was too long (or of zero length) to parse. */
+  private static void skipTestSentence(TreebankTestState state, PrintWriter pwErr) {
+    pwErr.println("Sentence too long (or zero words).");
+    if(state.pwo != null) {
+      state.pwo.println("(())");
+    }
+  }
+
+  /** Prints the parse of a test sentence, as found by parseTestSentence,
+   *  and evaluates it against the gold tree.  The parse details are those
+   *  of the last sentence this query parsed, which must be this one.
+   */
+  private void testParsedSentence(Tree goldTree, List<? extends HasWord> sentence, Tree tree, TreebankTestState state, PrintWriter pwErr) {
+    TreebankLangParserParams tlpParams = op.tlpParams;
+    TreebankLanguagePack tlp = op.langpack();
+
+    //combo parse goes to System.out
+    if (op.testOptions.verbose) {
+      state.pwOut.println("ComboParser best");
+      Tree ot = tree;
+      if (ot != null && ! tlpParams.treebankLanguagePack().isStartSymbol(ot.value())) {
+        ot = ot.treeFactory().newTreeNode(tlpParams.treebankLanguagePack().startSymbol(), Collections.singletonList(ot));
+      }
+      state.treePrint.printTree(ot, state.pwOut);
+    } else {
+      state.treePrint.printTree(tree, state.pwOut);
+    }
+
+    // **OUTPUT**
+    // print various n-best like outputs (including 1-best)
+    // print various statistics
+    if (tree != null) {
+      if(op.testOptions.printAllBestParses) {
+        List<ScoredObject<Tree>> parses = pparser.getBestParses();
+        int sz = parses.size();
+        if (sz > 1) {
+          state.pwOut.println("There were " + sz + " best PCFG parses with score " + parses.get(0).score() + '.');
+          Tree transGoldTree = state.tc.transformTree(goldTree);
+          int iii = 0;
+          for (ScoredObject<Tree> sot : parses) {
+            iii++;
+            Tree tb = sot.object();
+            Tree tbd = debinarizer.transformTree(tb);
+            tbd = subcategoryStripper.transformTree(tbd);
+            state.pwOut.println("PCFG Parse #" + iii + " with score " + tbd.score());
+            tbd.pennPrint(state.pwOut);
+            Tree tbtr = state.tc.transformTree(tbd);
+            // state.pwOut.println("Tree size = " + tbtr.size() + "; depth = " + tbtr.depth());
+            state.kGoodLB.evaluate(tbtr, transGoldTree, pwErr);
           }
         }
-        // Chart parser (factored) n-best list
-        else if (op.testOptions.printFactoredKGood > 0 && bparser.hasParse()) {
-          // DZ: debug n best trees
-          List<ScoredObject<Tree>> trees = getKGoodFactoredParses(op.testOptions.printFactoredKGood);
-          Tree transGoldTree = tc.transformTree(goldTree);
-          int ii = 0;
-          for (ScoredObject<Tree> tp : trees) {
-            ii++;
-            pwOut.println("Factored Parse #" + ii + " with score " + tp.score());
-            Tree tbd = tp.object();
-            tbd.pennPrint(pwOut);
-            Tree tbtr = tc.transformTree(tbd);
-            kGoodLB.evaluate(tbtr, transGoldTree, pwOut);
-          }
+      }
+      // Huang and Chiang (2006) Algorithm 3 output from the PCFG parser
+      else if (op.testOptions.printPCFGkBest > 0 && op.testOptions.outputkBestEquivocation == null) {
+        List<ScoredObject<Tree>> trees = getKBestPCFGParses(op.testOptions.printPCFGkBest);
+        Tree transGoldTree = state.tc.transformTree(goldTree);
+        int i = 0;
+        for (ScoredObject<Tree> tp : trees) {
+          i++;
+          state.pwOut.println("PCFG Parse #" + i + " with score " + tp.score());
+          Tree tbd = tp.object();
+          tbd.pennPrint(state.pwOut);
+          Tree tbtr = state.tc.transformTree(tbd);
+          state.kGoodLB.evaluate(tbtr, transGoldTree, pwErr);
         }
-        //1-best output
-        else if(pwo != null) {
-          pwo.println(tree.toString());
+      }
+      // Chart parser (factored) n-best list
+      else if (op.testOptions.printFactoredKGood > 0 && bparser.hasParse()) {
+        // DZ: debug n best trees
+        List<ScoredObject<Tree>> trees = getKGoodFactoredParses(op.testOptions.printFactoredKGood);
+        Tree transGoldTree = state.tc.transformTree(goldTree);
+        int ii = 0;
+        for (ScoredObject<Tree> tp : trees) {
+          ii++;
+          state.pwOut.println("Factored Parse #" + ii + " with score " + tp.score());
+          Tree tbd = tp.object();
+          tbd.pennPrint(state.pwOut);
+          Tree tbtr = state.tc.transformTree(tbd);
+          state.kGoodLB.evaluate(tbtr, transGoldTree, state.pwOut);
         }
+      }
+      //1-best output
+      else if(state.pwo != null) {
+        state.pwo.println(tree.toString());
+      }
 
-        //Print the derivational entropy
-        if(op.testOptions.outputkBestEquivocation != null && op.testOptions.printPCFGkBest > 0) {
-          List<ScoredObject<Tree>> trees = getKBestPCFGParses(op.testOptions.printPCFGkBest);
-
-          double[] logScores = new double[trees.size()];
-          int treeId = 0;
-          for(ScoredObject<Tree> kBestTree : trees)
-            logScores[treeId++] = kBestTree.score();
-
-          //Re-normalize
-          double entropy = 0.0;
-          double denom = ArrayMath.logSum(logScores);
-          for (double logScore : logScores) {
-            double logPr = logScore - denom;
-            entropy += Math.exp(logPr) * (logPr / Math.log(2));
-          }
-          entropy *= -1; //Convert to bits
-          statsPwo.printf("%f\t%d\t%d\n", entropy,trees.size(),sentence.size());
+      //Print the derivational entropy
+      if(op.testOptions.outputkBestEquivocation != null && op.testOptions.printPCFGkBest > 0) {
+        List<ScoredObject<Tree>> trees = getKBestPCFGParses(op.testOptions.printPCFGkBest);
+
+        double[] logScores = new double[trees.size()];
+        int treeId = 0;
+        for(ScoredObject<Tree> kBestTree : trees)
+          logScores[treeId++] = kBestTree.score();
+
+        //Re-normalize
+        double entropy = 0.0;
+        double denom = ArrayMath.logSum(logScores);
+        for (double logScore : logScores) {
+          double logPr = logScore - denom;
+          entropy += Math.exp(logPr) * (logPr / Math.log(2));
         }
+        entropy *= -1; //Convert to bits
+        state.statsPwo.printf("%f\t%d\t%d\n", entropy,trees.size(),sentence.size());
       }
+    }
 
 
-      // **EVALUATION**
-      // Perform various evaluations specified by the user
-      if (tree != null) {
-        //Strip subcategories and remove punctuation for evaluation
-        tree = subcategoryStripper.transformTree(tree);
-        Tree treeFact = tc.transformTree(tree);
+    // **EVALUATION**
+    // Perform various evaluations specified by the user
+    if (tree != null) {
+      //Strip subcategories and remove punctuation for evaluation
+      tree = subcategoryStripper.transformTree(tree);
+      Tree treeFact = state.tc.transformTree(tree);
 
-        //Setup the gold tree
-        if (op.testOptions.verbose) {
-          pwOut.println("Correct parse");
-          treePrint.printTree(goldTree, pwOut);
-        }
-        Tree transGoldTree = tc.transformTree(goldTree);
-        if(transGoldTree != null)
-          transGoldTree = subcategoryStripper.transformTree(transGoldTree);
-
-        //Can't do evaluation in these two cases
-        if (transGoldTree == null) {
-          pwErr.println("Couldn't transform gold tree for evaluation, skipping eval. Gold tree was:");
-          goldTree.pennPrint(pwErr);
-          numSkippedEvals++;
-          continue;
+      //Setup the gold tree
+      if (op.testOptions.verbose) {
+        state.pwOut.println("Correct parse");
+        state.treePrint.printTree(goldTree, state.pwOut);
+      }
+      Tree transGoldTree = state.tc.transformTree(goldTree);
+      if(transGoldTree != null)
+        transGoldTree = subcategoryStripper.transformTree(transGoldTree);
+
+      //Can't do evaluation in these two cases
+      if (transGoldTree == null) {
+        pwErr.println("Couldn't transform gold tree for evaluation, skipping eval. Gold tree was:");
+        goldTree.pennPrint(pwErr);
+        state.numSkippedEvals++;
+        return;
+
+      } else if(treeFact.yield().size() != transGoldTree.yield().size()) {
+        List<Label> fYield = treeFact.yield();
+        List<Label> gYield = transGoldTree.yield();
+        pwErr.println("WARNING: Evaluation could not be performed due to guess/gold yield mismatch.");
+        pwErr.println("  sizes: g: " + gYield.size() + " p: " + fYield.size());
+        pwErr.println("  g: " + Sentence.listToString(gYield, true));
+        pwErr.println("  p: " + Sentence.listToString(gYield, true));
+        state.numSkippedEvals++;
+        return;
+      }
 
-        } else if(treeFact.yield().size() != transGoldTree.yield().size()) {
-          List<Label> fYield = treeFact.yield();
-          List<Label> gYield = transGoldTree.yield();
-          pwErr.println("WARNING: Evaluation could not be performed due to guess/gold yield mismatch.");
-          pwErr.println("  sizes: g: " + gYield.size() + " p: " + fYield.size());
-          pwErr.println("  g: " + Sentence.listToString(gYield, true));
-          pwErr.println("  p: " + Sentence.listToString(gYield, true));
-          numSkippedEvals++;
-          continue;
+      //PCFG eval
+      Tree treePCFG = getBestPCFGParse();
+      if (treePCFG != null) {
+        Tree treePCFGeval = state.tc.transformTree(treePCFG);
+        if (state.pcfgLB != null) {
+          state.pcfgLB.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
-
-        //PCFG eval
-        Tree treePCFG = getBestPCFGParse();
-        if (treePCFG != null) {
-          Tree treePCFGeval = tc.transformTree(treePCFG);
-          if (pcfgLB != null) {
-            pcfgLB.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
-          if(pcfgLA != null) {
-            pcfgLA.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
-          if (pcfgCB != null) {
-            pcfgCB.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
-          if (pcfgDA != null) {
-            // Re-index the leaves after Collinization, stripping traces, etc.
-            treePCFGeval.indexLeaves(true);
-            transGoldTree.indexLeaves(true);
-            pcfgDA.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
-          if (pcfgTA != null) {
-            pcfgTA.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
-          if (pcfgLL != null && pparser != null) {
-            pcfgLL.recordScore(pparser, pwErr);
-          }
-          if (pcfgRUO != null) {
-            pcfgRUO.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
-          if (pcfgCUO != null) {
-            pcfgCUO.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
-          if (pcfgCatE != null) {
-            pcfgCatE.evaluate(treePCFGeval, transGoldTree, pwErr);
-          }
+        if(state.pcfgLA != null) {
+          state.pcfgLA.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
-
-        //Dependency eval
-        Tree treeDep = getBestDependencyParse();
-        if (treeDep != null) {
-          Tree goldTreeB = binarizerOnly.transformTree(goldTree);
-
-          Tree goldTreeEval = goldTree.deepCopy();
-          goldTreeEval.indexLeaves(true);
-          goldTreeEval.percolateHeads(tlp.headFinder());
-
-          Tree depDAEval = getBestDependencyParse(true);
-          depDAEval.indexLeaves(true);
-          depDAEval.percolateHeadIndices();
-          if (depDA != null) {
-            depDA.evaluate(depDAEval, goldTreeEval, pwErr);
-          }
-          if (depTA != null) {
-            Tree undoneTree = debinarizer.transformTree(treeDep);
-            undoneTree = subcategoryStripper.transformTree(undoneTree);
-            // System.err.println("subcategoryStripped tree: " + undoneTree.toStructureDebugString());
-            depTA.evaluate(undoneTree, goldTree, pwErr);
-          }
-          if (depLL != null && dparser != null) {
-            depLL.recordScore(dparser, pwErr);
-          }
-          Tree factTreeB;
-          if (bparser != null && parseSucceeded) {
-            factTreeB = bparser.getBestParse();
-          } else {
-            factTreeB = treeDep;
-          }
-          if (factDA != null) {
-            factDA.evaluate(factTreeB, goldTreeB, pwErr);
-          }
+        if (state.pcfgCB != null) {
+          state.pcfgCB.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
-
-        //Factored parser (1best) eval
-        if (factLB != null) {
-          factLB.evaluate(treeFact, transGoldTree, pwErr);
+        if (state.pcfgDA != null) {
+          // Re-index the leaves after Collinization, stripping traces, etc.
+          treePCFGeval.indexLeaves(true);
+          transGoldTree.indexLeaves(true);
+          state.pcfgDA.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
-        if(factLA != null) {
-          factLA.evaluate(treeFact, transGoldTree, pwErr);
+        if (state.pcfgTA != null) {
+          state.pcfgTA.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
-        if (factTA != null) {
-          factTA.evaluate(tree, br.transformTree(goldTree), pwErr);
+        if (state.pcfgLL != null && pparser != null) {
+          state.pcfgLL.recordScore(pparser, pwErr);
         }
-        if (factLL != null && bparser != null) {
-          factLL.recordScore(bparser, pwErr);
+        if (state.pcfgRUO != null) {
+          state.pcfgRUO.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
-        if (factCB != null) {
-          factCB.evaluate(treeFact, transGoldTree, pwErr);
+        if (state.pcfgCUO != null) {
+          state.pcfgCUO.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
-        if (op.testOptions.evalb) {
-          // empty out scores just in case
-          nanScores(tree);
-          EvalbFormatWriter.writeEVALBline(treeFact, transGoldTree);
+        if (state.pcfgCatE != null) {
+          state.pcfgCatE.evaluate(treePCFGeval, transGoldTree, pwErr);
         }
       }
-      pwErr.println();
-    } // for tree iterator
 
-    //Done parsing...print the results of the evaluations
-    treebankTotalTtimer.done("Testing on treebank");
-    if (saidMemMessage) {
-      printOutOfMemory(pwErr);
-    }
-    if (op.testOptions.evalb) {
-      EvalbFormatWriter.closeEVALBfiles();
-    }
-    if(numSkippedEvals != 0) {
-      pwOut.printf("Unable to evaluate %d parser hypotheses due to yield mismatch\n",numSkippedEvals);
-    }
-    if (summary) {
-      if (pcfgLB != null) pcfgLB.display(false, pwErr);
-      if (pcfgLA != null) pcfgLA.display(false, pwErr);
-      if (pcfgCB != null) pcfgCB.display(false, pwErr);
-      if (pcfgDA != null) pcfgDA.display(false, pwErr);
-      if (pcfgTA != null) pcfgTA.display(false, pwErr);
-      if (pcfgLL != null && pparser != null) pcfgLL.display(false, pwErr);
-      if (depDA != null) depDA.display(false, pwErr);
-      if (depTA != null) depTA.display(false, pwErr);
-      if (depLL != null && dparser != null) depLL.display(false, pwErr);
-      if (factLB != null) factLB.display(false, pwErr);
-      if (factLA != null) factLA.display(false, pwErr);
-      if (factCB != null) factCB.display(false, pwErr);
-      if (factDA != null) factDA.display(false, pwErr);
-      if (factTA != null) factTA.display(false, pwErr);
-      if (factLL != null && bparser != null) factLL.display(false, pwErr);
-      if (pcfgCatE != null) pcfgCatE.display(false, pwErr);
-    }
-    // these ones only have a display mode, so display if turned on!!
-    if (pcfgRUO != null) pcfgRUO.display(true, pwErr);
-    if (pcfgCUO != null) pcfgCUO.display(true, pwErr);
-    if (tsv) {
-      NumberFormat nf = new DecimalFormat("0.00");
-      pwErr.println("factF1\tfactDA\tfactEx\tpcfgF1\tdepDA\tfactTA\tnum");
-      if (factLB != null) pwErr.print(nf.format(factLB.getEvalbF1Percent()));
-      pwErr.print("\t");
-      if (dparser != null && factDA != null) pwErr.print(nf.format(factDA.getEvalbF1Percent()));
-      pwErr.print("\t");
-      if (factLB != null) pwErr.print(nf.format(factLB.getExactPercent()));
-      pwErr.print("\t");
-      if (pcfgLB != null) pwErr.print(nf.format(pcfgLB.getEvalbF1Percent()));
-      pwErr.print("\t");
-      if (dparser != null && depDA != null) pwErr.print(nf.format(depDA.getEvalbF1Percent()));
-      pwErr.print("\t");
-      if (pparser != null && factTA != null) pwErr.print(nf.format(factTA.getEvalbF1Percent()));
-      pwErr.print("\t");
-      if (factLB != null) pwErr.print(factLB.getNum());
-      pwErr.println();
-    }
+      //Dependency eval
+      Tree treeDep = getBestDependencyParse();
+      if (treeDep != null) {
+        Tree goldTreeB = state.binarizerOnly.transformTree(goldTree);
 
-    double f1 = 0.0;
-    if (factLB != null) {
-      f1 = factLB.getEvalbF1();
-    }
+        Tree goldTreeEval = goldTree.deepCopy();
+        goldTreeEval.indexLeaves(true);
+        goldTreeEval.percolateHeads(tlp.headFinder());
 
-    //Close files (if necessary)
-    if(pwo != null) pwo.close();
-    if(statsPwo != null) statsPwo.close();
+        Tree depDAEval = getBestDependencyParse(true);
+        depDAEval.indexLeaves(true);
+        depDAEval.percolateHeadIndices();
+        if (state.depDA != null) {
+          state.depDA.evaluate(depDAEval, goldTreeEval, pwErr);
+        }
+        if (state.depTA != null) {
+          Tree undoneTree = debinarizer.transformTree(treeDep);
+          undoneTree = subcategoryStripper.transformTree(undoneTree);
+          // System.err.println("subcategoryStripped tree: " + undoneTree.toStructureDebugString());
+          state.depTA.evaluate(undoneTree, goldTree, pwErr);
+        }
+        if (state.depLL != null && dparser != null) {
+          state.depLL.recordScore(dparser, pwErr);
+        }
+        Tree factTreeB;
+        if (bparser != null && parseSucceeded) {
+          factTreeB = bparser.getBestParse();
+        } else {
+          factTreeB = treeDep;
+        }
+        if (state.factDA != null) {
+          state.factDA.evaluate(factTreeB, goldTreeB, pwErr);
+        }
+      }
 
-    return f1;
-  } // end testOnTreebank()
+      //Factored parser (1best) eval
+      if (state.factLB != null) {
+        state.factLB.evaluate(treeFact, transGoldTree, pwErr);
+      }
+      if(state.factLA != null) {
+        state.factLA.evaluate(treeFact, transGoldTree, pwErr);
+      }
+      if (state.factTA != null) {
+        state.factTA.evaluate(tree, state.br.transformTree(goldTree), pwErr);
+      }
+      if (state.factLL != null && bparser != null) {
+        state.factLL.recordScore(bparser, pwErr);
+      }
+      if (state.factCB != null) {
+        state.factCB.evaluate(treeFact, transGoldTree, pwErr);
+      }
+      if (op.testOptions.evalb) {
+        // empty out scores just in case
+        nanScores(tree);
+        EvalbFormatWriter.writeEVALBline(treeFact, transGoldTree);
+      }
+    }
+    pwErr.println();
+  }
 
 
 
@@ -965,6 +1118,7 @@ public class LexicalizedParserQuery {
       documentPreprocessor.setSentenceDelimiter(sentenceDelimiter);
       documentPreprocessor.setTagDelimiter(tagDelimiter);
       documentPreprocessor.setElementDelimiter(elementDelimiter);
+      documentPreprocessor.setNumThreads(Math.max(1, op.testOptions.testingThreads));
       if(tokenizerFactory == null)
         documentPreprocessor.setTokenizerFactory((tokenized) ? null : tlp.getTokenizerFactory());
       else
@@ -1249,4 +1403,88 @@ public class LexicalizedParserQuery {
     }
   }
 
+
+  /** The output streams and evaluation accumulators of a run of
+   *  testOnTreebank.  When testing in parallel, they are shared by all the
+   *  worker queries, but (except for saidMemMessage) are only used by the
+   *  query whose turn it is, in the order of the treebank.
+   */
+  private static class TreebankTestState {
+
+    TreePrint treePrint;
+    PrintWriter pwOut;
+    PrintWriter pwo;
+    PrintWriter statsPwo;
+    TreeTransformer tc;
+    TreeTransformer br;
+
+    AbstractEval pcfgLB;
+    LeafAncestorEval pcfgLA;
+    AbstractEval pcfgCB;
+    AbstractEval pcfgDA;
+    AbstractEval pcfgTA;
+    AbstractEval depDA;
+    AbstractEval depTA;
+    AbstractEval factLB;
+    LeafAncestorEval factLA;
+    AbstractEval factCB;
+    AbstractEval factDA;
+    AbstractEval factTA;
+    AbstractEval pcfgRUO;
+    AbstractEval pcfgCUO;
+    AbstractEval pcfgCatE;
+    AbstractEval.ScoreEval pcfgLL;
+    AbstractEval.ScoreEval depLL;
+    AbstractEval.ScoreEval factLL;
+    AbstractEval kGoodLB;
+
+    TreeAnnotatorAndBinarizer binarizerOnly;
+
+    int numSkippedEvals; // = 0
+    volatile boolean saidMemMessage; // = false
+
+    /** Returns true for only the first query to ask, which then prints the
+     *  out of memory message. */
+    synchronized boolean firstMemMessage() {
+      if (saidMemMessage) {
+        return false;
+      }
+      saidMemMessage = true;
+      return true;
+    }
+
+    // for testing in parallel: the number of sentences taken by the
+    // workers (guarded by the tree iterator), and the number done
+    int numStarted; // = 0
+    private int numDone; // = 0
+    volatile boolean aborted; // = false
+
+    /** Waits until all the sentences before the given one are done.
+     *  Returns false if testing was aborted instead.
+     */
+    synchronized boolean awaitTurn(int sentenceNum) {
+      while (numDone != sentenceNum && ! aborted) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          abort();
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+      }
+      return ! aborted;
+    }
+
+    synchronized void finishTurn() {
+      numDone++;
+      notifyAll();
+    }
+
+    synchronized void abort() {
+      aborted = true;
+      notifyAll();
+    }
+
+  } // end class TreebankTestState
+
 }
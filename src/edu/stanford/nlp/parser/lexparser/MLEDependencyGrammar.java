@@ -103,9 +103,13 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
   }
 
   public boolean pruneTW(IntTaggedWord argTW) {
+    return pruneTag(argTW.tag);
+  }
+
+  private boolean pruneTag(int tag) {
     String[] punctTags = tlp.punctuationTags();
     for (String punctTag : punctTags) {
-      if (argTW.tag == tagIndex.indexOf(punctTag)) {
+      if (tag == tagIndex.indexOf(punctTag)) {
         return true;
       }
     }
@@ -421,6 +425,35 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
     }
   }
 
+  /** The projection of each tag, as tagProject gives it, for scoring.
+   *  tagProject can add to smoothTPIndex, so while parsing the projections
+   *  are looked up here instead, which any number of threads can do at once.
+   */
+  private transient volatile short[] tagProjections;
+
+  private short scoringTagProject(short tag) {
+    if (tag < 0) {
+      return tag;
+    }
+    short[] projections = tagProjections;
+    if (projections == null || tag >= projections.length) {
+      projections = makeTagProjections(tag + 1);
+    }
+    return projections[tag];
+  }
+
+  private synchronized short[] makeTagProjections(int minLength) {
+    short[] projections = tagProjections;
+    if (projections == null || projections.length < minLength) {
+      projections = new short[Math.max(minLength, tagIndex.size())];
+      for (int tag = 0; tag < projections.length; tag++) {
+        projections[tag] = tagProject((short) tag);
+      }
+      tagProjections = projections;
+    }
+    return projections;
+  }
+
 
   /** Collect counts for a non-STOP dependent.
    *  The dependency arg is still in the full tag space.
@@ -430,6 +463,7 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
    *  @param count The weight with which to add this dependency
    */
   private void expandArg(IntDependency dependency, short valBinDist, double count) {
+    argCounts = null;
     IntTaggedWord headT = getCachedITW(dependency.head.tag);
     IntTaggedWord argT = getCachedITW(dependency.arg.tag);
     IntTaggedWord head = new IntTaggedWord(dependency.head.word, tagBin(dependency.head.tag)); //dependency.head;
@@ -473,6 +507,7 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
   }
 
   private void expandStop(IntDependency dependency, short distBinDist, double count, boolean wildForStop) {
+    stopCounts = null;
     IntTaggedWord headT = getCachedITW(dependency.head.tag);
     IntTaggedWord head = new IntTaggedWord(dependency.head.word, tagBin(dependency.head.tag)); //dependency.head;
     IntTaggedWord arg = new IntTaggedWord(dependency.arg.word, tagBin(dependency.arg.tag));//dependency.arg;
@@ -500,10 +535,41 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
     return op.testOptions.depWeight * Math.log(probTB(dependency));
   }
 
+  /** Score a tag binned dependency, without making an IntDependency. */
+  @Override
+  public double scoreTB(int headWord, int headTag, int argWord, int argTag, boolean leftHeaded, int dist) {
+    return op.testOptions.depWeight * Math.log(probTB(headWord, headTag, argWord, argTag, leftHeaded, dist));
+  }
+
   private static final boolean verbose = false;
 
   protected static final double MIN_PROBABILITY = 1e-40;
 
+  /** Read-only copies of argCounter and stopCounter, which the counts
+   *  are looked up in while parsing.  They are made when they are first
+   *  needed, and thrown away when the counters change.
+   */
+  private transient IntDependencyCounts argCounts;
+  private transient IntDependencyCounts stopCounts;
+
+  private IntDependencyCounts argCounts() {
+    IntDependencyCounts counts = argCounts;
+    if (counts == null) {
+      counts = new IntDependencyCounts(argCounter);
+      argCounts = counts;
+    }
+    return counts;
+  }
+
+  private IntDependencyCounts stopCounts() {
+    IntDependencyCounts counts = stopCounts;
+    if (counts == null) {
+      counts = new IntDependencyCounts(stopCounter);
+      stopCounts = counts;
+    }
+    return counts;
+  }
+
   /** Calculate the probability of a dependency as a real probability between
    *  0 and 1 inclusive.
    *  @param dependency The dependency for which the probability is to be
@@ -512,30 +578,36 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
    *  @return The probability of the dependency
    */
   protected double probTB(IntDependency dependency) {
+    return probTB(dependency.head.word, dependency.head.tag, dependency.arg.word, dependency.arg.tag, dependency.leftHeaded, dependency.distance);
+  }
+
+  /** Calculate the probability of a dependency as a real probability between
+   *  0 and 1 inclusive.  The tags are in the reduced TagProjection space.
+   */
+  private double probTB(int hW, int headTag, int aW, int argTag, boolean dependencyLeftHeaded, int distance) {
+    // the same as an IntDependency would store
+    short hT = (short) headTag;
+    short aT = (short) argTag;
+    distance = (short) distance;
+
     if (verbose) {
       // System.out.println("tagIndex: " + tagIndex);
-      System.err.println("Generating " + dependency);
+      System.err.println("Generating " + new IntDependency(hW, hT, aW, aT, dependencyLeftHeaded, distance));
     }
 
-    boolean leftHeaded = dependency.leftHeaded && directional;
-
-    int hW = dependency.head.word;
-    int aW = dependency.arg.word;
-    short hT = dependency.head.tag;
-    short aT = dependency.arg.tag;
+    boolean leftHeaded = dependencyLeftHeaded && directional;
 
-    IntTaggedWord aTW = dependency.arg;
-    IntTaggedWord hTW = dependency.head;
+    IntDependencyCounts argCounts = argCounts();
 
-    boolean isRoot = rootTW(dependency.head);
+    boolean isRoot = hT == tagIndex.indexOf(Lexicon.BOUNDARY_TAG);
     double pb_stop_hTWds;
     if (isRoot) {
       pb_stop_hTWds = 0.0;
     } else {
-      pb_stop_hTWds = getStopProb(dependency);
+      pb_stop_hTWds = getStopProb(hW, hT, dependencyLeftHeaded, distance);
     }
 
-    if (dependency.arg.word == STOP_WORD_INT) {
+    if (aW == STOP_WORD_INT) {
       // did we generate stop?
       return pb_stop_hTWds;
     }
@@ -544,7 +616,7 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
 
     // generate the argument
 
-    short binDistance = valenceBin(dependency.distance);
+    short binDistance = valenceBin(distance);
 
     // KEY:
     // c_     count of (read as joint count of first and second)
@@ -558,23 +630,13 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
     // d      direction
     // ds     distance (implicit: there when direction is mentioned!)
 
-    IntTaggedWord anyHead = new IntTaggedWord(ANY_WORD_INT, dependency.head.tag);
-    IntTaggedWord anyArg = new IntTaggedWord(ANY_WORD_INT, dependency.arg.tag);
-    IntTaggedWord anyTagArg = new IntTaggedWord(dependency.arg.word, ANY_TAG_INT);
+    double c_aTW_hTWd = argCounts.getCount(hW, hT, aW, aT, leftHeaded, binDistance);
+    double c_aT_hTWd = argCounts.getCount(hW, hT, ANY_WORD_INT, aT, leftHeaded, binDistance);
+    double c_hTWd = argCounts.getCount(hW, hT, wildTW.word, wildTW.tag, leftHeaded, binDistance);
 
-    IntDependency temp = new IntDependency(dependency.head, dependency.arg, leftHeaded, binDistance);
-    double c_aTW_hTWd = argCounter.getCount(temp);
-    temp = new IntDependency(dependency.head, anyArg, leftHeaded, binDistance);
-    double c_aT_hTWd = argCounter.getCount(temp);
-    temp = new IntDependency(dependency.head, wildTW, leftHeaded, binDistance);
-    double c_hTWd = argCounter.getCount(temp);
-
-    temp = new IntDependency(anyHead, dependency.arg, leftHeaded, binDistance);
-    double c_aTW_hTd = argCounter.getCount(temp);
-    temp = new IntDependency(anyHead, anyArg, leftHeaded, binDistance);
-    double c_aT_hTd = argCounter.getCount(temp);
-    temp = new IntDependency(anyHead, wildTW, leftHeaded, binDistance);
-    double c_hTd = argCounter.getCount(temp);
+    double c_aTW_hTd = argCounts.getCount(ANY_WORD_INT, hT, aW, aT, leftHeaded, binDistance);
+    double c_aT_hTd = argCounts.getCount(ANY_WORD_INT, hT, ANY_WORD_INT, aT, leftHeaded, binDistance);
+    double c_hTd = argCounts.getCount(ANY_WORD_INT, hT, wildTW.word, wildTW.tag, leftHeaded, binDistance);
 
     // for smooth tag projection
     short aPT = Short.MIN_VALUE;
@@ -585,33 +647,21 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
     double c_aPT = Double.NaN;
 
     if (useSmoothTagProjection) {
-      aPT = tagProject(dependency.arg.tag);
-      short hPT = tagProject(dependency.head.tag);
-      
-      IntTaggedWord projectedArg = new IntTaggedWord(dependency.arg.word, aPT);
-      IntTaggedWord projectedAnyHead = new IntTaggedWord(ANY_WORD_INT, hPT);
-      IntTaggedWord projectedAnyArg = new IntTaggedWord(ANY_WORD_INT, aPT);
-
-      temp = new IntDependency(projectedAnyHead, projectedArg, leftHeaded, binDistance);
-      c_aPTW_hPTd = argCounter.getCount(temp);
-      temp = new IntDependency(projectedAnyHead, projectedAnyArg, leftHeaded, binDistance);
-      c_aPT_hPTd = argCounter.getCount(temp);
-      temp = new IntDependency(projectedAnyHead, wildTW, leftHeaded, binDistance);
-      c_hPTd = argCounter.getCount(temp);
-
-      temp = new IntDependency(wildTW, projectedArg, false, ANY_DISTANCE_INT);
-      c_aPTW_aPT = argCounter.getCount(temp);
-      temp = new IntDependency(wildTW, projectedAnyArg, false, ANY_DISTANCE_INT);
-      c_aPT = argCounter.getCount(temp);
+      aPT = scoringTagProject(aT);
+      short hPT = scoringTagProject(hT);
+
+      c_aPTW_hPTd = argCounts.getCount(ANY_WORD_INT, hPT, aW, aPT, leftHeaded, binDistance);
+      c_aPT_hPTd = argCounts.getCount(ANY_WORD_INT, hPT, ANY_WORD_INT, aPT, leftHeaded, binDistance);
+      c_hPTd = argCounts.getCount(ANY_WORD_INT, hPT, wildTW.word, wildTW.tag, leftHeaded, binDistance);
+
+      c_aPTW_aPT = argCounts.getCount(wildTW.word, wildTW.tag, aW, aPT, false, ANY_DISTANCE_INT);
+      c_aPT = argCounts.getCount(wildTW.word, wildTW.tag, ANY_WORD_INT, aPT, false, ANY_DISTANCE_INT);
     }
 
     // wild head is always directionless and no use distance
-    temp = new IntDependency(wildTW, dependency.arg, false, ANY_DISTANCE_INT);
-    double c_aTW = argCounter.getCount(temp);
-    temp = new IntDependency(wildTW, anyArg, false, ANY_DISTANCE_INT);
-    double c_aT = argCounter.getCount(temp);
-    temp = new IntDependency(wildTW, anyTagArg, false, ANY_DISTANCE_INT);
-    double c_aW = argCounter.getCount(temp);
+    double c_aTW = argCounts.getCount(wildTW.word, wildTW.tag, aW, aT, false, ANY_DISTANCE_INT);
+    double c_aT = argCounts.getCount(wildTW.word, wildTW.tag, ANY_WORD_INT, aT, false, ANY_DISTANCE_INT);
+    double c_aW = argCounts.getCount(wildTW.word, wildTW.tag, aW, ANY_TAG_INT, false, ANY_DISTANCE_INT);
 
     // do the Bayesian magic
     // MLE probs
@@ -642,7 +692,8 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
       // here word generation isn't smoothed - can't get previously unseen word with tag.  Ugh.
       if (op.testOptions.useLexiconToScoreDependencyPwGt) {
         // We don't know the position.  Now -1 means average over 0 and 1.
-        p_aTW_aT = dependency.leftHeaded ? Math.exp(lex.score(dependency.arg, 1, wordIndex.get(dependency.arg.word))): Math.exp(lex.score(dependency.arg, -1, wordIndex.get(dependency.arg.word)));
+        IntTaggedWord aTW = new IntTaggedWord(aW, aT);
+        p_aTW_aT = dependencyLeftHeaded ? Math.exp(lex.score(aTW, 1, wordIndex.get(aW))): Math.exp(lex.score(aTW, -1, wordIndex.get(aW)));
         // double oldScore = c_aTW > 0.0 ? (c_aTW / c_aT) : 1.0;
         // if (oldScore == 1.0) {
         //  System.err.println("#### arg=" + dependency.arg + " score=" + p_aTW_aT +
@@ -688,7 +739,7 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
                          ", P(go|hTWds)=" + nf.format(pb_go_hTWds) + ", score=" + nf.format(score));
     }
 
-    if (op.testOptions.prunePunc && pruneTW(aTW)) {
+    if (op.testOptions.prunePunc && pruneTag(aT)) {
       return 1.0;
     }
 
@@ -714,18 +765,17 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
    *  @return The probability of generating this stop probability
    */
   protected double getStopProb(IntDependency dependency) {
-    short binDistance = distanceBin(dependency.distance);
-    IntTaggedWord unknownHead = new IntTaggedWord(-1, dependency.head.tag);
-    IntTaggedWord anyHead = new IntTaggedWord(ANY_WORD_INT, dependency.head.tag);
-
-    IntDependency temp = new IntDependency(dependency.head, stopTW, dependency.leftHeaded, binDistance);
-    double c_stop_hTWds = stopCounter.getCount(temp);
-    temp = new IntDependency(unknownHead, stopTW, dependency.leftHeaded, binDistance);
-    double c_stop_hTds = stopCounter.getCount(temp);
-    temp = new IntDependency(dependency.head, wildTW, dependency.leftHeaded, binDistance);
-    double c_hTWds = stopCounter.getCount(temp);
-    temp = new IntDependency(anyHead, wildTW, dependency.leftHeaded, binDistance);
-    double c_hTds = stopCounter.getCount(temp);
+    return getStopProb(dependency.head.word, dependency.head.tag, dependency.leftHeaded, dependency.distance);
+  }
+
+  private double getStopProb(int hW, short hT, boolean leftHeaded, int distance) {
+    short binDistance = distanceBin(distance);
+    IntDependencyCounts stopCounts = stopCounts();
+
+    double c_stop_hTWds = stopCounts.getCount(hW, hT, stopTW.word, stopTW.tag, leftHeaded, binDistance);
+    double c_stop_hTds = stopCounts.getCount(-1, hT, stopTW.word, stopTW.tag, leftHeaded, binDistance);
+    double c_hTWds = stopCounts.getCount(hW, hT, wildTW.word, wildTW.tag, leftHeaded, binDistance);
+    double c_hTds = stopCounts.getCount(ANY_WORD_INT, hT, wildTW.word, wildTW.tag, leftHeaded, binDistance);
 
     double p_stop_hTds = (c_hTds > 0.0 ? c_stop_hTds / c_hTds : 1.0);
 
@@ -824,11 +874,7 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
         IntDependency tempDependency = new IntDependency(tempHead, tempArg, fields[3].equals(LEFT), distance);
 
         double count = Double.parseDouble(fields[5]);
-        if (doingStop) {
-          expandStop(tempDependency, distance, count, false);
-        } else {
-          expandArg(tempDependency, distance, count);
-        }
+        addSavedDependency(tempDependency, count, doingStop);
       } catch (Exception e) {
         IOException ioe = new IOException("Error on line " + lineNum + ": " + line);
         ioe.initCause(e);
@@ -846,24 +892,57 @@ public class MLEDependencyGrammar extends AbstractDependencyGrammar {
   public void writeData(PrintWriter out) throws IOException {
     // all lines have one rule per line
 
+    for (IntDependency dependency : argDependenciesToWrite()) {
+      double count = argCounter.getCount(dependency);
+      out.println(dependency.toString(wordIndex, tagIndex) + " " + count);
+    }
+
+    out.println("BEGIN_STOP");
+
+    for (IntDependency dependency : stopDependenciesToWrite()) {
+      double count = stopCounter.getCount(dependency);
+      out.println(dependency.toString(wordIndex, tagIndex) + " " + count);
+    }
+
+    out.flush();
+  }
+
+  /** The dependencies of argCounter which writeData() writes out. */
+  List<IntDependency> argDependenciesToWrite() {
+    List<IntDependency> deps = new ArrayList<IntDependency>();
     for (IntDependency dependency : argCounter.keySet()) {
       if (dependency.head != wildTW && dependency.arg != wildTW &&
               dependency.head.word != -1 && dependency.arg.word != -1) {
-        double count = argCounter.getCount(dependency);
-        out.println(dependency.toString(wordIndex, tagIndex) + " " + count);
+        deps.add(dependency);
       }
     }
+    return deps;
+  }
 
-    out.println("BEGIN_STOP");
-
+  /** The dependencies of stopCounter which writeData() writes out. */
+  List<IntDependency> stopDependenciesToWrite() {
+    List<IntDependency> deps = new ArrayList<IntDependency>();
     for (IntDependency dependency : stopCounter.keySet()) {
       if (dependency.head.word != -1) {
-        double count = stopCounter.getCount(dependency);
-        out.println(dependency.toString(wordIndex, tagIndex) + " " + count);
+        deps.add(dependency);
       }
     }
+    return deps;
+  }
 
-    out.flush();
+  /** Adds the counts for a dependency written out by writeData(), as
+   *  readData() does for each line it reads.
+   *
+   *  @param dependency The dependency as written out
+   *  @param count Its count
+   *  @param stop Whether it came from stopCounter rather than argCounter
+   */
+  void addSavedDependency(IntDependency dependency, double count, boolean stop) {
+    if (stop) {
+      expandStop(dependency, dependency.distance, count, false);
+    } else {
+      expandArg(dependency, dependency.distance, count);
+    }
   }
 
   private static final long serialVersionUID = 1L;
@@ -234,12 +234,29 @@ public class Options implements Serializable {
       // train on only short sentences
       trainOptions.trainLengthLimit = Integer.parseInt(args[i + 1]);
       i += 2;
+    } else if (args[i].equalsIgnoreCase("-testingThreads") && (i + 1 < args.length)) {
+      testOptions.testingThreads = Integer.parseInt(args[i + 1]);
+      i += 2;
+    } else if (args[i].equalsIgnoreCase("-trainingThreads") && (i + 1 < args.length)) {
+      trainOptions.trainingThreads = Integer.parseInt(args[i + 1]);
+      i += 2;
     } else if (args[i].equalsIgnoreCase("-lengthNormalization")) {
       testOptions.lengthNormalization = true;
       i++;
     } else if (args[i].equalsIgnoreCase("-iterativeCKY")) {
       testOptions.iterativeCKY = true;
       i++;
+    } else if (args[i].equalsIgnoreCase("-beamCKY")) {
+      testOptions.beamCKY = true;
+      i++;
+    } else if (args[i].equalsIgnoreCase("-beamSize") && (i + 1 < args.length)) {
+      testOptions.beamCKY = true;
+      testOptions.beamSize = Integer.parseInt(args[i + 1]);
+      i += 2;
+    } else if (args[i].equalsIgnoreCase("-beamMargin") && (i + 1 < args.length)) {
+      testOptions.beamCKY = true;
+      testOptions.beamMargin = Float.parseFloat(args[i + 1]);
+      i += 2;
     } else if (args[i].equalsIgnoreCase("-vMarkov") && (i + 1 < args.length)) {
       int order = Integer.parseInt(args[i + 1]);
       if (order <= 1) {
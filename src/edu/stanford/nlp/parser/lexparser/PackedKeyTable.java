@@ -0,0 +1,126 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash table from pairs of <code>long</code>s to
+ * non-negative <code>int</code>s, for indexing the items of a chart.
+ * <p>
+ * A chart item is looked up by a handful of small ints (state, tag,
+ * head, start, end) which the callers pack into two longs, for instance
+ * with {@link #pack}, so a lookup builds no key object and nothing is
+ * boxed.  The table keeps its arrays when it is cleared, so one table can
+ * be reused from sentence to sentence without reallocating.
+ * <p>
+ * The first key of a pair must never be <code>Long.MIN_VALUE</code>.
+ */
+class PackedKeyTable {
+
+  /** Marks an empty slot. */
+  private static final long EMPTY = Long.MIN_VALUE;
+
+  private long[] keys1;
+  private long[] keys2;
+  private int[] values;
+  private int mask;
+  private int size; // = 0;
+
+
+  PackedKeyTable() {
+    allocate(64);
+  }
+
+  /**
+   * Packs four numbers of up to 16 bits each, such as sentence positions
+   * and a tag number, into one long.
+   */
+  static long pack(int a, int b, int c, int d) {
+    return ((a & 0xffffL) << 48) | ((b & 0xffffL) << 32) | ((c & 0xffffL) << 16) | (d & 0xffffL);
+  }
+
+  /** Returns the value stored for the key, or -1 if there is none. */
+  int get(long key1, long key2) {
+    int slot = slot(key1, key2);
+    long k;
+    while ((k = keys1[slot]) != EMPTY) {
+      if (k == key1 && keys2[slot] == key2) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Stores the value for the key unless the key is already present.
+   *
+   * @return The value already stored for the key, or -1 if the key was
+   *         not present and the given value was stored
+   */
+  int putIfAbsent(long key1, long key2, int value) {
+    int slot = slot(key1, key2);
+    long k;
+    while ((k = keys1[slot]) != EMPTY) {
+      if (k == key1 && keys2[slot] == key2) {
+        return values[slot];
+      }
+      slot = (slot + 1) & mask;
+    }
+    keys1[slot] = key1;
+    keys2[slot] = key2;
+    values[slot] = value;
+    size++;
+    if (size * 2 > keys1.length) {
+      rehash();
+    }
+    return -1;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Removes all the keys, keeping the arrays for reuse. */
+  void clear() {
+    if (size > 0) {
+      Arrays.fill(keys1, EMPTY);
+      size = 0;
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys1 = new long[capacity];
+    keys2 = new long[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+    Arrays.fill(keys1, EMPTY);
+  }
+
+  private void rehash() {
+    long[] oldKeys1 = keys1;
+    long[] oldKeys2 = keys2;
+    int[] oldValues = values;
+    allocate(oldKeys1.length * 2);
+    for (int i = 0; i < oldKeys1.length; i++) {
+      if (oldKeys1[i] != EMPTY) {
+        int slot = slot(oldKeys1[i], oldKeys2[i]);
+        while (keys1[slot] != EMPTY) {
+          slot = (slot + 1) & mask;
+        }
+        keys1[slot] = oldKeys1[i];
+        keys2[slot] = oldKeys2[i];
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  private int slot(long key1, long key2) {
+    // spread the bits, since states and positions are small and dense
+    long key = key1 * 0x9e3779b97f4a7c15L + key2;
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key & mask;
+  }
+
+}
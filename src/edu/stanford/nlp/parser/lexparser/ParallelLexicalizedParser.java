@@ -0,0 +1,196 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import edu.stanford.nlp.ling.HasWord;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.Treebank;
+
+/**
+ * Parses many sentences at once on several threads, all sharing the
+ * grammar of a single {@link LexicalizedParser}.
+ * <p>
+ * A fixed pool of {@link LexicalizedParserQuery} objects is kept, one per
+ * thread, so that the (large) charts each query allocates are reused from
+ * sentence to sentence rather than being built anew for every call, as
+ * happens with {@link LexicalizedParser#apply}.  Trees are always returned
+ * in the order of the input sentences.
+ * <p>
+ * Parsing doesn't change the shared grammar's scores or its indices: each
+ * query numbers the words it hasn't seen in a <code>DeltaIndex</code> of
+ * its own, and the unknown word models don't add the signatures of new
+ * words to the word index.  The lexicon and the unknown word models do
+ * fill caches while scoring, but they are safe to fill from several
+ * threads.  A lexicon or grammar class of your own must be safe in the
+ * same way.  The parser must not be trained, or have its options changed,
+ * while an instance is using it.
+ * <p>
+ * Usage:
+ * <pre>
+ *   ParallelLexicalizedParser pp = new ParallelLexicalizedParser(lp, 8);
+ *   List&lt;Tree&gt; trees = pp.parseAll(sentences);
+ *   ...
+ *   pp.shutdown();
+ * </pre>
+ * An instance may be used by several client threads at once.  Call
+ * {@link #shutdown} when done with it so its worker threads can exit.
+ */
+public class ParallelLexicalizedParser {
+
+  private final LexicalizedParser parser;
+  private final int numThreads;
+  private final ExecutorService executor;
+  private final BlockingQueue<LexicalizedParserQuery> queries;
+
+  /**
+   * Creates a parsing service with one worker thread (and one reusable
+   * parser query) per available processor.
+   */
+  public ParallelLexicalizedParser(LexicalizedParser parser) {
+    this(parser, Runtime.getRuntime().availableProcessors());
+  }
+
+  public ParallelLexicalizedParser(LexicalizedParser parser, int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+    }
+    this.parser = parser;
+    this.numThreads = numThreads;
+    this.queries = new ArrayBlockingQueue<LexicalizedParserQuery>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      queries.add(parser.parserQuery());
+    }
+    this.executor = newExecutor("LexicalizedParser-");
+  }
+
+  private ExecutorService newExecutor(final String threadName) {
+    return Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private int count; // = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, threadName + (++count));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  public int numThreads() {
+    return numThreads;
+  }
+
+  /**
+   * Parses a single sentence with one of the pooled queries, waiting for
+   * a query to become free if necessary.  If the sentence cannot be parsed,
+   * a trivial (X ...) tree is returned, as in {@link LexicalizedParser#apply}.
+   */
+  public Tree parse(List<? extends HasWord> sentence) {
+    LexicalizedParserQuery pq;
+    try {
+      pq = queries.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    try {
+      return parser.parseWithFallback(pq, sentence);
+    } finally {
+      queries.add(pq);
+    }
+  }
+
+  /**
+   * Parses all the sentences in parallel, returning their trees in
+   * input order.
+   *
+   * @param sentences The sentences to parse
+   * @return A list of the same length as sentences, containing the parse
+   *         tree for each sentence (or a trivial (X ...) tree if it could
+   *         not be parsed)
+   */
+  public List<Tree> parseAll(List<? extends List<? extends HasWord>> sentences) {
+    List<Future<Tree>> futures = new ArrayList<Future<Tree>>(sentences.size());
+    for (final List<? extends HasWord> sentence : sentences) {
+      futures.add(executor.submit(new Callable<Tree>() {
+        public Tree call() {
+          return parse(sentence);
+        }
+      }));
+    }
+    List<Tree> trees = new ArrayList<Tree>(sentences.size());
+    try {
+      for (Future<Tree> future : futures) {
+        trees.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      for (Future<Tree> future : futures) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      for (Future<Tree> future : futures) {
+        future.cancel(true);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    return trees;
+  }
+
+  /**
+   * Tests the parser on a treebank, as
+   * {@link LexicalizedParserQuery#testOnTreebank} does, but parsing the
+   * sentences on all the threads.  The sentences are still printed and
+   * evaluated in the order of the treebank, so the output and evaluation
+   * results are the same as when testing on one thread.
+   * <p>
+   * The test uses queries and threads of its own rather than the pooled
+   * ones, so it may run alongside calls to {@link #parse} and
+   * {@link #parseAll} without waiting for them or holding them up.  Its
+   * queries still take their charts from the shared {@link ChartPool}.
+   *
+   * @param testTreebank The treebank to parse
+   * @return The labeled precision/recall F<sub>1</sub> (EVALB measure)
+   *         of the parser on the treebank.
+   */
+  public double testOnTreebank(Treebank testTreebank) {
+    List<LexicalizedParserQuery> workers = new ArrayList<LexicalizedParserQuery>(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      workers.add(parser.parserQuery());
+    }
+    ExecutorService testExecutor = newExecutor("LexicalizedParser-test-");
+    try {
+      double f1 = workers.get(0).testOnTreebank(testTreebank, workers, testExecutor);
+      // only once every worker is done with its chart
+      for (LexicalizedParserQuery pq : workers) {
+        pq.releaseArrays();
+      }
+      return f1;
+    } finally {
+      testExecutor.shutdown();
+    }
+  }
+
+  /**
+   * Stops the worker threads.  Sentences already submitted are still
+   * parsed, but no new calls to {@link #parseAll} may be made.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+}
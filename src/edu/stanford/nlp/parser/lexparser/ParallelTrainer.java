@@ -0,0 +1,158 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TreeTransformer;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.Pair;
+
+/**
+ * Does the parts of training a parser that work tree by tree on several
+ * threads: transforming (annotating and binarizing) the training trees,
+ * and extracting the PCFG from them.
+ * <p>
+ * The results are always the same as when the work is done on a single
+ * thread.  The trees are transformed in batches, and the transformed trees
+ * are returned in the order of the input trees.  To extract the PCFG, the
+ * trees are cut into one contiguous piece per thread, each piece is tallied
+ * by its own {@link BinaryGrammarExtractor} into its own counts and state
+ * index, and the counts are then merged in order (see
+ * {@link BinaryGrammarExtractor#addCounts}), so that states are numbered
+ * and rules are added to the grammar in the same order as by a single
+ * extractor.
+ * <p>
+ * Call {@link #shutdown} when done, so the worker threads can exit.
+ */
+class ParallelTrainer {
+
+  /** The number of trees given to each thread at a time when transforming */
+  private static final int BATCH_SIZE = 500;
+
+  private final int numThreads;
+  private final ExecutorService executor;
+
+
+  ParallelTrainer(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+    }
+    this.numThreads = numThreads;
+    this.executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private int count; // = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "ParallelTrainer-" + (++count));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+
+  /**
+   * Transforms all the trees, adding the transformed trees to result in the
+   * order of the input trees.  The transformer must be safe to call from
+   * several threads at once.  Only a batch of trees is read ahead at a
+   * time, so the trees may come from a treebank on disk.
+   *
+   * @param result Where to put the transformed trees, or null if they
+   *     aren't wanted (when the transformer is run for its side effects)
+   */
+  void transformTrees(Iterable<Tree> trees, final TreeTransformer transformer, Collection<Tree> result) {
+    Iterator<Tree> it = trees.iterator();
+    while (it.hasNext()) {
+      List<Future<List<Tree>>> futures = new ArrayList<Future<List<Tree>>>(numThreads);
+      for (int thread = 0; thread < numThreads && it.hasNext(); thread++) {
+        final List<Tree> batch = new ArrayList<Tree>(BATCH_SIZE);
+        while (batch.size() < BATCH_SIZE && it.hasNext()) {
+          batch.add(it.next());
+        }
+        futures.add(executor.submit(new Callable<List<Tree>>() {
+          public List<Tree> call() {
+            List<Tree> transformed = new ArrayList<Tree>(batch.size());
+            for (Tree tree : batch) {
+              transformed.add(transformer.transformTree(tree));
+            }
+            return transformed;
+          }
+        }));
+      }
+      for (List<Tree> transformed : getAll(futures)) {
+        if (result != null) {
+          result.addAll(transformed);
+        }
+      }
+    }
+  }
+
+  /**
+   * Extracts the PCFG from the (binarized) trees, as
+   * <code>new BinaryGrammarExtractor(op, stateIndex).extract(trees)</code>
+   * does, adding the states to stateIndex.
+   */
+  Pair<UnaryGrammar,BinaryGrammar> extractPCFG(List<Tree> trees, final Options op, Index<String> stateIndex) {
+    int size = trees.size();
+    List<Future<BinaryGrammarExtractor>> futures = new ArrayList<Future<BinaryGrammarExtractor>>(numThreads);
+    for (int thread = 0; thread < numThreads; thread++) {
+      final List<Tree> piece = trees.subList(size * thread / numThreads, size * (thread + 1) / numThreads);
+      futures.add(executor.submit(new Callable<BinaryGrammarExtractor>() {
+        public BinaryGrammarExtractor call() {
+          BinaryGrammarExtractor extractor = new BinaryGrammarExtractor(op, new HashIndex<String>());
+          extractor.tallyTrees(piece, 1.0);
+          return extractor;
+        }
+      }));
+    }
+    BinaryGrammarExtractor extractor = new BinaryGrammarExtractor(op, stateIndex);
+    for (BinaryGrammarExtractor pieceExtractor : getAll(futures)) {
+      extractor.addCounts(pieceExtractor);
+    }
+    return extractor.formResult();
+  }
+
+  /**
+   * Stops the worker threads.  Work already submitted is still done.
+   */
+  void shutdown() {
+    executor.shutdown();
+  }
+
+
+  private static <T> List<T> getAll(List<Future<T>> futures) {
+    List<T> results = new ArrayList<T>(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    return results;
+  }
+
+}
@@ -0,0 +1,478 @@
+package edu.stanford.nlp.parser.lexparser;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.stats.Counter;
+import edu.stanford.nlp.util.HashIndex;
+import edu.stanford.nlp.util.Index;
+import edu.stanford.nlp.util.Timing;
+
+/**
+ * Reads and writes {@link ParserData} in a compact binary format which
+ * loads much faster than Java serialization or the text grammar format.
+ * <p>
+ * The file is laid out as a sequence of sections, in the same order as
+ * the text grammar format: options, the state, word and tag indices, the
+ * lexicon, the unary grammar, the binary grammar and the dependency
+ * grammar.  The big tables (index strings, rules and lexicon counts) are
+ * stored as columns of primitive values, so loading them is a bulk copy
+ * into arrays rather than the parsing of a line of text or the
+ * reconstruction of an object graph per entry.  The grammars and lexicon
+ * are then built on the heap from those arrays as usual, so each process
+ * which loads a grammar has its own copy of it.
+ * <p>
+ * The options are stored with Java serialization (they are small).  A
+ * lexicon which is not a plain {@link BaseLexicon} is stored in its text
+ * grammar format.  The dependency grammar, which must be a plain
+ * {@link MLEDependencyGrammar}, is stored as columns of the same
+ * dependencies that its text format lists.  As with text grammars, only
+ * the counts of the lexicon and its unknown word model are saved, so
+ * models whose unknown word model keeps other state must be saved
+ * serialized.
+ * <p>
+ * The file starts with a magic number and a format version, so that
+ * {@link LexicalizedParser#getParserDataFromFile} can recognize binary
+ * files and older readers can reject newer files.
+ */
+public class ParserDataBinaryFormat {
+
+  /** The first four bytes of a binary parser file: "LPBF". */
+  private static final int MAGIC = 0x4C504246;
+
+  private static final int VERSION = 2;
+
+  private static final byte LEXICON_BINARY = 0;
+  private static final byte LEXICON_TEXT = 1;
+
+  private ParserDataBinaryFormat() {} // static methods only
+
+
+  /**
+   * Saves the parser data to the given file in binary format.  The data is
+   * written to a temporary file in the same directory, which replaces the
+   * given file only once it is complete.
+   *
+   * @throws RuntimeIOException If there is an error writing the file
+   * @throws IllegalArgumentException If the dependency grammar is not a
+   *     plain MLEDependencyGrammar
+   */
+  public static void save(ParserData pd, String filename) {
+    if (pd.dg != null && pd.dg.getClass() != MLEDependencyGrammar.class) {
+      throw new IllegalArgumentException("A " + pd.dg.getClass().getName() + " can't be saved in binary format");
+    }
+    // get the text form of other lexicons first, since some can't write one
+    String lexiconText = null;
+    if (pd.lex.getClass() != BaseLexicon.class) {
+      try {
+        StringWriter w = new StringWriter();
+        pd.lex.writeData(w);
+        lexiconText = w.toString();
+      } catch (IOException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+
+    File file = new File(filename);
+    File tmpFile = null;
+    boolean written = false;
+    try {
+      System.err.print("Writing parser in binary format to file " + filename + ' ');
+      tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try {
+        write(out, pd, lexiconText);
+      } finally {
+        out.close();
+      }
+      // renameTo() won't replace an existing file on some platforms
+      if ( ! tmpFile.renameTo(file) && ! (file.delete() && tmpFile.renameTo(file))) {
+        throw new IOException("Couldn't rename " + tmpFile + " to " + file);
+      }
+      written = true;
+      System.err.println(" done.");
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    } finally {
+      if ( ! written && tmpFile != null) {
+        tmpFile.delete();
+      }
+    }
+  }
+
+  private static void write(DataOutputStream out, ParserData pd, String lexiconText) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream oos = new ObjectOutputStream(bytes);
+    oos.writeObject(pd.pt);
+    oos.close();
+    writeBytes(out, bytes.toByteArray());
+    System.err.print(".");
+
+    writeIndex(out, pd.stateIndex);
+    writeIndex(out, pd.wordIndex);
+    writeIndex(out, pd.tagIndex);
+    System.err.print(".");
+
+    if (lexiconText == null) {
+      BaseLexicon lex = (BaseLexicon) pd.lex;
+      out.writeByte(LEXICON_BINARY);
+      out.writeInt(lex.smooth.length);
+      for (double s : lex.smooth) {
+        out.writeDouble(s);
+      }
+      writeCounts(out, lex.seenCounter());
+      writeCounts(out, lex.getUnknownWordModel().unSeenCounter());
+    } else {
+      out.writeByte(LEXICON_TEXT);
+      writeString(out, lexiconText);
+    }
+    System.err.print(".");
+
+    List<UnaryRule> unaries = new ArrayList<UnaryRule>();
+    for (UnaryRule ur : pd.ug) {
+      unaries.add(ur);
+    }
+    out.writeInt(unaries.size());
+    for (UnaryRule ur : unaries) {
+      out.writeInt(ur.parent);
+    }
+    for (UnaryRule ur : unaries) {
+      out.writeInt(ur.child);
+    }
+    for (UnaryRule ur : unaries) {
+      out.writeFloat(ur.score);
+    }
+    System.err.print(".");
+
+    List<BinaryRule> binaries = new ArrayList<BinaryRule>();
+    for (BinaryRule br : pd.bg) {
+      binaries.add(br);
+    }
+    out.writeInt(binaries.size());
+    for (BinaryRule br : binaries) {
+      out.writeInt(br.parent);
+    }
+    for (BinaryRule br : binaries) {
+      out.writeInt(br.leftChild);
+    }
+    for (BinaryRule br : binaries) {
+      out.writeInt(br.rightChild);
+    }
+    for (BinaryRule br : binaries) {
+      out.writeFloat(br.score);
+    }
+    System.err.print(".");
+
+    if (pd.dg == null) {
+      out.writeBoolean(false);
+    } else {
+      MLEDependencyGrammar dg = (MLEDependencyGrammar) pd.dg;
+      out.writeBoolean(true);
+      writeDependencies(out, dg.argDependenciesToWrite(), dg.argCounter);
+      writeDependencies(out, dg.stopDependenciesToWrite(), dg.stopCounter);
+    }
+  }
+
+  /**
+   * Returns whether the named file is a binary parser file.  Only local
+   * files are checked; for anything else, false is returned.
+   */
+  public static boolean isBinaryFile(String filename) {
+    File file = new File(filename);
+    if ( ! file.isFile() || file.length() < 8) {
+      return false;
+    }
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        return in.readInt() == MAGIC;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Loads parser data from a binary parser file.
+   *
+   * @throws RuntimeIOException If there is an error reading the file
+   * @throws IllegalArgumentException If the file isn't a binary parser
+   *     file of a version this class can read
+   */
+  public static ParserData load(String filename) {
+    Timing tim = new Timing();
+    System.err.print("Loading parser from binary file " + filename + " ...");
+    ByteBuffer in;
+    try {
+      FileInputStream fis = new FileInputStream(filename);
+      try {
+        FileChannel channel = fis.getChannel();
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+          throw new IllegalArgumentException(filename + " is too large to be a binary parser file");
+        }
+        in = ByteBuffer.allocate((int) size);
+        while (in.hasRemaining()) {
+          if (channel.read(in) < 0) {
+            throw new EOFException(filename + " ended while it was being read");
+          }
+        }
+        in.flip();
+      } finally {
+        fis.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+    ParserData pd = load(in, filename);
+    System.err.println(" done [" + tim.toSecondsString() + " sec].");
+    return pd;
+  }
+
+  private static ParserData load(ByteBuffer in, String filename) {
+    if (in.getInt() != MAGIC) {
+      throw new IllegalArgumentException(filename + " is not a binary parser file");
+    }
+    int version = in.getInt();
+    if (version != VERSION) {
+      throw new IllegalArgumentException(filename + " is a binary parser file of version " + version + "; only version " + VERSION + " can be read");
+    }
+    try {
+      Options op;
+      ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)));
+      try {
+        op = (Options) ois.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException(e);
+      }
+      ois.close();
+
+      Index<String> stateIndex = readIndex(in);
+      Index<String> wordIndex = readIndex(in);
+      Index<String> tagIndex = readIndex(in);
+
+      Lexicon lex = op.tlpParams.lex(op, wordIndex, tagIndex);
+      byte lexiconFormat = in.get();
+      if (lexiconFormat == LEXICON_BINARY) {
+        if ( ! (lex instanceof BaseLexicon)) {
+          throw new IllegalArgumentException(filename + ": lexicon was saved as a BaseLexicon, but the options make a " + lex.getClass().getName());
+        }
+        BaseLexicon baseLex = (BaseLexicon) lex;
+        int numSmooth = in.getInt();
+        if (numSmooth != baseLex.smooth.length) {
+          throw new IllegalArgumentException(filename + ": lexicon was saved with " + numSmooth + " smoothing parameters, but a " + lex.getClass().getName() + " has " + baseLex.smooth.length);
+        }
+        for (int i = 0; i < numSmooth; i++) {
+          baseLex.smooth[i] = in.getDouble();
+        }
+        readCounts(in, baseLex, true);
+        readCounts(in, baseLex, false);
+        baseLex.initRulesWithWord();
+      } else {
+        lex.readData(new BufferedReader(new StringReader(readString(in))));
+      }
+
+      UnaryGrammar ug = new UnaryGrammar(stateIndex);
+      int numUnaries = in.getInt();
+      int[] parents = readInts(in, numUnaries);
+      int[] children = readInts(in, numUnaries);
+      float[] scores = readFloats(in, numUnaries);
+      for (int i = 0; i < numUnaries; i++) {
+        ug.addRule(new UnaryRule(parents[i], children[i], scores[i]));
+      }
+      ug.purgeRules();
+
+      BinaryGrammar bg = new BinaryGrammar(stateIndex);
+      int numBinaries = in.getInt();
+      parents = readInts(in, numBinaries);
+      int[] leftChildren = readInts(in, numBinaries);
+      int[] rightChildren = readInts(in, numBinaries);
+      scores = readFloats(in, numBinaries);
+      for (int i = 0; i < numBinaries; i++) {
+        bg.addRule(new BinaryRule(parents[i], leftChildren[i], rightChildren[i], scores[i]));
+      }
+      bg.splitRules();
+
+      DependencyGrammar dg = null;
+      if (in.get() != 0) {
+        MLEDependencyGrammar mleDg = new MLEDependencyGrammar(op.tlpParams, op.directional, op.distance, op.coarseDistance, op.trainOptions.basicCategoryTagsInDependencyGrammar, op, wordIndex, tagIndex);
+        readDependencies(in, mleDg, false);
+        readDependencies(in, mleDg, true);
+        dg = mleDg;
+      }
+      return new ParserData(lex, bg, ug, dg, stateIndex, wordIndex, tagIndex, op);
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+
+  private static void writeIndex(DataOutputStream out, Index<String> index) throws IOException {
+    int size = index.size();
+    byte[][] strings = new byte[size][];
+    int totalLength = 0;
+    for (int i = 0; i < size; i++) {
+      strings[i] = index.get(i).getBytes("UTF-8");
+      totalLength += strings[i].length;
+    }
+    out.writeInt(size);
+    out.writeInt(totalLength);
+    for (byte[] s : strings) {
+      out.writeInt(s.length);
+    }
+    for (byte[] s : strings) {
+      out.write(s);
+    }
+  }
+
+  private static Index<String> readIndex(ByteBuffer in) throws IOException {
+    int size = in.getInt();
+    int totalLength = in.getInt();
+    int[] lengths = readInts(in, size);
+    byte[] bytes = new byte[totalLength];
+    in.get(bytes);
+    Index<String> index = new HashIndex<String>(size);
+    int offset = 0;
+    for (int i = 0; i < size; i++) {
+      index.add(new String(bytes, offset, lengths[i], "UTF-8"));
+      offset += lengths[i];
+    }
+    return index;
+  }
+
+  private static void writeCounts(DataOutputStream out, Counter<IntTaggedWord> counter) throws IOException {
+    List<IntTaggedWord> keys = new ArrayList<IntTaggedWord>(counter.keySet());
+    out.writeInt(keys.size());
+    for (IntTaggedWord itw : keys) {
+      out.writeInt(itw.word);
+    }
+    for (IntTaggedWord itw : keys) {
+      out.writeInt(itw.tag);
+    }
+    for (IntTaggedWord itw : keys) {
+      out.writeDouble(counter.getCount(itw));
+    }
+  }
+
+  private static void readCounts(ByteBuffer in, BaseLexicon lex, boolean seen) {
+    int size = in.getInt();
+    int[] words = readInts(in, size);
+    int[] tags = readInts(in, size);
+    double[] counts = readDoubles(in, size);
+    for (int i = 0; i < size; i++) {
+      lex.addTagging(seen, new IntTaggedWord(words[i], tags[i]), counts[i]);
+    }
+  }
+
+  private static void writeDependencies(DataOutputStream out, List<IntDependency> deps, Counter<IntDependency> counter) throws IOException {
+    out.writeInt(deps.size());
+    for (IntDependency dep : deps) {
+      out.writeInt(dep.head.word);
+    }
+    for (IntDependency dep : deps) {
+      out.writeShort(dep.head.tag);
+    }
+    for (IntDependency dep : deps) {
+      out.writeInt(dep.arg.word);
+    }
+    for (IntDependency dep : deps) {
+      out.writeShort(dep.arg.tag);
+    }
+    for (IntDependency dep : deps) {
+      out.writeShort(dep.distance);
+    }
+    for (IntDependency dep : deps) {
+      out.writeBoolean(dep.leftHeaded);
+    }
+    for (IntDependency dep : deps) {
+      out.writeDouble(counter.getCount(dep));
+    }
+  }
+
+  private static void readDependencies(ByteBuffer in, MLEDependencyGrammar dg, boolean stop) {
+    int size = in.getInt();
+    int[] headWords = readInts(in, size);
+    short[] headTags = readShorts(in, size);
+    int[] argWords = readInts(in, size);
+    short[] argTags = readShorts(in, size);
+    short[] distances = readShorts(in, size);
+    byte[] leftHeaded = new byte[size];
+    in.get(leftHeaded);
+    double[] counts = readDoubles(in, size);
+    for (int i = 0; i < size; i++) {
+      IntDependency dep = new IntDependency(headWords[i], headTags[i], argWords[i], argTags[i], leftHeaded[i] != 0, distances[i]);
+      dg.addSavedDependency(dep, counts[i], stop);
+    }
+  }
+
+  private static int[] readInts(ByteBuffer in, int size) {
+    int[] values = new int[size];
+    in.asIntBuffer().get(values);
+    in.position(in.position() + size * 4);
+    return values;
+  }
+
+  private static short[] readShorts(ByteBuffer in, int size) {
+    short[] values = new short[size];
+    in.asShortBuffer().get(values);
+    in.position(in.position() + size * 2);
+    return values;
+  }
+
+  private static float[] readFloats(ByteBuffer in, int size) {
+    float[] values = new float[size];
+    in.asFloatBuffer().get(values);
+    in.position(in.position() + size * 4);
+    return values;
+  }
+
+  private static double[] readDoubles(ByteBuffer in, int size) {
+    double[] values = new double[size];
+    in.asDoubleBuffer().get(values);
+    in.position(in.position() + size * 8);
+    return values;
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static byte[] readBytes(ByteBuffer in) {
+    byte[] bytes = new byte[in.getInt()];
+    in.get(bytes);
+    return bytes;
+  }
+
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    writeBytes(out, s.getBytes("UTF-8"));
+  }
+
+  private static String readString(ByteBuffer in) throws IOException {
+    return new String(readBytes(in), "UTF-8");
+  }
+
+}
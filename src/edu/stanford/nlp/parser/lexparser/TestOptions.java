@@ -65,6 +65,39 @@ public class TestOptions implements Serializable {
   /** If true, use faster iterative deepening CKY algorithm. */
   public boolean iterativeCKY = false;
 
+  /**
+   * If true, do PCFG parsing with a beam in each chart cell, keeping only
+   * the best beamSize states, and only those within beamMargin of the
+   * best state in the cell (see BeamPCFGParser).  This is lossy: the
+   * beam often drops the best parse.  On 101 sentences with englishPCFG,
+   * against the parses of the exhaustive search, the PCFG pass is 2.7
+   * times as fast with an F1 of 89.8 at the default beamSize of 200, 2.3
+   * times as fast with 93.6 at 300, 1.7 times as fast with 96.3 at 500,
+   * and only 1.1 times as fast with 99.6 at 1000.
+   */
+  public boolean beamCKY = false;
+
+  /**
+   * In beam CKY parsing, the maximum number of states kept in each chart
+   * cell, or 0 for no limit.
+   */
+  public int beamSize = 200;
+
+  /**
+   * In beam CKY parsing, a state is only kept in a chart cell if its score
+   * is within this (negative) log probability of the best state in the cell.
+   */
+  public float beamMargin = Float.NEGATIVE_INFINITY;
+
+  /**
+   * The number of threads to parse the sentences of a test treebank with
+   * (see ParallelLexicalizedParser#testOnTreebank).  The output and the
+   * evaluation results are the same whatever the number of threads.
+   * Files to be parsed are tokenized on this many threads (see
+   * DocumentPreprocessor#setNumThreads).
+   */
+  public int testingThreads = 1;
+
   /**
    * The maximum sentence length (including punctuation, etc.) to parse.
    */
@@ -28,6 +28,12 @@ public class TrainOptions implements Serializable {
 
   public int trainLengthLimit = 100000;
 
+  /** The number of threads to annotate, binarize and extract the PCFG
+   *  from the training trees with.  The grammar trained is the same
+   *  whatever the number of threads.
+   */
+  public int trainingThreads = 1;
+
   /** Add all test set trees to training data for PCFG.
    *  (Currently only supported in FactoredParser main.)
    */
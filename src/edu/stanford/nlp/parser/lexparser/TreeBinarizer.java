@@ -227,7 +227,10 @@ public class TreeBinarizer implements TreeTransformer {
       }
     } else {
       // otherwise, count up the states
-      stateCounter.incrementCount(label.value(), 1.0); // we only care about the category
+      // (synchronized, since trees may be binarized by several threads at once)
+      synchronized (this) {
+        stateCounter.incrementCount(label.value(), 1.0); // we only care about the category
+      }
     }
     // finished making new label
     result = tf.newTreeNode(label, newChildren);
@@ -103,6 +103,9 @@ public class Americanize implements Function<HasWord,HasWord> {
       return timexMapping.get(str);
     } else if (mapping.containsKey(str)) {
       return mapping.get(str);
+    } else if (str.indexOf("aem") < 0 && str.indexOf("our") < 0 && str.indexOf("programme") < 0) {
+      // none of the patterns can match, so don't try them all
+      return str;
     } else {
       for (int i = 0; i < pats.length; i++) {
         Pattern ex = excepts[i];
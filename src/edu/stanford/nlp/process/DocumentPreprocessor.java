@@ -5,8 +5,21 @@ import java.net.*;
 import java.nio.charset.Charset;
 import java.nio.charset.IllegalCharsetNameException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import edu.stanford.nlp.io.IOUtils;
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations.AfterAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.BeforeAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+import edu.stanford.nlp.ling.HasOffset;
 import edu.stanford.nlp.ling.HasTag;
 import edu.stanford.nlp.ling.HasWord;
 import edu.stanford.nlp.objectbank.TokenizerFactory;
@@ -53,6 +66,7 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
    * match this regular expression.  Defaults to everything.
    */
   private String elementDelimiter = ".*";
+  private int numThreads = 1;
 
   //From PTB conventions
   private final String[] sentenceFinalFollowers = {")", "]", "\"", "\'", "''", "-RRB-", "-RSB-", "-RCB-"};
@@ -163,6 +177,25 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
    */
   public void setElementDelimiter(String s) { elementDelimiter = s; }
 
+  /**
+   * Tokenize and split the document into sentences on this many threads.
+   * If it is more than 1, plain text is cut into chunks at paragraph breaks
+   * (blank lines), and XML into the text of each element, and the chunks are
+   * tokenized at the same time, each by its own tokenizer.  The sentences
+   * are still returned in document order, and are the same as those found
+   * on one thread, except that a warning about untokenizable characters is
+   * given for each chunk rather than once.  The tokenizer factory and tag
+   * splitting are used from several threads; the escaper is not.
+   *
+   * @param numThreads The number of threads to use (1 by default)
+   */
+  public void setNumThreads(int numThreads) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+    }
+    this.numThreads = numThreads;
+  }
+
 
   /**
    * Returns sentences until the document is exhausted. Calls close() if the end of the document
@@ -174,7 +207,9 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
         inputReader = getReaderFromPath(inputPath);
 
       //TODO: Add new document types here
-      if (docType == DocType.Plain) {
+      if (numThreads > 1) {
+        return new ParallelIterator();
+      } else if (docType == DocType.Plain) {
         return new PlainTextIterator();
       } else if (docType == DocType.XML) {
         return new XMLIterator();
@@ -218,8 +253,30 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
     private Function<String, String[]> splitTag;
     private List<HasWord> nextSent = null;
     private List<HasWord> nextSentCarryover = new ArrayList<HasWord>();
+    private boolean nextSentComplete;
+    private boolean lastSentComplete;
+    private final Reader reader;
+    private final Function<List<HasWord>,List<HasWord>> sentEscaper;
+    private final boolean wholeDocument;
 
+    /** Iterates over the sentences of the whole document. */
     public PlainTextIterator() {
+      this(inputReader, escaper, true);
+    }
+
+    /**
+     * Iterates over the sentences of part of the document.
+     *
+     * @param reader The text, which is closed at the end
+     * @param sentEscaper The escaper applied to each sentence, or null
+     * @param wholeDocument Whether the reader is the document's inputReader,
+     *     which is forgotten at the end
+     */
+    PlainTextIterator(Reader reader, Function<List<HasWord>,List<HasWord>> sentEscaper, boolean wholeDocument) {
+      this.reader = reader;
+      this.sentEscaper = sentEscaper;
+      this.wholeDocument = wholeDocument;
+
       // Establish how to find sentence boundaries
       sentDelims = new HashSet<String>();
       boolean eolIsSignificant = false;
@@ -238,12 +295,12 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
       // Setup the tokenizer
       if(tokenizerFactory == null) {
         tokenizer = WhitespaceTokenizer.
-          newWordWhitespaceTokenizer(inputReader, eolIsSignificant);
+          newWordWhitespaceTokenizer(reader, eolIsSignificant);
       } else {
         if (eolIsSignificant) {
-          tokenizer = tokenizerFactory.getTokenizer(inputReader, "tokenizeNLs");
+          tokenizer = tokenizerFactory.getTokenizer(reader, "tokenizeNLs");
         } else {
-          tokenizer = tokenizerFactory.getTokenizer(inputReader);
+          tokenizer = tokenizerFactory.getTokenizer(reader);
         }
       }
 
@@ -316,14 +373,26 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
       }
 
       if (nextSent.size() == 0 && nextSentCarryover.size() == 0) {
-        IOUtils.closeIgnoringExceptions(inputReader);
-        inputReader = null;
+        IOUtils.closeIgnoringExceptions(reader);
+        if (wholeDocument) {
+          inputReader = null;
+        }
         nextSent = null;
-      } else if (escaper != null) {
-        nextSent = escaper.apply(nextSent);
+      } else {
+        nextSentComplete = seenBoundary;
+        if (sentEscaper != null) {
+          nextSent = sentEscaper.apply(nextSent);
+        }
       }
     }
 
+    /** Whether the sentence last returned by next() ended at a sentence
+     *  boundary, rather than at the end of the text.
+     */
+    boolean lastSentenceComplete() {
+      return lastSentComplete;
+    }
+
     public boolean hasNext() { 
       if (nextSent == null) {
         primeNext();
@@ -339,6 +408,7 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
         throw new NoSuchElementException();
       }
       List<HasWord> thisIteration = nextSent;
+      lastSentComplete = nextSentComplete;
       nextSent = null;
       return thisIteration;
     }
@@ -369,8 +439,7 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
           nextSent = plainItr.next();
         } else if (xmlItr.hasNext()) {
           String block = xmlItr.next();
-          inputReader = new BufferedReader(new StringReader(block));
-          plainItr = new PlainTextIterator();
+          plainItr = new PlainTextIterator(new StringReader(block), escaper, false);
           if (plainItr.hasNext()) {
             nextSent = plainItr.next();
           } else {
@@ -378,6 +447,7 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
           }
         } else {
           IOUtils.closeIgnoringExceptions(originalDocReader);
+          inputReader = null;
           nextSent = null;
           break;
         }
@@ -401,11 +471,345 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
   }
 
 
+  /**
+   * Splits the document into chunks which are tokenized and split into
+   * sentences on several threads.  A chunk of plain text ends just after a
+   * blank line, where the tokenizer (which looks at most two characters
+   * ahead) cannot join or split tokens differently than if it had read the
+   * whole document.  A sentence can still run over the blank line, so the
+   * last sentence of a chunk is joined to the first of the next unless it
+   * ended at a sentence boundary, and sentence-final punctuation and
+   * followers at the start of a chunk are moved onto the end of the
+   * previous sentence, as they would be on one thread.  The text of each
+   * XML element is a chunk by itself, just as it is split separately on
+   * one thread.  The worker threads exit once the document is read, or
+   * after a second idle if the iterator is dropped before that.
+   */
+  private class ParallelIterator implements Iterator<List<HasWord>> {
+
+    private static final int CHUNK_SIZE = 32768;
+
+    private final Reader reader;
+    private final XMLBeginEndIterator<String> xmlItr; // null for plain text
+    private final Set<String> sentDelims = new HashSet<String>();
+    private final Set<String> delimFollowers = new HashSet<String>();
+
+    private final ExecutorService executor;
+    // the chunks submitted and not yet taken, in document order
+    private final LinkedList<Future<Chunk>> pending = new LinkedList<Future<Chunk>>();
+    private final int maxPending = 2 * numThreads;
+    private boolean inputDone; // = false;
+    private boolean finished; // = false;
+
+    // plain text which has been read but not made into a chunk
+    private final StringBuilder text = new StringBuilder();
+    private final char[] readBuffer = new char[8192];
+    private int textOffset; // = 0; document offset of text
+    private int searchFrom; // = 0;
+    private int contentStart = -1;
+
+    // sentences ready to be returned, escaped
+    private final LinkedList<List<HasWord>> ready = new LinkedList<List<HasWord>>();
+    // the last sentence of the chunks taken so far, which may still grow
+    private List<HasWord> tail; // = null;
+    private boolean tailComplete; // = false;
+    private String tailAfter; // = null;
+    // the text of chunks with no tokens since the tail
+    private final StringBuilder gap = new StringBuilder();
+
+    public ParallelIterator() {
+      reader = inputReader;
+      xmlItr = (docType == DocType.XML) ? new XMLBeginEndIterator<String>(reader, elementDelimiter) : null;
+      // the same boundaries as a PlainTextIterator uses
+      if (sentenceDelimiter == null) {
+        if (sentenceFinalPuncWords != null) {
+          sentDelims.addAll(Arrays.asList(sentenceFinalPuncWords));
+        }
+        delimFollowers.addAll(Arrays.asList(sentenceFinalFollowers));
+      } else {
+        sentDelims.add(sentenceDelimiter);
+        if (sentenceDelimiter.matches("\\s+")) {
+          sentDelims.add(PTBLexer.NEWLINE_TOKEN);
+        }
+      }
+      // no core threads, so that idle ones exit; a chunk submitted while
+      // all the threads are busy is split by the calling thread instead
+      executor = new ThreadPoolExecutor(0, numThreads, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+        private int count; // = 0;
+        public synchronized Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "DocumentPreprocessor-" + (++count));
+          t.setDaemon(true);
+          return t;
+        }
+      }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public boolean hasNext() {
+      while (ready.isEmpty() && ! finished) {
+        while ( ! inputDone && pending.size() < maxPending) {
+          submitNextChunk();
+        }
+        if (pending.isEmpty()) {
+          finish();
+        } else {
+          take(pending.removeFirst());
+        }
+      }
+      return ! ready.isEmpty();
+    }
+
+    public List<HasWord> next() {
+      if ( ! hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return ready.removeFirst();
+    }
+
+    public void remove() { throw new UnsupportedOperationException(); }
+
+    private void submitNextChunk() {
+      final Chunk chunk;
+      if (xmlItr != null) {
+        chunk = xmlItr.hasNext() ? new Chunk(xmlItr.next(), 0) : null;
+      } else {
+        chunk = readPlainChunk();
+      }
+      if (chunk == null) {
+        inputDone = true;
+        return;
+      }
+      pending.add(executor.submit(new Callable<Chunk>() {
+        public Chunk call() {
+          chunk.split();
+          return chunk;
+        }
+      }));
+    }
+
+    /** Reads plain text up to a blank line at least CHUNK_SIZE characters
+     *  on, which has some text before it, or up to the end of the document.
+     */
+    private Chunk readPlainChunk() {
+      try {
+        while (true) {
+          if (contentStart < 0) {
+            for (int i = 0; i < text.length(); i++) {
+              if ( ! Character.isWhitespace(text.charAt(i))) {
+                contentStart = i;
+                break;
+              }
+            }
+          }
+          if (text.length() > CHUNK_SIZE && contentStart >= 0) {
+            int end = findParagraphBreak(Math.max(searchFrom, Math.max(CHUNK_SIZE, contentStart)));
+            if (end >= 0) {
+              Chunk chunk = new Chunk(text.substring(0, end), textOffset);
+              text.delete(0, end);
+              textOffset += end;
+              searchFrom = 0;
+              contentStart = -1;
+              return chunk;
+            }
+          }
+          int n = reader.read(readBuffer);
+          if (n < 0) {
+            if (text.length() == 0) {
+              return null;
+            }
+            Chunk chunk = new Chunk(text.toString(), textOffset);
+            textOffset += text.length();
+            text.setLength(0);
+            return chunk;
+          }
+          text.append(readBuffer, 0, n);
+        }
+      } catch (IOException e) {
+        throw new RuntimeIOException(e);
+      }
+    }
+
+    /** Returns the offset just after a line break which ends a blank line
+     *  (one with only spaces and tabs), searching for the line break before
+     *  it from <code>from</code>.  If there is none, -1 is returned, and the
+     *  next search starts from the last line break, which may yet turn out
+     *  to be followed by a blank line.
+     */
+    private int findParagraphBreak(int from) {
+      int length = text.length();
+      int lastNewline = -1;
+      for (int i = from; i < length; i++) {
+        if (text.charAt(i) == '\n') {
+          lastNewline = i;
+          int j = i + 1;
+          while (j < length && (text.charAt(j) == ' ' || text.charAt(j) == '\t' || text.charAt(j) == '\r')) {
+            j++;
+          }
+          if (j < length && text.charAt(j) == '\n') {
+            return j + 1;
+          }
+          i = j - 1;
+        }
+      }
+      searchFrom = (lastNewline >= 0) ? lastNewline : length;
+      return -1;
+    }
+
+    private void take(Future<Chunk> future) {
+      Chunk chunk;
+      try {
+        chunk = future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+      if (xmlItr != null) {
+        for (List<HasWord> sentence : chunk.sentences) {
+          addReady(sentence);
+        }
+        return;
+      }
+      List<List<HasWord>> sentences = chunk.sentences;
+      if (sentences.isEmpty()) {
+        gap.append(chunk.text);
+        return;
+      }
+      int first = 0;
+      if (tail != null) {
+        List<HasWord> sentence = sentences.get(0);
+        if ( ! tail.isEmpty() && ! sentence.isEmpty()) {
+          joinWhitespace(tail.get(tail.size() - 1), sentence.get(0));
+        }
+        gap.setLength(0);
+        if ( ! tailComplete) {
+          tail.addAll(sentence);
+          sentences.set(0, tail);
+        } else {
+          int moved = 0;
+          if ( ! delimFollowers.isEmpty()) {
+            while (moved < sentence.size() &&
+                   (sentDelims.contains(sentence.get(moved).word()) ||
+                    delimFollowers.contains(sentence.get(moved).word()))) {
+              tail.add(sentence.get(moved));
+              moved++;
+            }
+          }
+          if (moved == sentence.size()) {
+            // the whole first sentence belongs to the tail, which stays complete
+            if (sentences.size() == 1) {
+              tailAfter = chunk.lastAfter;
+              return;
+            }
+            first = 1;
+          } else {
+            sentences.set(0, new ArrayList<HasWord>(sentence.subList(moved, sentence.size())));
+          }
+          addReady(tail);
+        }
+      }
+      int last = sentences.size() - 1;
+      for (int i = first; i < last; i++) {
+        addReady(sentences.get(i));
+      }
+      tail = sentences.get(last);
+      tailComplete = chunk.lastComplete;
+      tailAfter = chunk.lastAfter;
+    }
+
+    /** Tokens from invertible tokenizers keep the whitespace before and
+     *  after them, which is split between the two chunks at a join.
+     */
+    private void joinWhitespace(HasWord before, HasWord after) {
+      if (before instanceof CoreLabel && after instanceof CoreLabel) {
+        CoreLabel left = (CoreLabel) before;
+        CoreLabel right = (CoreLabel) after;
+        String rightBefore = right.get(BeforeAnnotation.class);
+        if (tailAfter != null && rightBefore != null) {
+          String whitespace = tailAfter + gap + rightBefore;
+          left.set(AfterAnnotation.class, whitespace);
+          right.set(BeforeAnnotation.class, whitespace);
+        }
+      }
+    }
+
+    private void addReady(List<HasWord> sentence) {
+      ready.add((escaper == null) ? sentence : escaper.apply(sentence));
+    }
+
+    private void finish() {
+      if (tail != null) {
+        if (tailAfter != null && ! tail.isEmpty() && tail.get(tail.size() - 1) instanceof CoreLabel) {
+          ((CoreLabel) tail.get(tail.size() - 1)).set(AfterAnnotation.class, tailAfter + gap);
+        }
+        addReady(tail);
+        tail = null;
+      }
+      finished = true;
+      executor.shutdown();
+      IOUtils.closeIgnoringExceptions(reader);
+      inputReader = null;
+    }
+
+  } // end class ParallelIterator
+
+
+  /** A piece of the document, and the sentences found in it. */
+  private class Chunk {
+
+    private final String text;
+    private final int offset;
+    private final List<List<HasWord>> sentences = new ArrayList<List<HasWord>>();
+    private boolean lastComplete; // = false;
+    // the whitespace after the last token, which the tokenizer forgets
+    // when it is asked for another token at the end of the text
+    private String lastAfter; // = null;
+
+    Chunk(String text, int offset) {
+      this.text = text;
+      this.offset = offset;
+    }
+
+    /** Tokenizes the text and splits it into sentences, which are not
+     *  escaped, counting token offsets from the start of the document.
+     */
+    void split() {
+      PlainTextIterator it = new PlainTextIterator(new StringReader(text), null, false);
+      while (it.hasNext()) {
+        List<HasWord> sentence = it.next();
+        if (offset != 0) {
+          for (HasWord token : sentence) {
+            if (token instanceof HasOffset) {
+              HasOffset ho = (HasOffset) token;
+              if (ho.beginPosition() >= 0) {
+                ho.setBeginPosition(ho.beginPosition() + offset);
+                ho.setEndPosition(ho.endPosition() + offset);
+              }
+            }
+          }
+        }
+        sentences.add(sentence);
+        lastComplete = it.lastSentenceComplete();
+        if ( ! sentence.isEmpty() && sentence.get(sentence.size() - 1) instanceof CoreLabel) {
+          lastAfter = ((CoreLabel) sentence.get(sentence.size() - 1)).get(AfterAnnotation.class);
+        }
+      }
+    }
+
+  } // end class Chunk
+
+
   /**
    * This provides a simple test method for DocumentPreprocessor. <br/>
    * Usage:
    * java
-   * DocumentPreprocessor filename [-xml tag] [-suppressEscaping] [-noTokenization]
+   * DocumentPreprocessor filename [-xml tag] [-suppressEscaping] [-noTokenization] [-threads n]
    * <p>
    * A filename is required. The code doesn't run as a filter currently.
    * <p>
@@ -453,6 +857,9 @@ public class DocumentPreprocessor implements Iterable<List<HasWord>> {
       } else if (args[i].equals("-tag")) {
         docPreprocessor.setTagDelimiter(args[++i]);
 
+      } else if (args[i].equals("-threads") && i+1 < args.length) {
+        docPreprocessor.setNumThreads(Integer.parseInt(args[++i]));
+
       } else {
         System.err.println("Unknown option: " + args[i]);
       }
@@ -5,6 +5,8 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import edu.stanford.nlp.io.IOUtils;
@@ -41,7 +43,10 @@ import edu.stanford.nlp.util.Function;
  * you can do to get around this is build a new Morphology object for
  * each set of calls to the Morphology.  For example, the
  * MorphaAnnotator builds a Morphology for each document it annotates.
- * The other approach is to use the synchronized methods in this class.
+ * The other approach is to use the static methods in this class, which
+ * are thread-safe without locking: each thread has its own lexer, and the
+ * lemmas they find are kept in a bounded cache shared by all threads,
+ * which is split into shards so that threads seldom wait for each other.
  * <br>
  * @author Kristina Toutanova (kristina@cs.stanford.edu)
  * @author Christopher Manning
@@ -51,7 +56,16 @@ public class Morphology implements Function {
   private static final Logger LOGGER = Logger.getLogger(Morphology.class.getName());
 
   private static final boolean DEBUG = false;
-  private static Morpha staticLexer;
+
+  /** The lexer used by the static methods on each thread. */
+  private static final ThreadLocal<Morpha> staticLexer = new ThreadLocal<Morpha>() {
+    @Override
+    protected Morpha initialValue() {
+      return new Morpha(System.in);
+    }
+  };
+
+  private static final LemmaCache lemmaCache = new LemmaCache(16, 4096);
 
   private final Morpha lexer;
 
@@ -165,42 +179,157 @@ public class Morphology implements Function {
     }
   }
 
-  private static synchronized void initStaticLexer() {
-    if (staticLexer == null) {
-      staticLexer = new Morpha(System.in);
-    }
-  }
-
   /** Return a new WordTag which has the lemma as the value of word().
-   *  The default is to lowercase non-proper-nouns, unless options have
-   *  been set.
+   *  Words other than proper nouns are lowercased.
    */
   public static WordTag stemStatic(String word, String tag) {
-    initStaticLexer();
-    return new WordTag(lemmatize(word, tag, staticLexer, staticLexer.option(1)), tag);
+    return new WordTag(lemmaStatic(word, tag, true), tag);
   }
 
 
+  /** Returns the lemma of the word, being sensitive to the tag.  This
+   *  may be called from several threads at once.
+   *
+   *  @param lowercase If this is true, words other than proper nouns will
+   *      be changed to all lowercase.
+   */
   public static String lemmaStatic(String word, String tag,
                                    boolean lowercase) {
-    initStaticLexer();
-    return lemmatize(word, tag, staticLexer, lowercase);
+    String key = lemmaCache.key(word, tag, lowercase);
+    String lemma = lemmaCache.get(key);
+    if (lemma == null) {
+      lemma = lemmatize(word, tag, staticLexer.get(), lowercase);
+      if (lemma != null) {
+        lemmaCache.put(key, lemma);
+      }
+    }
+    return lemma;
   }
 
 
-
-  public static synchronized WordTag stemStaticSynchronized(String word,
-                                                            String tag) {
+  /** The same as {@link #stemStatic(String, String)}, which is itself
+   *  thread-safe now.
+   */
+  public static WordTag stemStaticSynchronized(String word, String tag) {
     return stemStatic(word, tag);
   }
 
 
-  public static synchronized String lemmaStaticSynchronized(String word,
-                                                            String tag,
-                                                            boolean lowercase) {
+  /** The same as {@link #lemmaStatic(String, String, boolean)}, which is
+   *  itself thread-safe now.
+   */
+  public static String lemmaStaticSynchronized(String word,
+                                               String tag,
+                                               boolean lowercase) {
     return lemmaStatic(word, tag, lowercase);
   }
 
+  /** The number of times the static methods have looked for a lemma in
+   *  the cache.
+   */
+  public static long lemmaCacheLookups() {
+    return lemmaCache.lookups();
+  }
+
+  /** The number of times the static methods have found a lemma in the
+   *  cache, rather than running the lexer.
+   */
+  public static long lemmaCacheHits() {
+    return lemmaCache.hits();
+  }
+
+
+  /**
+   * A bounded map from (word, tag, lowercase) to lemma, which can be used
+   * by several threads.  It is split into shards by the hash code of the
+   * key, each of which is locked separately and forgets its least
+   * recently used entries when it is full.
+   */
+  private static class LemmaCache {
+
+    private final Shard[] shards;
+
+    LemmaCache(int numShards, int shardSize) {
+      shards = new Shard[numShards];
+      for (int i = 0; i < numShards; i++) {
+        shards[i] = new Shard(shardSize);
+      }
+    }
+
+    String key(String word, String tag, boolean lowercase) {
+      StringBuilder sb = new StringBuilder(word.length() + 8);
+      sb.append(lowercase ? 'l' : 'u').append(tag).append(' ').append(word);
+      return sb.toString();
+    }
+
+    private Shard shard(String key) {
+      int h = key.hashCode();
+      h ^= (h >>> 16);
+      return shards[(h & 0x7fffffff) % shards.length];
+    }
+
+    String get(String key) {
+      Shard shard = shard(key);
+      synchronized (shard) {
+        shard.lookups++;
+        String lemma = shard.get(key);
+        if (lemma != null) {
+          shard.hits++;
+        }
+        return lemma;
+      }
+    }
+
+    void put(String key, String lemma) {
+      Shard shard = shard(key);
+      synchronized (shard) {
+        shard.put(key, lemma);
+      }
+    }
+
+    long lookups() {
+      long total = 0;
+      for (Shard shard : shards) {
+        synchronized (shard) {
+          total += shard.lookups;
+        }
+      }
+      return total;
+    }
+
+    long hits() {
+      long total = 0;
+      for (Shard shard : shards) {
+        synchronized (shard) {
+          total += shard.hits;
+        }
+      }
+      return total;
+    }
+
+  } // end class LemmaCache
+
+
+  private static class Shard extends LinkedHashMap<String,String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+    long lookups; // = 0;
+    long hits; // = 0;
+
+    Shard(int maxSize) {
+      super(maxSize * 4 / 3 + 1, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String,String> eldest) {
+      return size() > maxSize;
+    }
+
+  } // end class Shard
+
   /** Return a new WordTag which has the lemma as the value of word().
    *  The default is to lowercase non-proper-nouns, unless options have
    *  been set.
@@ -10326,6 +10326,35 @@ class PTBLexer {
    */
   public PTBLexer(Reader r, LexedTokenFactory<?> tf, String options) {
     this(r);
+    setOptions(tf, options);
+  }
+
+  /**
+   * Constructs a new PTBLexer which tokenizes the characters
+   * <code>text[offset]</code> to <code>text[offset + length - 1]</code>
+   * in place, rather than copying them into a buffer of its own.  The
+   * array must not be changed while it is being tokenized, and should
+   * hold just the text to be tokenized (such as one document), since
+   * rules with lookahead may use working space as long as the array.
+   * Character offsets are counted from <code>text[offset]</code>.
+   *
+   * @param text The array holding the text
+   * @param offset Where the text starts in the array
+   * @param length The number of characters of text
+   * @param tf The LexedTokenFactory to make tokens with, or null to only
+   *    find token spans with {@link #nextSpan()}
+   * @param options Options to the lexer, as for the Reader constructor
+   */
+  public PTBLexer(char[] text, int offset, int length, LexedTokenFactory<?> tf, String options) {
+    this((Reader) null);
+    setOptions(tf, options);
+    zzBuffer = text;
+    zzStartRead = zzCurrentPos = zzMarkedPos = offset;
+    zzEndRead = offset + length;
+    zzAtEOF = true; // all of the input is already in the buffer
+  }
+
+  private void setOptions(LexedTokenFactory<?> tf, String options) {
     this.tokenFactory = tf;
     if (options == null) {
       options = "";
@@ -10458,6 +10487,12 @@ class PTBLexer {
   private boolean escapeForwardSlashAsterisk = true;
   private boolean strictTreebank3 = false;
 
+  /* The current token span, if there is no token factory.  Either is
+   * null if it is the token's original text, not yet made into a String.
+   */
+  private String spanText;
+  private String spanOriginalText;
+
   /*
    * This has now been extended to cover the main Windows CP1252 characters,
    * at either their correct Unicode codepoints, or in their invalid
@@ -10508,6 +10543,9 @@ class PTBLexer {
   }
 
   private static String removeSoftHyphens(String in) {
+    if (in.indexOf('\u00AD') < 0) {
+      return (in.length() == 0) ? "-" : in;
+    }
     String result = in.replaceAll("\u00AD", "");
     if (result.length() == 0) {
       return "-";
@@ -10607,7 +10645,20 @@ class PTBLexer {
     return in.replaceAll("(?i:&amp;)", "&");
   }
 
+  private boolean hasSoftHyphen() {
+    for (int i = 0, len = yylength(); i < len; i++) {
+      if (yycharat(i) == '\u00AD') {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private Object getNext() {
+    if (tokenFactory == null) {
+      // the text is only made into a String if it is asked for
+      return getNext(null, null);
+    }
     final String txt = yytext();
     return getNext(txt, txt);
   }
@@ -10617,7 +10668,11 @@ class PTBLexer {
    *  @param originalText The original String that got transformed into txt
    */
   private Object getNext(String txt, String originalText) {
-    if (invertible) {
+    if (tokenFactory == null) {
+      spanText = txt;
+      spanOriginalText = originalText;
+      return this;
+    } else if (invertible) {
       String str = prevWordAfter.toString();
       prevWordAfter.setLength(0);
       CoreLabel word = (CoreLabel) tokenFactory.makeToken(txt, yychar, yylength());
@@ -10631,6 +10686,47 @@ class PTBLexer {
    }
   }
 
+  /**
+   * Finds the next token without making an object for it, for a lexer
+   * with no LexedTokenFactory.  The token is then described by
+   * {@link #spanBegin()}, {@link #spanLength()} and {@link #spanText()}
+   * until the next call.
+   *
+   * @return Whether there was another token
+   */
+  boolean nextSpan() throws java.io.IOException {
+    if (tokenFactory != null) {
+      throw new IllegalStateException("PTBLexer: nextSpan() is only for a lexer with no LexedTokenFactory");
+    }
+    return next() != null;
+  }
+
+  /** The character offset of the start of the current token span */
+  int spanBegin() {
+    return yychar;
+  }
+
+  /** The number of characters of original text in the current token span */
+  int spanLength() {
+    return yylength();
+  }
+
+  /** The (normalized) text of the current token span */
+  String spanText() {
+    if (spanText == null) {
+      spanText = spanOriginalText();
+    }
+    return spanText;
+  }
+
+  /** The original text of the current token span */
+  String spanOriginalText() {
+    if (spanOriginalText == null) {
+      spanOriginalText = yytext();
+    }
+    return spanOriginalText;
+  }
+
   private Object getNormalizedAmpNext() {
     final String txt = yytext();
     if (normalizeAmpersandEntity) {
@@ -11315,7 +11411,10 @@ class PTBLexer {
           }
         case 77: break;
         case 7: 
-          { final String origTxt = yytext();
+          { if (tokenFactory == null && ! americanize && ! hasSoftHyphen()) {
+                            return getNext();
+                          }
+                          final String origTxt = yytext();
 			  String tmp = removeSoftHyphens(origTxt);
                           if (americanize) {
                             tmp = Americanize.americanize(tmp);
@@ -0,0 +1,147 @@
+package edu.stanford.nlp.process;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+import edu.stanford.nlp.io.RuntimeIOException;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetBeginAnnotation;
+import edu.stanford.nlp.ling.CoreAnnotations.CharacterOffsetEndAnnotation;
+import edu.stanford.nlp.ling.CoreLabel;
+
+/**
+ * Tokenizes text like {@link PTBTokenizer}, but without making an object
+ * for each token.  Instead, the tokens are found one at a time, and the
+ * current token is described by its character offsets in the text.  Its
+ * text is only made into a String if it is asked for (by {@link #word()}
+ * or {@link #originalText()}), or it can be put into a
+ * <code>CoreLabel</code> which is reused from token to token.
+ * <p>
+ * Text which is already in a <code>char[]</code> (including a
+ * <code>CharBuffer</code> which wraps an array, such as one decoded from a
+ * memory-mapped file) is tokenized in place, without copying it.  Other
+ * <code>CharSequence</code>s are copied into an array once, and a Reader is
+ * read through a buffer, as by <code>PTBTokenizer</code>.
+ * <p>
+ * The options are as for <code>PTBTokenizer</code>, except that
+ * <code>invertible</code> is not allowed: the whitespace between tokens
+ * is given by their offsets.  Usage:
+ * <pre>
+ *   PTBTokenSpans spans = new PTBTokenSpans(text, "americanize=false");
+ *   while (spans.next()) {
+ *     int begin = spans.begin();
+ *     int end = spans.end();
+ *     String word = spans.word(); // only if needed
+ *   }
+ * </pre>
+ * A <code>PTBTokenSpans</code> should be used by only one thread.
+ */
+public class PTBTokenSpans {
+
+  private final PTBLexer lexer;
+
+
+  /**
+   * Tokenizes the characters <code>text[offset]</code> to
+   * <code>text[offset + length - 1]</code> in place.  The array must not be
+   * changed while it is being tokenized.  Offsets are counted from
+   * <code>text[offset]</code>.
+   */
+  public PTBTokenSpans(char[] text, int offset, int length, String options) {
+    lexer = new PTBLexer(text, offset, length, null, options);
+  }
+
+  /**
+   * Tokenizes the text, in place if it is a <code>CharBuffer</code> with a
+   * backing array, and otherwise from a copy.  Offsets are counted from
+   * the start of the sequence (the position of a <code>CharBuffer</code>).
+   */
+  public PTBTokenSpans(CharSequence text, String options) {
+    if (text instanceof CharBuffer && ((CharBuffer) text).hasArray()) {
+      CharBuffer buffer = (CharBuffer) text;
+      lexer = new PTBLexer(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), null, options);
+    } else {
+      char[] chars = toCharArray(text);
+      lexer = new PTBLexer(chars, 0, chars.length, null, options);
+    }
+  }
+
+  /**
+   * Tokenizes the text read from the Reader.  Since the Reader is read
+   * through a buffer which is reused, the text of a token can only be
+   * asked for before moving on to the next one.
+   */
+  public PTBTokenSpans(Reader r, String options) {
+    lexer = new PTBLexer(r, null, options);
+  }
+
+  private static char[] toCharArray(CharSequence text) {
+    if (text instanceof String) {
+      return ((String) text).toCharArray();
+    }
+    char[] chars = new char[text.length()];
+    if (text instanceof CharBuffer) {
+      ((CharBuffer) text).duplicate().get(chars);
+    } else {
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = text.charAt(i);
+      }
+    }
+    return chars;
+  }
+
+
+  /**
+   * Moves on to the next token.
+   *
+   * @return Whether there was another token
+   */
+  public boolean next() {
+    try {
+      return lexer.nextSpan();
+    } catch (IOException e) {
+      throw new RuntimeIOException(e);
+    }
+  }
+
+  /** The offset of the first character of the current token */
+  public int begin() {
+    return lexer.spanBegin();
+  }
+
+  /** The offset after the last character of the current token */
+  public int end() {
+    return lexer.spanBegin() + lexer.spanLength();
+  }
+
+  /** The current token, normalized according to the options (for example,
+   *  "(" becomes "-LRB-").
+   */
+  public String word() {
+    return lexer.spanText();
+  }
+
+  /** The original text of the current token */
+  public String originalText() {
+    return lexer.spanOriginalText();
+  }
+
+  /**
+   * Puts the current token into the label, with the same keys as a
+   * {@link CoreLabelTokenFactory} uses: the word and value, the original
+   * text, and the character offsets.  The same label can be passed in for
+   * each token.
+   *
+   * @return The label
+   */
+  public CoreLabel label(CoreLabel label) {
+    String word = word();
+    label.setValue(word);
+    label.setWord(word);
+    label.setOriginalText(originalText());
+    label.set(CharacterOffsetBeginAnnotation.class, begin());
+    label.set(CharacterOffsetEndAnnotation.class, end());
+    return label;
+  }
+
+}
@@ -252,6 +252,28 @@ public class PTBTokenizer<T extends HasWord> extends AbstractTokenizer<T> {
   }
 
 
+  /**
+   * Constructs a new PTBTokenizer which tokenizes the characters
+   * <code>text[offset]</code> to <code>text[offset + length - 1]</code>
+   * in place, rather than reading them through a Reader into a buffer.
+   * The array must not be changed while it is being tokenized.  Character
+   * offsets are counted from <code>text[offset]</code>.  To find tokens
+   * without making an object for each, see {@link PTBTokenSpans}.
+   *
+   * @param text The array holding the text
+   * @param offset Where the text starts in the array
+   * @param length The number of characters of text
+   * @param tokenFactory The LexedTokenFactory to use to create
+   *         tokens from the text.
+   * @param options Options to the lexer, as for the Reader constructor
+   */
+  public PTBTokenizer(final char[] text, final int offset, final int length,
+                      final LexedTokenFactory<T> tokenFactory,
+                      final String options) {
+    lexer = new PTBLexer(text, offset, length, tokenFactory, options);
+  }
+
+
   /**
    * Internally fetches the next token.
    *
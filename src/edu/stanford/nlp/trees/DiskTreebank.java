@@ -2,6 +2,14 @@ package edu.stanford.nlp.trees;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.GZIPInputStream;
 
 import edu.stanford.nlp.ling.HasIndex;
@@ -33,6 +41,11 @@ public final class DiskTreebank extends Treebank {
 	 */
 	private String currentFilename; // = null;
 
+	/*
+	 * Threads which read files ahead in iterator(), or 0 to read them as needed.
+	 */
+	private int prefetchThreads; // = 0;
+
 
 	/**
 	 * Create a new DiskTreebank. The trees are made with a <code>LabeledScoredTreeReaderFactory</code>.
@@ -132,8 +145,8 @@ public final class DiskTreebank extends Treebank {
 	}
 
 	/**
-	 * Returns the absolute path of the file currently being read.
-	 * 
+	 * Returns the absolute path of the file of the tree last returned by an
+	 * iterator.
 	 */
 	public String getCurrentFilename() {
 		return currentFilename;
@@ -147,33 +160,46 @@ public final class DiskTreebank extends Treebank {
 		PRINT_FILENAMES = true;
 	}
 
-	private class DiskTreebankIterator implements Iterator<Tree> {
+	/**
+	 * Make iterator() (and so apply()) read and parse the files ahead on
+	 * this many background threads, as {@link #iterator(int, boolean)} does,
+	 * with the trees still in treebank order.  With 0 (the default), each
+	 * file is read on the calling thread when its trees are needed.
+	 */
+	public void setPrefetchThreads(int numThreads) {
+		if (numThreads < 0) {
+			throw new IllegalArgumentException("Number of threads must not be negative: " + numThreads);
+		}
+		prefetchThreads = numThreads;
+	}
 
-		private TreeReader tr = null;
-		private Tree storedTree = null;  // null means iterator is exhausted (or not yet constructed)
+	/**
+	 * Lists the files of the treebank in the order in which they are read.
+	 * The paths are taken in turn, and the files in a directory are sorted
+	 * and come before those of its subdirectories.  In the case of a
+	 * recursive file filter, this is a BFS through the directory structure.
+	 */
+	private class FileLister {
 
 		//Create local copies so that calls to loadPath() in the parent class
 		//don't cause exceptions i.e., this iterator is valid over the state of DiskTreebank
 		//when the iterator is created.
-		private final List<File> localPathList;
-		private final List<FileFilter> localFilterList;
+		private final List<File> localPathList = new ArrayList<File>(filePaths);
+		private final List<FileFilter> localFilterList = new ArrayList<FileFilter>(fileFilters);
 		private int fileListPtr = 0;
 
-		private File currentFile;
-		private int curLineId = 1;
-
-		private List<File> curFileList;
-		private Iterator<File> curPathIter;
-
-		private DiskTreebankIterator() {
-			localPathList = new ArrayList<File>(filePaths);
-			localFilterList = new ArrayList<FileFilter>(fileFilters);
+		private Iterator<File> curPathIter = Collections.<File>emptyList().iterator();
 
-			if(primeNextPath() && primeNextFile())
-				storedTree = primeNextTree();
+		/** Returns the next file, or null if there are no more. */
+		File nextFile() {
+			while ( ! curPathIter.hasNext()) {
+				if ( ! primeNextPath()) {
+					return null;
+				}
+			}
+			return curPathIter.next();
 		}
 
-		//In the case of a recursive file filter, performs a BFS through the directory structure.
 		private boolean primeNextPath() {
 			while(fileListPtr < localPathList.size() && fileListPtr < localFilterList.size()) {
 				final File nextPath = localPathList.get(fileListPtr);
@@ -186,7 +212,7 @@ public final class DiskTreebank extends Treebank {
 				if(pathListing != null) {
 					if(pathListing.size() > 1) Collections.sort(pathListing);
 
-					curFileList = new ArrayList<File>();
+					List<File> curFileList = new ArrayList<File>();
 					for(File path : pathListing) {
 						if(path.isDirectory()) {
 							localPathList.add(path);
@@ -206,20 +232,41 @@ public final class DiskTreebank extends Treebank {
 
 			return false;
 		}
+	}
+
+	private TreeReader newTreeReader(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		if(file.getPath().endsWith(".gz")) {
+			in = new GZIPInputStream(in);
+		}
+		return treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(in, encoding())));
+	}
+
+	private class DiskTreebankIterator implements Iterator<Tree> {
+
+		private TreeReader tr = null;
+		private Tree storedTree = null;  // null means iterator is exhausted (or not yet constructed)
+		private String storedFilename = null;
+
+		private final FileLister fileLister = new FileLister();
+
+		private File currentFile;
+		private int curLineId = 1;
+
+		private DiskTreebankIterator() {
+			if(primeNextFile())
+				storedTree = primeNextTree();
+		}
 
 		private boolean primeNextFile() {
 			try {
-				if(curPathIter.hasNext() || (primeNextPath() && curPathIter.hasNext())) {
-					currentFile = curPathIter.next();
-					currentFilename = currentFile.getAbsolutePath();
+				File nextFile = fileLister.nextFile();
+				if(nextFile != null) {
+					currentFile = nextFile;
 					if(PRINT_FILENAMES) System.err.println(currentFile);
 
 					if(tr != null) tr.close();
-          if(currentFile.getPath().endsWith(".gz")){
-            tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(currentFile)), encoding())));
-          } else {
-					  tr = treeReaderFactory().newTreeReader(new BufferedReader(new InputStreamReader(new FileInputStream(currentFile), encoding())));
-          }
+					tr = newTreeReader(currentFile);
 					curLineId = 1;
 
 					return true;
@@ -243,7 +290,7 @@ public final class DiskTreebank extends Treebank {
 
 			try {
 				t = tr.readTree();
-				if(t == null && primeNextFile()) //Current file is exhausted
+				while(t == null && primeNextFile()) //Current file is exhausted
 					t = tr.readTree();
 
 				//Associate this tree with a file and line number
@@ -258,6 +305,7 @@ public final class DiskTreebank extends Treebank {
                                 throw new RuntimeException(e);
 			}
 
+			storedFilename = currentFile.getAbsolutePath();
 			return t;
 		}
 
@@ -274,6 +322,7 @@ public final class DiskTreebank extends Treebank {
 				throw new NoSuchElementException();
 
 			Tree ret = storedTree;
+			currentFilename = storedFilename;
 			storedTree = primeNextTree();
 			return ret;
 		}
@@ -285,6 +334,153 @@ public final class DiskTreebank extends Treebank {
 	}
 
 
+	/** The trees of one file, read by a PrefetchingIterator. */
+	private static class FileTrees {
+		final File file;
+		final List<Tree> trees = new ArrayList<Tree>();
+
+		FileTrees(File file) {
+			this.file = file;
+		}
+	}
+
+	/**
+	 * Reads and parses whole files on background threads, while the trees
+	 * of the files already read are being returned.  At most as many files
+	 * as there are threads are read ahead, so this many files' trees may be
+	 * in memory at once.  The threads die once they have been idle for a
+	 * while, so an iterator which is not run to the end does not leave them
+	 * behind.
+	 */
+	private class PrefetchingIterator implements Iterator<Tree> {
+
+		private final FileLister fileLister = new FileLister();
+		private final boolean inOrder;
+		private final int maxPending;
+		private final ExecutorService executor;
+		// in order: the files submitted and not yet taken, in treebank order
+		private final LinkedList<Future<FileTrees>> pending = new LinkedList<Future<FileTrees>>();
+		// out of order: the files, as they are finished
+		private final CompletionService<FileTrees> completed;
+		private int numPending; // = 0;
+		private boolean filesDone; // = false;
+
+		private Iterator<Tree> fileTrees = Collections.<Tree>emptyList().iterator();
+		private String fileName; // = null;
+
+		private PrefetchingIterator(int numThreads, boolean inOrder) {
+			if (numThreads < 1) {
+				throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+			}
+			this.inOrder = inOrder;
+			this.maxPending = numThreads;
+			executor = Executors.newCachedThreadPool(new ThreadFactory() {
+				private int count; // = 0;
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "DiskTreebank-" + (++count));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			completed = inOrder ? null : new ExecutorCompletionService<FileTrees>(executor);
+		}
+
+		public boolean hasNext() {
+			while ( ! fileTrees.hasNext()) {
+				while ( ! filesDone && numPending < maxPending) {
+					submitNextFile();
+				}
+				if (numPending == 0) {
+					executor.shutdown();
+					return false;
+				}
+				FileTrees next = take();
+				if(PRINT_FILENAMES) System.err.println(next.file);
+				fileName = next.file.getAbsolutePath();
+				fileTrees = next.trees.iterator();
+			}
+			return true;
+		}
+
+		public Tree next() {
+			if ( ! hasNext()) {
+				throw new NoSuchElementException();
+			}
+			currentFilename = fileName;
+			return fileTrees.next();
+		}
+
+		public void remove() { throw new UnsupportedOperationException(); }
+
+		private void submitNextFile() {
+			final File file = fileLister.nextFile();
+			if (file == null) {
+				filesDone = true;
+				return;
+			}
+			Callable<FileTrees> task = new Callable<FileTrees>() {
+				public FileTrees call() {
+					return readFile(file);
+				}
+			};
+			if (inOrder) {
+				pending.add(executor.submit(task));
+			} else {
+				completed.submit(task);
+			}
+			numPending++;
+		}
+
+		private FileTrees take() {
+			numPending--;
+			try {
+				return inOrder ? pending.removeFirst().get() : completed.take().get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if (cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			}
+		}
+
+		private FileTrees readFile(File file) {
+			FileTrees result = new FileTrees(file);
+			TreeReader tr = null;
+			try {
+				tr = newTreeReader(file);
+				int lineId = 1;
+				for (Tree t; (t = tr.readTree()) != null; ) {
+					//Associate this tree with a file and line number
+					if(t.label() != null && t.label() instanceof HasIndex) {
+						HasIndex lab = (HasIndex) t.label();
+						lab.setSentIndex(lineId++);
+						lab.setDocID(file.getName());
+					}
+					result.trees.add(t);
+				}
+			} catch (IOException e) {
+				System.err.printf("%s: Error reading from file %s:\n%s\n", this.getClass().getName(), file.getPath(), e.toString());
+				throw new RuntimeException(e);
+			} finally {
+				try {
+					if (tr != null) {
+						tr.close();
+					}
+				} catch (IOException e) {
+					// nothing useful to do if closing fails
+				}
+			}
+			return result;
+		}
+	}
+
+
 	/**
 	 * Return an Iterator over Trees in the Treebank.  This is implemented
 	 * by building per-file MemoryTreebanks for the files in the
@@ -293,7 +489,26 @@ public final class DiskTreebank extends Treebank {
 	 */
 	@Override
 	public Iterator<Tree> iterator() {
+		if (prefetchThreads > 0) {
+			return new PrefetchingIterator(prefetchThreads, true);
+		}
 		return new DiskTreebankIterator();
 	}
 
+	/**
+	 * Return an Iterator over Trees in the Treebank, whose files are read
+	 * and parsed on background threads, each of which reads a whole file at
+	 * a time, while the trees of the files already read are being returned.
+	 * The TreeReaderFactory must make TreeReaders which can be used on
+	 * different threads at once.
+	 *
+	 * @param numThreads The number of files to read at once, and ahead
+	 * @param inOrder If this is false, the files are returned in the order in
+	 *     which they finish being read, rather than in treebank order.  The
+	 *     trees of each file are always returned in order.
+	 */
+	public Iterator<Tree> iterator(int numThreads, boolean inOrder) {
+		return new PrefetchingIterator(numThreads, inOrder);
+	}
+
 }
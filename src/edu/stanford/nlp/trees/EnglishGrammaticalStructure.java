@@ -50,9 +50,14 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
    * @param t Parse tree to make grammatical structure from
    */
   public EnglishGrammaticalStructure(Tree t) {
-    this(t, new PennTreebankLanguagePack().punctuationWordRejectFilter());
+    this(t, PUNCTUATION_FILTER);
   }
 
+  // These don't change as they are used, so one of each serves all the
+  // structures made with the default settings
+  private static final Filter<String> PUNCTUATION_FILTER = new PennTreebankLanguagePack().punctuationWordRejectFilter();
+  private static final HeadFinder SEMANTIC_HEAD_FINDER = new SemanticHeadFinder(true);
+
   /**
    * This gets used by GrammaticalStructureFactory (by reflection). DON'T DELETE.
    *
@@ -60,7 +65,7 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
    * @param puncFilter Filter to remove punctuation dependencies
    */
   public EnglishGrammaticalStructure(Tree t, Filter<String> puncFilter) {
-    this(t, puncFilter, new SemanticHeadFinder(true), true);
+    this(t, puncFilter, SEMANTIC_HEAD_FINDER, true);
   }
 
   /**
@@ -1101,6 +1106,42 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
   // used by collapse3WP() KEPT IN ALPHABETICAL ORDER
   private static final String[][] THREEWORD_PREPS = { { "by", "means", "of" }, { "in", "accordance", "with" }, { "in", "addition", "to" }, { "in", "case", "of" }, { "in", "front", "of" }, { "in", "lieu", "of" }, { "in", "place", "of" }, { "in", "spite", "of" }, { "on", "account", "of" }, { "on", "behalf", "of" }, { "on", "top", "of" }, { "with", "regard", "to" }, { "with", "respect", "to" } };
 
+  /**
+   * The words of the governors and dependents of the dependencies, each
+   * folded to one case in the way <code>String.equalsIgnoreCase</code>
+   * compares characters.  A multiword preposition can only be collapsed
+   * when all its words are among these, so the others needn't be looked for.
+   */
+  private static Set<String> wordKeys(Collection<TypedDependency> list) {
+    Set<String> words = new HashSet<String>();
+    for (TypedDependency td : list) {
+      words.add(wordKey(td.gov().value()));
+      words.add(wordKey(td.dep().value()));
+    }
+    return words;
+  }
+
+  private static String wordKey(String word) {
+    if (word == null) {
+      return null;
+    }
+    char[] chars = word.toCharArray();
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+    }
+    return new String(chars);
+  }
+
+  /** Whether all the words of the (lowercase) multiword preposition are in words */
+  private static boolean containsWords(Set<String> words, String[] mwp) {
+    for (String word : mwp) {
+      if ( ! words.contains(word)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   /**
    * Given a list of typedDependencies, returns true if the node "node" is the
    * governor of a conj relation with a dependent which is not a preposition
@@ -1149,8 +1190,12 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
    */
   private static void collapse2WP(Collection<TypedDependency> list) {
     Collection<TypedDependency> newTypedDeps = new ArrayList<TypedDependency>();
+    Set<String> words = wordKeys(list);
 
     for (String[] mwp : MULTIWORD_PREPS) {
+      if ( ! containsWords(words, mwp)) {
+        continue;
+      }
       // first look for patterns such as:
       // X(gov, mwp[0])
       // Y(mpw[0],mwp[1])
@@ -1289,8 +1334,12 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
    */
   private static void collapse2WPbis(Collection<TypedDependency> list) {
     Collection<TypedDependency> newTypedDeps = new ArrayList<TypedDependency>();
+    Set<String> words = wordKeys(list);
 
     for (String[] mwp : MULTIWORD_PREPS) {
+      if ( ! containsWords(words, mwp)) {
+        continue;
+      }
 
       TreeGraphNode mwp0 = null;
       TreeGraphNode mwp1 = null;
@@ -1397,8 +1446,13 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
   private static void collapse3WP(Collection<TypedDependency> list) {
     Collection<TypedDependency> newTypedDeps = new ArrayList<TypedDependency>();
 
+    Set<String> words = wordKeys(list);
+
     // first, loop over the prepositions for NP annotation
     for (String[] mwp : THREEWORD_PREPS) {
+      if ( ! containsWords(words, mwp)) {
+        continue;
+      }
 
       TreeGraphNode mwp0 = null;
       TreeGraphNode mwp1 = null;
@@ -1498,6 +1552,9 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
 
     // second, loop again looking at flat annotation
     for (String[] mwp : THREEWORD_PREPS) {
+      if ( ! containsWords(words, mwp)) {
+        continue;
+      }
 
       TreeGraphNode mwp0 = null;
       TreeGraphNode mwp1 = null;
@@ -1636,8 +1693,12 @@ public class EnglishGrammaticalStructure extends GrammaticalStructure {
    */
   private static void collapseFlatMWP(Collection<TypedDependency> list) {
     Collection<TypedDependency> newTypedDeps = new ArrayList<TypedDependency>();
+    Set<String> words = wordKeys(list);
 
     for (String[] mwp : MULTIWORD_PREPS) {
+      if ( ! containsWords(words, mwp)) {
+        continue;
+      }
 
       TreeGraphNode mwp1 = null;
       TreeGraphNode governor = null;
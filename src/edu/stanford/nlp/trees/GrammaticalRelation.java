@@ -356,6 +356,13 @@ public class GrammaticalRelation implements Comparable<GrammaticalRelation>, Ser
     return nodeList;
   }
 
+  /** The patterns used to find the nodes related to a node by this
+   *  relation: see {@link #getRelatedNodes}.
+   */
+  List<TregexPattern> targetPatterns() {
+    return Collections.unmodifiableList(targetPatterns);
+  }
+
   /** Returns <code>true</code> iff the value of <code>Tree</code>
    *  node <code>t</code> matches the <code>sourcePattern</code> for
    *  this <code>GrammaticalRelation</code>, indicating that this
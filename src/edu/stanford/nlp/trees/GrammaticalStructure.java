@@ -11,6 +11,8 @@ import edu.stanford.nlp.ling.Word;
 import edu.stanford.nlp.trees.GrammaticalRelation.GrammaticalRelationAnnotation;
 import edu.stanford.nlp.trees.TreeCoreAnnotations.HeadTagAnnotation;
 import edu.stanford.nlp.trees.TreeCoreAnnotations.HeadWordAnnotation;
+import edu.stanford.nlp.trees.tregex.TregexPattern;
+import edu.stanford.nlp.trees.tregex.TregexPatternSet;
 import edu.stanford.nlp.util.Filter;
 import edu.stanford.nlp.util.Generics;
 
@@ -54,8 +56,13 @@ public abstract class GrammaticalStructure extends TreeGraph {
   private static final boolean PRINT_DEBUGGING = false;
 
   protected final Set<Dependency<Label, Label, Object>> dependencies;
+  // The basic typed dependencies, and these plus the extras, from which
+  // all the variants are made.  They are computed once, when the structure
+  // is built; correctDependencies is run on them once, when they are first
+  // asked for, and then each variant is made from a copy of them.
   protected final List<TypedDependency> typedDependencies;
   protected final List<TypedDependency> allTypedDependencies;
+  private boolean dependenciesCorrected; // = false
 
   /**
    * Create a new GrammaticalStructure, analyzing the parse tree and
@@ -77,6 +84,7 @@ public abstract class GrammaticalStructure extends TreeGraph {
     super(t); // makes a Tree with TreeGraphNode nodes
     // add head word and tag to phrase nodes
     root.percolateHeads(hf);
+    HeadNodes heads = new HeadNodes(root);
     // add dependencies, using heads
     NoPunctFilter puncDepFilter = new NoPunctFilter(puncFilter);
     NoPunctTypedDependencyFilter puncTypedDepFilter = new NoPunctTypedDependencyFilter(puncFilter);
@@ -92,16 +100,22 @@ public abstract class GrammaticalStructure extends TreeGraph {
       relationsLock.lock();
     }
     try {
-      analyzeNode(root, root, relations);
+      RelationPatterns relationPatterns = getRelationPatterns(relations);
+      analyzeNode(root, root, heads, relationPatterns, relationPatterns.patterns.matcher(root));
     }
     finally {
       if (relationsLock != null) {
         relationsLock.unlock();
       }
     }
-    // add typed dependencies
-    typedDependencies = getDeps(false, puncTypedDepFilter);
-    allTypedDependencies = getDeps(true, puncTypedDepFilter);
+    // add typed dependencies: the basic ones, and a copy of them with the extras
+    typedDependencies = getDeps(heads, puncTypedDepFilter);
+    allTypedDependencies = new ArrayList<TypedDependency>(typedDependencies.size());
+    for (TypedDependency td : typedDependencies) {
+      allTypedDependencies.add(new TypedDependency(td));
+    }
+    getDep(root, heads, allTypedDependencies, new HashSet<TypedDependency>(allTypedDependencies), puncTypedDepFilter);
+    Collections.sort(allTypedDependencies);
   }
 
 
@@ -232,33 +246,156 @@ public abstract class GrammaticalStructure extends TreeGraph {
 
 
   // cdm dec 2009: I changed this to automatically fail on preterminal nodes, since they shouldn't match for GR parent patterns.  Should speed it up.
-  private static void analyzeNode(TreeGraphNode t, TreeGraphNode root, Collection<GrammaticalRelation> relations) {
+  private static void analyzeNode(TreeGraphNode t, TreeGraphNode root, HeadNodes heads, RelationPatterns relationPatterns, TregexPatternSet.SetMatcher m) {
     // if (t.numChildren() > 0) {          // don't do leaves
     if (t.isPhrasal()) {    // don't do leaves or preterminals!
-      TreeGraphNode tHigh = t.highestNodeWithSameHead();
-      for (GrammaticalRelation egr : relations) {
-        if (egr.isApplicable(t)) {
-          for (Tree u : egr.getRelatedNodes(t, root)) {
-            tHigh.addArc(GrammaticalRelation.getAnnotationClass(egr), (TreeGraphNode) u);
+      TreeGraphNode tHigh = heads.highestNodeWithSameHead(t);
+      if (root.value() == null) {
+        // as in GrammaticalRelation.getRelatedNodes
+        for (GrammaticalRelation egr : relationPatterns.relations) {
+          if (egr.isApplicable(t)) {
+            root.setValue("ROOT");
+            break;
           }
         }
       }
+      // the matches at t of the target patterns of all the relations
+      while (m.findAt(t)) {
+        GrammaticalRelation egr = relationPatterns.patternRelations[m.getPatternIndex()];
+        if (egr.isApplicable(t)) {
+          tHigh.addArc(GrammaticalRelation.getAnnotationClass(egr), (TreeGraphNode) m.getNode("target"));
+        }
+      }
       // now recurse into children
       for (TreeGraphNode kid : t.children()) {
-        analyzeNode(kid, root, relations);
+        analyzeNode(kid, root, heads, relationPatterns, m);
       }
     }
   }
 
+  /**
+   * The head word node of every node of a tree whose heads have been
+   * percolated, and the highest node with the same head word, found in one
+   * pass over the tree and kept in arrays by node index, so that they
+   * needn't be looked up in the labels of the node and its ancestors each
+   * time they are wanted.  A node which isn't in the arrays (such as a copy
+   * made when collapsing) is looked up as usual.
+   */
+  private static class HeadNodes {
+    private final TreeGraphNode[] nodes;
+    private final TreeGraphNode[] headWordNodes;
+    private final TreeGraphNode[] highestNodes;
+
+    HeadNodes(TreeGraphNode root) {
+      int maxIndex = 0;
+      for (Tree t : root) {
+        maxIndex = Math.max(maxIndex, ((TreeGraphNode) t).index());
+      }
+      nodes = new TreeGraphNode[maxIndex + 1];
+      headWordNodes = new TreeGraphNode[maxIndex + 1];
+      highestNodes = new TreeGraphNode[maxIndex + 1];
+      add(root, -1);
+    }
+
+    private void add(TreeGraphNode node, int parentIndex) {
+      int index = node.index();
+      TreeGraphNode headWordNode = node.headWordNode();
+      TreeGraphNode highest;
+      if (parentIndex >= 0) {
+        highest = (headWordNodes[parentIndex] == headWordNode) ? highestNodes[parentIndex] : node;
+      } else {
+        // the root, or a node whose parent isn't in the arrays
+        highest = node.highestNodeWithSameHead();
+      }
+      if (index >= 0 && nodes[index] == null) {
+        nodes[index] = node;
+        headWordNodes[index] = headWordNode;
+        highestNodes[index] = highest;
+      } else {
+        index = -1; // not indexed uniquely, so its descendants look it up
+      }
+      for (TreeGraphNode kid : node.children()) {
+        add(kid, index);
+      }
+    }
+
+    private boolean contains(TreeGraphNode node) {
+      int index = node.index();
+      return index >= 0 && index < nodes.length && nodes[index] == node;
+    }
+
+    TreeGraphNode headWordNode(TreeGraphNode node) {
+      return contains(node) ? headWordNodes[node.index()] : node.headWordNode();
+    }
+
+    TreeGraphNode highestNodeWithSameHead(TreeGraphNode node) {
+      return contains(node) ? highestNodes[node.index()] : node.highestNodeWithSameHead();
+    }
+  }
 
   /**
-   * The constructor builds a list of typed dependencies using
-   * information from a <code>GrammaticalStructure</code>.
-   *
-   * @param getExtra If true, the list of typed dependencies will contain extra ones.
-   *              If false, the list of typed dependencies will respect the tree structure.
+   * The target patterns of all of a collection of relations, in one
+   * {@link TregexPatternSet}, so that each tree need only be searched
+   * once for all of them.
+   */
+  private static class RelationPatterns {
+    final GrammaticalRelation[] relations;
+    final TregexPatternSet patterns;
+    /** The relation whose target pattern each pattern in the set is */
+    final GrammaticalRelation[] patternRelations;
+
+    RelationPatterns(Collection<GrammaticalRelation> relations) {
+      this.relations = relations.toArray(new GrammaticalRelation[relations.size()]);
+      List<TregexPattern> patternList = new ArrayList<TregexPattern>();
+      List<GrammaticalRelation> patternRelationList = new ArrayList<GrammaticalRelation>();
+      for (GrammaticalRelation egr : this.relations) {
+        for (TregexPattern p : egr.targetPatterns()) {
+          patternList.add(p);
+          patternRelationList.add(egr);
+        }
+      }
+      patterns = new TregexPatternSet(patternList);
+      patternRelations = patternRelationList.toArray(new GrammaticalRelation[patternRelationList.size()]);
+    }
+
+    boolean isFor(Collection<GrammaticalRelation> relations) {
+      if (relations.size() != this.relations.length) {
+        return false;
+      }
+      int i = 0;
+      for (GrammaticalRelation egr : relations) {
+        if (egr != this.relations[i++]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The RelationPatterns built for each relation collection analyzed so far,
+   * so that structures for different languages can be built alternately
+   * without recompiling the pattern set each time.  Entries are rebuilt if
+   * the relations in their collection have changed since.
+   */
+  private static final Map<Collection<GrammaticalRelation>, RelationPatterns> relationPatternsCache = Generics.newWeakHashMap();
+
+  private static synchronized RelationPatterns getRelationPatterns(Collection<GrammaticalRelation> relations) {
+    RelationPatterns relationPatterns = relationPatternsCache.get(relations);
+    if (relationPatterns == null || ! relationPatterns.isFor(relations)) {
+      relationPatterns = new RelationPatterns(relations);
+      relationPatternsCache.put(relations, relationPatterns);
+    }
+    return relationPatterns;
+  }
+
+
+  /**
+   * The constructor builds the list of basic typed dependencies using
+   * information from a <code>GrammaticalStructure</code>.  These respect
+   * the tree structure.
    */
-  private List<TypedDependency> getDeps(boolean getExtra, Filter<TypedDependency> f) {
+  private List<TypedDependency> getDeps(HeadNodes heads, Filter<TypedDependency> f) {
     List<TypedDependency> basicDep = Generics.newArrayList();
 
     for (Dependency<Label, Label, Object> d : dependencies()) {
@@ -266,7 +403,7 @@ public abstract class GrammaticalStructure extends TreeGraph {
       TreeGraphNode dep = (TreeGraphNode) d.dependent();
         //System.out.println("Gov: " + gov);
         //System.out.println("Dep: " + dep);
-      GrammaticalRelation reln = getGrammaticalRelation(gov, dep);
+      GrammaticalRelation reln = getGrammaticalRelationOfHighest(heads.highestNodeWithSameHead(gov), heads.highestNodeWithSameHead(dep));
         //System.out.println("Reln: " + reln);
       basicDep.add(new TypedDependency(reln, gov, dep));
     }
@@ -288,8 +425,8 @@ public abstract class GrammaticalStructure extends TreeGraph {
           throw new AssertionError("Leaves should be TreeGraphNodes");
         }
         rootDep = (TreeGraphNode) leaf;
-        if (rootDep.headWordNode() != null) {
-          rootDep = rootDep.headWordNode();
+        if (heads.headWordNode(rootDep) != null) {
+          rootDep = heads.headWordNode(rootDep);
         }
       }
     } else {
@@ -305,10 +442,6 @@ public abstract class GrammaticalStructure extends TreeGraph {
       }
     }
 
-    if (getExtra) {
-      TreeGraphNode rootTree = root();
-      getDep(rootTree, basicDep, f); // adds stuff to basicDep
-    }
     Collections.sort(basicDep);
 
     return basicDep;
@@ -320,24 +453,27 @@ public abstract class GrammaticalStructure extends TreeGraph {
    *
    * @param t The tree to examine (not changed)
    * @param basicDep The list of dependencies which may be augmented
+   * @param basicDepSet The same dependencies as basicDep, for checking
+   *     whether a dependency is already there
    * @param f Additional dependencies are added only if they pass this filter
    */
-  private static void getDep(TreeGraphNode t, List<TypedDependency> basicDep,
-                             Filter<TypedDependency> f) {
+  private static void getDep(TreeGraphNode t, HeadNodes heads, List<TypedDependency> basicDep,
+                             Set<TypedDependency> basicDepSet, Filter<TypedDependency> f) {
     if (t.isPhrasal()) {          // don't do leaves of POS tags (chris changed this from numChildren > 0 in 2010)
       Map<Class<? extends CoreAnnotation>, Set<TreeGraphNode>> depMap = getAllDependents(t);
       for (Class<? extends CoreAnnotation> depName : depMap.keySet()) {
         for (TreeGraphNode depNode : depMap.get(depName)) {
-          TreeGraphNode gov = t.headWordNode();
-          TreeGraphNode dep = depNode.headWordNode();
+          TreeGraphNode gov = heads.headWordNode(t);
+          TreeGraphNode dep = heads.headWordNode(depNode);
           if (gov != dep) {
-            List<GrammaticalRelation> rels = getListGrammaticalRelation(t, depNode);
+            List<GrammaticalRelation> rels = getListGrammaticalRelation(heads.highestNodeWithSameHead(t), depNode, heads.highestNodeWithSameHead(depNode));
             if (!rels.isEmpty()) {
               for (GrammaticalRelation rel : rels) {
                 TypedDependency newDep = new TypedDependency(rel, gov, dep);
-                if (!basicDep.contains(newDep) && f.accept(newDep)) {
+                if (!basicDepSet.contains(newDep) && f.accept(newDep)) {
                   newDep.setExtra();
                   basicDep.add(newDep);
+                  basicDepSet.add(newDep);
                 }
               }
             }
@@ -345,8 +481,8 @@ public abstract class GrammaticalStructure extends TreeGraph {
         }
       }
       // now recurse into children
-      for (Tree kid : t.children()) {
-        getDep((TreeGraphNode) kid, basicDep, f);
+      for (TreeGraphNode kid : t.children()) {
+        getDep(kid, heads, basicDep, basicDepSet, f);
       }
     }
   }
@@ -465,12 +601,16 @@ public abstract class GrammaticalStructure extends TreeGraph {
    * governor of dep
    */
   public static GrammaticalRelation getGrammaticalRelation(TreeGraphNode gov, TreeGraphNode dep) {
+    return getGrammaticalRelationOfHighest(gov.highestNodeWithSameHead(), dep.highestNodeWithSameHead());
+  }
+
+  /**
+   * Get the GrammaticalRelation between govH and depH, which are the
+   * highest nodes with the same heads as the governor and the dependent.
+   */
+  private static GrammaticalRelation getGrammaticalRelationOfHighest(TreeGraphNode govH, TreeGraphNode depH) {
     GrammaticalRelation reln = GrammaticalRelation.DEPENDENT;
-    TreeGraphNode govH = gov.highestNodeWithSameHead();
-    TreeGraphNode depH = dep.highestNodeWithSameHead();
-    /*System.out.println("gov node " + gov);
-    System.out.println("govH " + govH);
-    System.out.println("dep node " + dep);
+    /*System.out.println("govH " + govH);
     System.out.println("depH " + depH);*/
 
     // Set sortedSet = new TreeSet(new NameComparator());
@@ -517,12 +657,18 @@ public abstract class GrammaticalStructure extends TreeGraph {
    * two nodes can be linked by multiple arcs.
    */
   public static List<GrammaticalRelation> getListGrammaticalRelation(TreeGraphNode gov, TreeGraphNode dep) {
+    return getListGrammaticalRelation(gov.highestNodeWithSameHead(), dep, dep.highestNodeWithSameHead());
+  }
+
+  /**
+   * Get the list of GrammaticalRelations from govH, the highest node with
+   * the same head as the governor, to dep and to depH, the highest node
+   * with the same head as dep.
+   */
+  private static List<GrammaticalRelation> getListGrammaticalRelation(TreeGraphNode govH, TreeGraphNode dep, TreeGraphNode depH) {
     List<GrammaticalRelation> list = new ArrayList<GrammaticalRelation>();
-    TreeGraphNode govH = gov.highestNodeWithSameHead();
-    TreeGraphNode depH = dep.highestNodeWithSameHead();
 
-    /*System.out.println("Extra gov node " + gov);
-    System.out.println("govH " + govH);
+    /*System.out.println("govH " + govH);
     System.out.println("dep node " + dep);
     System.out.println("depH " + depH);*/
 
@@ -591,10 +737,28 @@ public abstract class GrammaticalStructure extends TreeGraph {
    * returned may include "extras", and does not follow a tree structure.
    */
   public List<TypedDependency> typedDependencies(boolean includeExtras) {
-    List<TypedDependency> deps = includeExtras ? allTypedDependencies
-                                                       : typedDependencies;
-    correctDependencies(deps);
-    return deps;
+    List<TypedDependency> deps = correctedDependencies(includeExtras);
+    // a copy, since the collapsing operations change the list and the
+    // dependencies in it
+    List<TypedDependency> copy = new ArrayList<TypedDependency>(deps.size());
+    for (TypedDependency td : deps) {
+      copy.add(new TypedDependency(td));
+    }
+    return copy;
+  }
+
+  /** The basic or all typed dependencies of this grammatical structure,
+   *  having run correctDependencies on them if that hasn't yet been done.
+   */
+  private synchronized List<TypedDependency> correctedDependencies(boolean includeExtras) {
+    if ( ! dependenciesCorrected) {
+      correctDependencies(typedDependencies);
+      if (allTypedDependencies != typedDependencies) {
+        correctDependencies(allTypedDependencies);
+      }
+      dependenciesCorrected = true;
+    }
+    return includeExtras ? allTypedDependencies : typedDependencies;
   }
 
   /**
@@ -764,13 +928,9 @@ public abstract class GrammaticalStructure extends TreeGraph {
     Map<Class<? extends CoreAnnotation>, Set<TreeGraphNode>> newMap = Generics.newHashMap();
 
     for (Class<?> o : node.label.keySet()) {
-      try {
-        // The line below will exception unless it's a GrammaticalRelationAnnotation,
-        // so the effect is that only the GrammaticalRelationAnnotation things get put into newMap
-        o.asSubclass(GrammaticalRelationAnnotation.class);
+      // only the GrammaticalRelationAnnotation things get put into newMap
+      if (GrammaticalRelationAnnotation.class.isAssignableFrom(o)) {
         newMap.put((Class<? extends CoreAnnotation>) o, (Set<TreeGraphNode>) node.label.get((Class<? extends CoreAnnotation>) o));//javac doesn't compile properly if generics are fully specified (but eclipse does...)
-      } catch (Exception e) {
-        // ignore a non-GrammaticalRelationAnnotation element
       }
     }
     return newMap;
@@ -83,6 +83,17 @@ public class TreePrint {
    */
   private final PrintWriter pw = new PrintWriter(System.out, true);
 
+  /** Writes the CoNLL formats, reusing its buffers from sentence to
+   *  sentence.  There is one per thread, since trees may be printed from
+   *  several threads at once.
+   */
+  private static final ThreadLocal<ConllWriter> conllWriter = new ThreadLocal<ConllWriter>() {
+    @Override
+    protected ConllWriter initialValue() {
+      return new ConllWriter();
+    }
+  };
+
 
   /** The anglocentric constructor. Should work for English only.
    *  @param formats The formats to print the tree in.
@@ -532,40 +543,9 @@ public class TreePrint {
         // CoNLL-X 2007 format: http://ilk.uvt.nl/conll/#dataformat
         // wsg: This code should be retained (and not subsumed into EnglishGrammaticalStructure) so
         //      that dependencies for other languages can be printed.
-        // wsg2011: This code currently ignores the dependency label since the present implementation
-        //          of mapDependencies() returns UnnamedDependency objects.
-
-        Tree it = outputTree.deepCopy(outputTree.treeFactory(), CoreLabel.factory());
-        it.indexLeaves();
-
-        List<CoreLabel> tagged = it.taggedLabeledYield();
-        Set<Dependency<Label, Label, Object>> depsSet = it.mapDependencies(dependencyFilter, hf, "root");
-        List<Dependency<Label, Label, Object>> sortedDeps = new ArrayList<Dependency<Label, Label, Object>>(depsSet);
-        Collections.sort(sortedDeps, Dependencies.dependencyIndexComparator());
-
-        for (int i = 0; i < tagged.size(); i++) {
-          CoreLabel w = tagged.get(i);
-          Dependency<Label, Label, Object> d = sortedDeps.get(i);
-          CoreMap dep = (CoreMap) d.dependent();
-          CoreMap gov = (CoreMap) d.governor();
-
-          Integer depi = dep.get(CoreAnnotations.IndexAnnotation.class);
-          Integer govi = gov.get(CoreAnnotations.IndexAnnotation.class);
-
-          // Used for both course and fine POS tag fields
-          String tag = PTBTokenizer.ptbToken2Text(w.tag());
-
-          String word = PTBTokenizer.ptbToken2Text(w.word());
-          String lemma = "_";
-          String feats = "_";
-          String pHead = "_";
-          String pDepRel = "_";
-          String depRel = (govi == 0) ? "ROOT" : "NULL";
-
-          // The 2007 format has 10 fields
-          pw.printf("%d\t%s\t%s\t%s\t%s\t%s\t%d\t%s\t%s\t%s%n", depi,word,lemma,tag,tag,feats,govi,depRel,pHead,pDepRel);
-        }
-        pw.println();
+        // wsg2011: This code currently ignores the dependency label since the dependencies
+        //          are found from the tree with the HeadFinder, and so are untyped.
+        conllWriter.get().printConll2007(outputTree, dependencyFilter, hf, pw);
       }
       if (formats.containsKey("conllStyleDependencies")) {
         // TODO: Rewrite this to output StanfordDependencies using EnglishGrammaticalStructure code
@@ -580,11 +560,10 @@ public class TreePrint {
         }
 
         indexedTree = tn.normalizeWholeTree(indexedTree, outputTree.treeFactory());
-        indexedTree.indexLeaves();
-        Set<Dependency<Label, Label, Object>> depsSet = null;
+        ConllWriter writer = conllWriter.get();
         boolean failed = false;
         try {
-          depsSet = indexedTree.mapDependencies(dependencyFilter, hf);
+          writer.findGovernors(indexedTree, dependencyFilter, hf);
         } catch (Exception e) {
           failed = true;
         }
@@ -593,33 +572,7 @@ public class TreePrint {
           System.err.println(t);
           System.err.println();
         } else {
-          Map<Integer,Integer> deps = new HashMap<Integer, Integer>();
-          for (Dependency<Label, Label, Object> dep : depsSet) {
-            CoreLabel child = (CoreLabel)dep.dependent();
-            CoreLabel parent = (CoreLabel)dep.governor();
-            Integer childIndex =
-              child.get(CoreAnnotations.IndexAnnotation.class);
-            Integer parentIndex =
-              parent.get(CoreAnnotations.IndexAnnotation.class);
-//            System.err.println(childIndex+"\t"+parentIndex);
-            deps.put(childIndex, parentIndex);
-          }
-          boolean foundRoot = false;
-          int index = 1;
-          for (Tree node : indexedTree.getLeaves()) {
-            String word = node.label().value();
-            String tag = node.parent(indexedTree).label().value();
-            int parent = 0;
-            if (deps.containsKey(index)) {
-              parent = deps.get(index);
-            } else {
-              if (foundRoot) { throw new RuntimeException(); }
-              foundRoot = true;
-            }
-            pw.println(index+"\t"+word+"\t"+tag+"\t"+parent);
-            index++;
-          }
-          pw.println();
+          writer.printConllStyle(pw);
         }
       }
       if (formats.containsKey("typedDependencies")) {
@@ -691,6 +644,167 @@ public class TreePrint {
   }
 
 
+  /** Writes the untyped dependencies of a tree in the CoNLL formats.  The
+   *  governor of each word is found in one bottom-up pass over the tree,
+   *  into arrays as long as the sentence, and the lines are built in one
+   *  <code>StringBuilder</code>; all of these are kept for the next
+   *  sentence.  The dependencies are those of {@link Tree#mapDependencies},
+   *  but they are not gathered into a Set of <code>Dependency</code>s,
+   *  which treats two dependencies between the same words as equal, and so
+   *  would lose one when a sentence repeats a phrase.  A word whose
+   *  dependency the filter rejects is given 0 as its governor, like the
+   *  head of the sentence.
+   *  <p>
+   *  A <code>ConllWriter</code> should be used by only one thread at a time.
+   */
+  private static class ConllWriter {
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    private final StringBuilder buf = new StringBuilder(1024);
+
+    // per sentence, indexed by word position (counting from 0)
+    private Tree[] leaves = new Tree[64];
+    private Tree[] preterminals = new Tree[64];
+    private int[] governors = new int[64];
+    private int numWords;
+    // the head positions of the children of the nodes being visited
+    private int[] kidHeads = new int[64];
+    private int numKidHeads;
+
+    // ptbToken2Text runs a lexer over the token, so its results are kept
+    private static final int MAX_CACHED_TOKENS = 10000;
+    private final Map<String,String> ptbTextCache = new HashMap<String,String>();
+
+    /** Prints the dependencies in the CoNLL-X 2007 format, with ROOT as
+     *  the label of a word whose governor is 0, and NULL for the others.
+     */
+    void printConll2007(Tree tree, Filter<Dependency<Label, Label, Object>> f, HeadFinder hf, PrintWriter pw) {
+      findGovernors(tree, f, hf);
+      buf.setLength(0);
+      for (int i = 0; i < numWords; i++) {
+        // Used for both course and fine POS tag fields
+        String tag = ptbToken2Text(tagOf(i));
+        String word = ptbToken2Text(leaves[i].value());
+        int gov = governors[i];
+        // The 2007 format has 10 fields
+        buf.append(i + 1).append('\t').append(word).append("\t_\t");
+        buf.append(tag).append('\t').append(tag).append("\t_\t");
+        buf.append(gov).append('\t').append((gov == 0) ? "ROOT" : "NULL").append("\t_\t_");
+        buf.append(NEWLINE);
+      }
+      buf.append(NEWLINE);
+      pw.print(buf);
+    }
+
+    /** Prints the dependencies found by the last call to findGovernors as
+     *  index, word, tag and governor.
+     *
+     *  @throws RuntimeException If more than one word has 0 as its governor
+     */
+    void printConllStyle(PrintWriter pw) {
+      buf.setLength(0);
+      boolean foundRoot = false;
+      for (int i = 0; i < numWords; i++) {
+        if (governors[i] == 0) {
+          if (foundRoot) { throw new RuntimeException(); }
+          foundRoot = true;
+        }
+        buf.append(i + 1).append('\t').append(leaves[i].value()).append('\t');
+        buf.append(tagOf(i)).append('\t').append(governors[i]);
+        buf.append(NEWLINE);
+      }
+      buf.append(NEWLINE);
+      pw.print(buf);
+    }
+
+    private String ptbToken2Text(String token) {
+      String text = ptbTextCache.get(token);
+      if (text == null) {
+        if (ptbTextCache.size() >= MAX_CACHED_TOKENS) {
+          ptbTextCache.clear();
+        }
+        text = PTBTokenizer.ptbToken2Text(token);
+        ptbTextCache.put(token, text);
+      }
+      return text;
+    }
+
+    private String tagOf(int word) {
+      return (preterminals[word] == null) ? null : preterminals[word].value();
+    }
+
+    /** Fills in the words of the tree, their parents, and the (1-based)
+     *  position of the governor of each word.
+     */
+    void findGovernors(Tree tree, Filter<Dependency<Label, Label, Object>> f, HeadFinder hf) {
+      numWords = 0;
+      numKidHeads = 0;
+      int head = findHead(tree, null, f, hf);
+      governors[head] = 0;
+    }
+
+    /** Returns the position of the head word of the node, having set the
+     *  governor of the head word of each of its other children.
+     */
+    private int findHead(Tree node, Tree parent, Filter<Dependency<Label, Label, Object>> f, HeadFinder hf) {
+      if (node.isLeaf()) {
+        if (numWords == leaves.length) {
+          growWords();
+        }
+        leaves[numWords] = node;
+        preterminals[numWords] = parent;
+        governors[numWords] = 0;
+        return numWords++;
+      }
+      Tree headKid = hf.determineHead(node, null);
+      if (headKid == null) {
+        throw new IllegalStateException("findHead: headFinder failed!");
+      }
+      // the heads of the children go on kidHeads above base
+      int base = numKidHeads;
+      int head = -1;
+      for (Tree kid : node.children()) {
+        int kidHead = findHead(kid, node, f, hf);
+        if (kid == headKid) {
+          head = kidHead;
+        }
+        if (numKidHeads == kidHeads.length) {
+          int[] newKidHeads = new int[numKidHeads * 2];
+          System.arraycopy(kidHeads, 0, newKidHeads, 0, numKidHeads);
+          kidHeads = newKidHeads;
+        }
+        kidHeads[numKidHeads++] = kidHead;
+      }
+      if (head < 0) {
+        throw new IllegalStateException("findHead: head is not a child of " + node);
+      }
+      for (int i = base; i < numKidHeads; i++) {
+        int kidHead = kidHeads[i];
+        if (kidHead != head && f.accept(new UnnamedDependency(leaves[head].label(), leaves[kidHead].label()))) {
+          governors[kidHead] = head + 1;
+        }
+      }
+      numKidHeads = base;
+      return head;
+    }
+
+    private void growWords() {
+      int size = leaves.length * 2;
+      Tree[] newLeaves = new Tree[size];
+      System.arraycopy(leaves, 0, newLeaves, 0, numWords);
+      leaves = newLeaves;
+      Tree[] newPreterminals = new Tree[size];
+      System.arraycopy(preterminals, 0, newPreterminals, 0, numWords);
+      preterminals = newPreterminals;
+      int[] newGovernors = new int[size];
+      System.arraycopy(governors, 0, newGovernors, 0, numWords);
+      governors = newGovernors;
+    }
+
+  } // end class ConllWriter
+
+
   public void printHeader(PrintWriter pw, String charset) {
     if (propertyToBoolean(options, "xml")) {
       pw.println("<?xml version=\"1.0\" encoding=\"" + charset + "\"?>");
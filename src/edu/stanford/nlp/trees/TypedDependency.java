@@ -29,6 +29,16 @@ public class TypedDependency implements Comparable<TypedDependency>, Serializabl
     this.dep = dep;
   }
 
+  /** A copy of another typed dependency, which can be changed without
+   *  changing that one.
+   */
+  public TypedDependency(TypedDependency other) {
+    this.reln = other.reln;
+    this.gov = other.gov;
+    this.dep = other.dep;
+    this.extra = other.extra;
+  }
+
   public GrammaticalRelation reln() {
     return reln;
   }
@@ -4,7 +4,6 @@ import edu.stanford.nlp.trees.Tree;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.IdentityHashMap;
 import java.util.Map;
 
 class CoordinationPattern extends TregexPattern {
@@ -68,10 +67,10 @@ class CoordinationPattern extends TregexPattern {
 
   @Override
   public TregexMatcher matcher(Tree root, Tree tree, 
-                               IdentityHashMap<Tree, Tree> nodesToParents,
+                               TreeIndex treeIndex,
                                Map<String, Tree> namesToNodes, 
                                VariableStrings variableStrings) {
-    return new CoordinationMatcher(this, root, tree, nodesToParents, namesToNodes, variableStrings);
+    return new CoordinationMatcher(this, root, tree, treeIndex, namesToNodes, variableStrings);
   }
 
   private static class CoordinationMatcher extends TregexMatcher {
@@ -83,15 +82,15 @@ class CoordinationPattern extends TregexPattern {
     // i.e. true if conj and not negated or disj and negated
 
     public CoordinationMatcher(CoordinationPattern n, Tree root, Tree tree, 
-                               IdentityHashMap<Tree, Tree> nodesToParents,
+                               TreeIndex treeIndex,
                                Map<String, Tree> namesToNodes, 
                                VariableStrings variableStrings) {
-      super(root, tree, nodesToParents, namesToNodes, variableStrings);
+      super(root, tree, treeIndex, namesToNodes, variableStrings);
       myNode = n;
       children = new TregexMatcher[myNode.children.size()];
       for (int i = 0; i < children.length; i++) {
         TregexPattern node = myNode.children.get(i);
-        children[i] = node.matcher(root, tree, nodesToParents, 
+        children[i] = node.matcher(root, tree, treeIndex, 
                                    namesToNodes, variableStrings);
       }
       currChild = 0;
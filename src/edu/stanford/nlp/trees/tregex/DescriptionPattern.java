@@ -146,12 +146,86 @@ class DescriptionPattern extends TregexPattern {
     return changesVariables;
   }
 
+  /** Whether this is the root node of a pattern.  Every match of the
+   *  pattern is at a tree node that this node's description matches.
+   */
+  boolean isRoot() {
+    return rel == Relation.ROOT && ! isNegated() && ! isOptional();
+  }
+
+  private static final Pattern plainLabelPattern = Pattern.compile("[A-Za-z0-9_-]+");
+
+  /**
+   * If this node's description matches only certain labels, and just by
+   * comparing them as strings (not by a regular expression or a basic
+   * category function), returns those labels.  Otherwise returns null.
+   * A description such as <code>VP|SQ</code> is compiled to a regular
+   * expression, but still only matches the labels VP and SQ.
+   */
+  List<String> exactLabels() {
+    if (negDesc || basicCatFunction != null || descriptionMode == null) {
+      return null;
+    }
+    if (descriptionMode == DescriptionMode.EXACT) {
+      return Collections.singletonList(exactMatch);
+    }
+    if (descriptionMode == DescriptionMode.PATTERN && ! stringDesc.startsWith("/")) {
+      List<String> labels = new ArrayList<String>();
+      for (String label : stringDesc.split("\\|")) {
+        if ( ! plainLabelPattern.matcher(label).matches()) {
+          return null;
+        }
+        labels.add(label);
+      }
+      return labels;
+    }
+    return null;
+  }
+
+  /**
+   * Whether this node's description might match a tree node labeled
+   * value.  This is a quick test which does not look at variables, and
+   * so may say yes when a match would then fail on a variable, but never
+   * says no when the node could match.
+   */
+  boolean descriptionMayMatch(String value) {
+    if (descriptionMode == null || ( ! variableGroups.isEmpty() && negDesc)) {
+      return true;
+    }
+    boolean found;
+    if (value == null) {
+      found = false;
+    } else {
+      if (basicCatFunction != null) {
+        value = basicCatFunction.apply(value);
+      }
+      switch (descriptionMode) {
+      case EXACT:
+        found = value.equals(exactMatch);
+        break;
+      case PATTERN:
+        found = descPattern.matcher(value).find();
+        break;
+      default:
+        found = true;
+      }
+    }
+    return found != negDesc;
+  }
+
+  /** Whether this node is a backreference to a node named earlier in the
+   *  pattern, which can only match that same node.
+   */
+  private boolean isBackreference() {
+    return descriptionMode == null && ! isLink;
+  }
+
   @Override
   public TregexMatcher matcher(Tree root, Tree tree, 
-                               IdentityHashMap<Tree, Tree> nodesToParents,
+                               TreeIndex treeIndex,
                                Map<String, Tree> namesToNodes, 
                                VariableStrings variableStrings) {
-    return new DescriptionMatcher(this, root, tree, nodesToParents, 
+    return new DescriptionMatcher(this, root, tree, treeIndex, 
                                   namesToNodes, variableStrings);
   }
 
@@ -165,15 +239,16 @@ class DescriptionPattern extends TregexPattern {
     private boolean finished = false; // when finished = true, it means I have exhausted my potential tree node match candidates.
     private boolean matchedOnce = false;
     private boolean committedVariables = false;
+    private boolean checkedBackreference = false;
 
     // universal: childMatcher is null if and only if
     // myNode.child == null OR resetChild has never been called
 
     public DescriptionMatcher(DescriptionPattern n, Tree root, Tree tree, 
-                              IdentityHashMap<Tree, Tree> nodesToParents,
+                              TreeIndex treeIndex,
                               Map<String, Tree> namesToNodes, 
                               VariableStrings variableStrings) {
-      super(root, tree, nodesToParents, namesToNodes, variableStrings);
+      super(root, tree, treeIndex, namesToNodes, variableStrings);
       myNode = n;
       resetChildIter();
     }
@@ -182,8 +257,14 @@ class DescriptionPattern extends TregexPattern {
     void resetChildIter() {
       decommitVariableGroups();
       removeNamedNodes();
-      treeNodeMatchCandidateIterator = 
-        myNode.rel.searchNodeIterator(tree, this);
+      if (myNode.isBackreference()) {
+        // goToNextTreeNodeMatch checks the named node directly
+        treeNodeMatchCandidateIterator = Collections.<Tree>emptyList().iterator();
+        checkedBackreference = false;
+      } else {
+        treeNodeMatchCandidateIterator =
+          myNode.rel.searchNodeIterator(tree, this);
+      }
       finished = false;
       nextTreeNodeMatchCandidate = null;
       if (childMatcher != null) {
@@ -197,7 +278,7 @@ class DescriptionPattern extends TregexPattern {
         if (myNode.child == null) {
           matchedOnce = false;
         } else {
-          childMatcher = myNode.child.matcher(root, nextTreeNodeMatchCandidate, nodesToParents, namesToNodes,variableStrings);
+          childMatcher = myNode.child.matcher(root, nextTreeNodeMatchCandidate, treeIndex, namesToNodes,variableStrings);
         }
       } else {
         childMatcher.resetChildIter(nextTreeNodeMatchCandidate);
@@ -218,10 +299,23 @@ class DescriptionPattern extends TregexPattern {
       finished = true;
       Matcher m = null;
       String value = null;
+      if (myNode.isBackreference()) {
+        // Only the named node itself can match, so rather than search all
+        // the nodes in the relation for it, check whether it is in the
+        // relation, which for most relations is a lookup in the tree index
+        if ( ! checkedBackreference) {
+          checkedBackreference = true;
+          Tree namedNode = namesToNodes.get(myNode.name);
+          if (namedNode != null && myNode.rel.satisfies(tree, namedNode, this)) {
+            nextTreeNodeMatchCandidate = namedNode;
+            finished = false;
+          }
+        }
+      }
       while (treeNodeMatchCandidateIterator.hasNext()) {
         nextTreeNodeMatchCandidate = treeNodeMatchCandidateIterator.next();
         if (myNode.descriptionMode == null) {
-          // this is a backreference or link
+          // this is a link (backreferences were handled above)
           if (myNode.isLink) {
             Tree otherTree = namesToNodes.get(myNode.linkedName);
             if (otherTree != null) {
@@ -232,9 +326,6 @@ class DescriptionPattern extends TregexPattern {
                 break;
               }
             }
-          } else if (namesToNodes.get(myNode.name) == nextTreeNodeMatchCandidate) {
-            finished = false;
-            break;
           }
         } else { // try to match the description pattern.
           // cdm: Nov 2006: Check for null label, just make found false
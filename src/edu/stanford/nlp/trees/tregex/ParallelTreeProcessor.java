@@ -0,0 +1,220 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import edu.stanford.nlp.trees.DiskTreebank;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.util.Factory;
+
+/**
+ * Does some work, such as matching tregex patterns or running tsurgeon
+ * operations, on every tree of a treebank using several threads, and
+ * prints the output for each tree in the order of the treebank.
+ * <p>
+ * The trees are read one batch at a time, in the calling thread, and each
+ * batch is processed by one of the worker threads, which prints the output
+ * for its trees into a buffer.  The buffers are written out in the order
+ * of the batches, so the output is the same as when the trees are
+ * processed one by one in order: in particular, the output for the trees
+ * of each file comes together and in order.  Only a bounded number of
+ * batches are read ahead of the output, so a treebank of any size can be
+ * streamed from disk (with a {@link DiskTreebank}) in bounded memory.
+ * <p>
+ * Each worker thread gets its own {@link TreeWorker} from the factory,
+ * so a worker may keep state that isn't safe to share (such as tsurgeon
+ * operations, which keep state while operating on a tree).
+ * <p>
+ * The numbers of trees and of matches, and the time taken, are kept as
+ * throughput counters, and can be printed with {@link #printStats}.
+ */
+public class ParallelTreeProcessor {
+
+  /** The work to do on each tree, by one thread. */
+  public interface TreeWorker {
+    /**
+     * Processes a tree, printing any output for it to out.
+     *
+     * @param t The tree
+     * @param treeNumber The number of the tree in the treebank, counting
+     *     from 1
+     * @param filename The file the tree was read from, if the treebank
+     *     is a DiskTreebank, and otherwise null
+     * @param out Where to print the output for this tree
+     * @return The number of matches in the tree, to add to the total
+     */
+    int processTree(Tree t, int treeNumber, String filename, PrintWriter out);
+  }
+
+  /** The default number of trees given to a thread at a time */
+  public static final int DEFAULT_BATCH_SIZE = 100;
+
+  private final int numThreads;
+  private final int batchSize;
+  private final Factory<TreeWorker> workerFactory;
+  private final ThreadLocal<TreeWorker> workers;
+
+  // throughput counters
+  private volatile long numTrees;
+  private volatile long numMatches;
+  private volatile long elapsedMillis;
+
+
+  public ParallelTreeProcessor(int numThreads, Factory<TreeWorker> workerFactory) {
+    this(numThreads, DEFAULT_BATCH_SIZE, workerFactory);
+  }
+
+  public ParallelTreeProcessor(int numThreads, int batchSize, Factory<TreeWorker> workerFactory) {
+    if (numThreads < 1) {
+      throw new IllegalArgumentException("Number of threads must be at least 1: " + numThreads);
+    }
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+    }
+    this.numThreads = numThreads;
+    this.batchSize = batchSize;
+    this.workerFactory = workerFactory;
+    this.workers = new ThreadLocal<TreeWorker>() {
+      @Override
+      protected TreeWorker initialValue() {
+        return ParallelTreeProcessor.this.workerFactory.create();
+      }
+    };
+  }
+
+
+  /**
+   * Processes all the trees, printing their output to out in the order of
+   * the trees.
+   *
+   * @return The total number of matches
+   */
+  public long process(Iterable<Tree> trees, PrintWriter out) {
+    long startTime = System.currentTimeMillis();
+    numTrees = 0;
+    numMatches = 0;
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      private int count; // = 0;
+      public synchronized Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "ParallelTreeProcessor-" + (++count));
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    // the batches submitted and not yet written out, oldest first
+    LinkedList<Future<Batch>> pending = new LinkedList<Future<Batch>>();
+    int maxPending = 2 * numThreads;
+    try {
+      DiskTreebank diskTreebank = (trees instanceof DiskTreebank) ? (DiskTreebank) trees : null;
+      Iterator<Tree> it = trees.iterator();
+      int treeNumber = 0;
+      while (it.hasNext()) {
+        final Batch batch = new Batch(treeNumber + 1);
+        while (batch.trees.size() < batchSize && it.hasNext()) {
+          batch.trees.add(it.next());
+          batch.filenames.add((diskTreebank == null) ? null : diskTreebank.getCurrentFilename());
+          treeNumber++;
+        }
+        if (pending.size() >= maxPending) {
+          write(pending.removeFirst(), out);
+        }
+        pending.add(executor.submit(new Callable<Batch>() {
+          public Batch call() {
+            batch.process(workers.get());
+            return batch;
+          }
+        }));
+      }
+      while ( ! pending.isEmpty()) {
+        write(pending.removeFirst(), out);
+      }
+    } finally {
+      for (Future<Batch> future : pending) {
+        future.cancel(true);
+      }
+      executor.shutdown();
+      elapsedMillis = System.currentTimeMillis() - startTime;
+    }
+    out.flush();
+    return numMatches;
+  }
+
+  private void write(Future<Batch> future, PrintWriter out) {
+    Batch batch;
+    try {
+      batch = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    }
+    out.print(batch.output);
+    numTrees += batch.trees.size();
+    numMatches += batch.numMatches;
+  }
+
+  /** The number of trees processed by the last (or current) call to process */
+  public long getNumTrees() {
+    return numTrees;
+  }
+
+  /** The number of matches found by the last call to process */
+  public long getNumMatches() {
+    return numMatches;
+  }
+
+  /** The time taken by the last call to process, in milliseconds */
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  /** Prints the throughput counters of the last call to process. */
+  public void printStats(PrintStream ps) {
+    double seconds = elapsedMillis / 1000.0;
+    ps.printf("Processed %d trees with %d matches in %.1f sec on %d threads (%.1f trees/sec)%n",
+              numTrees, numMatches, seconds, numThreads,
+              (seconds > 0.0) ? numTrees / seconds : 0.0);
+  }
+
+
+  private static class Batch {
+    final int firstTreeNumber;
+    final List<Tree> trees = new ArrayList<Tree>();
+    final List<String> filenames = new ArrayList<String>();
+    String output;
+    int numMatches;
+
+    Batch(int firstTreeNumber) {
+      this.firstTreeNumber = firstTreeNumber;
+    }
+
+    void process(TreeWorker worker) {
+      StringWriter sw = new StringWriter();
+      PrintWriter pw = new PrintWriter(sw);
+      for (int i = 0; i < trees.size(); i++) {
+        numMatches += worker.processTree(trees.get(i), firstTreeNumber + i, filenames.get(i), pw);
+      }
+      pw.flush();
+      output = sw.toString();
+    }
+  }
+
+}
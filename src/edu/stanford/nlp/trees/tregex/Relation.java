@@ -69,6 +69,26 @@ abstract class Relation implements Serializable {
   abstract Iterator<Tree> searchNodeIterator(final Tree t, 
                                              final TregexMatcher matcher);
 
+  /**
+   * Whether t2 is one of the nodes that {@link #searchNodeIterator} gives
+   * for t1 in the tree being matched.  By default this searches those
+   * nodes; relations which are a matter of where the nodes are in the tree
+   * check it directly in the matcher's {@link TreeIndex} instead.
+   *
+   * @param t1 The tree that is the left operand.
+   * @param t2 The tree that is the right operand.
+   * @param matcher The matcher for the tree containing t1 and t2
+   * @return Whether this relationship is satisfied.
+   */
+  boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+    for (Iterator<Tree> it = searchNodeIterator(t1, matcher); it.hasNext(); ) {
+      if (it.next() == t2) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private static final Pattern parentOfLastChild = Pattern.compile("(<-|<`)");
 
   private static final Pattern lastChildOfParent = Pattern.compile("(>-|>`)");
@@ -232,6 +252,11 @@ abstract class Relation implements Serializable {
       return t1 == t2;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return t1 == t2;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -255,6 +280,11 @@ abstract class Relation implements Serializable {
       return t1 == t2;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return t1 == t2;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -275,6 +305,11 @@ abstract class Relation implements Serializable {
       return true;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return matcher.getTreeIndex().preorderNumber(t2) >= 0;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -293,6 +328,11 @@ abstract class Relation implements Serializable {
       return t1 != t2 && t1.dominates(t2);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return matcher.getTreeIndex().dominates(t1, t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -336,6 +376,11 @@ abstract class Relation implements Serializable {
       return DOMINATES.satisfies(t2, t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return matcher.getTreeIndex().dominates(t2, t1);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -370,6 +415,11 @@ abstract class Relation implements Serializable {
       return false;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return matcher.getParent(t2) == t1;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -406,6 +456,11 @@ abstract class Relation implements Serializable {
       return PARENT_OF.satisfies(t2, t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return t2 != null && matcher.getParent(t1) == t2;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -429,6 +484,11 @@ abstract class Relation implements Serializable {
       return Trees.rightEdge(t1, root) <= Trees.leftEdge(t2, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return matcher.getTreeIndex().precedes(t1, t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -477,6 +537,13 @@ abstract class Relation implements Serializable {
       return Trees.leftEdge(t2, root) == Trees.rightEdge(t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      TreeIndex index = matcher.getTreeIndex();
+      int edge = index.rightEdge(t1);
+      return edge >= 0 && index.leftEdge(t2) == edge;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -494,12 +561,7 @@ abstract class Relation implements Serializable {
             }
           } while (parent.lastChild() == current);
 
-          for (int i = 1, n = parent.numChildren(); i < n; i++) {
-            if (parent.getChild(i - 1) == current) {
-              next = parent.getChild(i);
-              return;
-            }
-          }
+          next = parent.getChild(matcher.getTreeIndex().childIndex(current) + 1);
         }
 
         @Override
@@ -525,6 +587,11 @@ abstract class Relation implements Serializable {
       return Trees.rightEdge(t2, root) <= Trees.leftEdge(t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return matcher.getTreeIndex().precedes(t2, t1);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -573,6 +640,13 @@ abstract class Relation implements Serializable {
       return Trees.leftEdge(t1, root) == Trees.rightEdge(t2, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      TreeIndex index = matcher.getTreeIndex();
+      int edge = index.leftEdge(t1);
+      return edge >= 0 && index.rightEdge(t2) == edge;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -590,12 +664,7 @@ abstract class Relation implements Serializable {
             }
           } while (parent.firstChild() == current);
 
-          for (int i = 0, n = parent.numChildren() - 1; i < n; i++) {
-            if (parent.getChild(i + 1) == current) {
-              next = parent.getChild(i);
-              return;
-            }
-          }
+          next = parent.getChild(matcher.getTreeIndex().childIndex(current) - 1);
         }
 
         @Override
@@ -626,6 +695,12 @@ abstract class Relation implements Serializable {
       }
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      TreeIndex index = matcher.getTreeIndex();
+      return index.dominates(t1, t2) && index.leftEdge(t1) == index.leftEdge(t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -664,6 +739,12 @@ abstract class Relation implements Serializable {
       }
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      TreeIndex index = matcher.getTreeIndex();
+      return index.dominates(t1, t2) && index.rightEdge(t1) == index.rightEdge(t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -698,6 +779,11 @@ abstract class Relation implements Serializable {
       return HAS_LEFTMOST_DESCENDENT.satisfies(t2, t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return HAS_LEFTMOST_DESCENDENT.satisfies(t2, t1, matcher);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -732,6 +818,11 @@ abstract class Relation implements Serializable {
       return HAS_RIGHTMOST_DESCENDENT.satisfies(t2, t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return HAS_RIGHTMOST_DESCENDENT.satisfies(t2, t1, matcher);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -770,6 +861,11 @@ abstract class Relation implements Serializable {
       return PARENT_OF.satisfies(parent, t2, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return matcher.getTreeIndex().sisters(t1, t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -826,6 +922,12 @@ abstract class Relation implements Serializable {
       return false;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      TreeIndex index = matcher.getTreeIndex();
+      return index.sisters(t1, t2) && index.childIndex(t1) < index.childIndex(t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -865,6 +967,11 @@ abstract class Relation implements Serializable {
       return LEFT_SISTER_OF.satisfies(t2, t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return LEFT_SISTER_OF.satisfies(t2, t1, matcher);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -916,6 +1023,12 @@ abstract class Relation implements Serializable {
       return false;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      TreeIndex index = matcher.getTreeIndex();
+      return index.sisters(t1, t2) && index.childIndex(t1) + 1 == index.childIndex(t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -924,10 +1037,7 @@ abstract class Relation implements Serializable {
         void initialize() {
           if (t != matcher.getRoot()) {
             Tree parent = matcher.getParent(t);
-            int i = 0;
-            while (parent.getChild(i) != t) {
-              i++;
-            }
+            int i = matcher.getTreeIndex().childIndex(t);
             if (i + 1 < parent.numChildren()) {
               next = parent.getChild(i + 1);
             }
@@ -948,6 +1058,11 @@ abstract class Relation implements Serializable {
       return IMMEDIATE_LEFT_SISTER_OF.satisfies(t2, t1, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return IMMEDIATE_LEFT_SISTER_OF.satisfies(t2, t1, matcher);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -956,10 +1071,7 @@ abstract class Relation implements Serializable {
         void initialize() {
           if (t != matcher.getRoot()) {
             Tree parent = matcher.getParent(t);
-            int i = 0;
-            while (parent.getChild(i) != t) {
-              i++;
-            }
+            int i = matcher.getTreeIndex().childIndex(t);
             if (i > 0) {
               next = parent.getChild(i - 1);
             }
@@ -980,6 +1092,11 @@ abstract class Relation implements Serializable {
       return t2.children().length == 1 && t2.firstChild() == t1;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return t2 != null && matcher.getParent(t1) == t2 && t2.numChildren() == 1;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -1008,6 +1125,11 @@ abstract class Relation implements Serializable {
       return t1.children().length == 1 && t1.firstChild() == t2;
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return t1.numChildren() == 1 && t1.firstChild() == t2;
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -1039,6 +1161,14 @@ abstract class Relation implements Serializable {
         return satisfies(onlyDtr, t2, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      // all the nodes on a path covering the same leaves have only one child
+      TreeIndex index = matcher.getTreeIndex();
+      return index.dominates(t1, t2) && index.leftEdge(t1) == index.leftEdge(t2) &&
+          index.rightEdge(t1) == index.rightEdge(t2);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -1086,6 +1216,11 @@ abstract class Relation implements Serializable {
         return satisfies(t1, onlyDtr, root);
     }
 
+    @Override
+    boolean satisfies(Tree t1, Tree t2, TregexMatcher matcher) {
+      return UNARY_PATH_ANCESTOR_OF.satisfies(t2, t1, matcher);
+    }
+
     @Override
     Iterator<Tree> searchNodeIterator(final Tree t, 
                                       final TregexMatcher matcher) {
@@ -1890,11 +2025,11 @@ abstract class Relation implements Serializable {
             return;
           }
           Tree parent = matcher.getParent(node);
-          int i = parent.indexOf(node);
+          int i = matcher.getTreeIndex().childIndex(node);
           while (i == parent.children().length-1 && parent != root) {
             node = parent;
             parent = matcher.getParent(parent);
-            i = parent.indexOf(node);
+            i = matcher.getTreeIndex().childIndex(node);
           }
           Tree followingNode;
           if (i+1 < parent.children().length) {
@@ -2019,11 +2154,11 @@ abstract class Relation implements Serializable {
             return;
           }
           Tree parent = matcher.getParent(node);
-          int i = parent.indexOf(node);
+          int i = matcher.getTreeIndex().childIndex(node);
           while (i == 0 && parent != root) {
             node = parent;
             parent = matcher.getParent(parent);
-            i = parent.indexOf(node);
+            i = matcher.getTreeIndex().childIndex(node);
           }
           Tree precedingNode;
           if (i > 0) {
@@ -0,0 +1,189 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.IdentityHashMap;
+
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * The positions of all the nodes of a tree, so that the tree relations
+ * tregex uses can be checked without walking the tree.  Each node is
+ * numbered in preorder and in postorder, and its parent, its index among
+ * its sisters, its depth and the span of leaves it covers are recorded.
+ * Then
+ * <ul>
+ * <li> a dominates b iff pre(a) &lt; pre(b) and post(a) &gt; post(b)
+ * <li> a precedes b (all of a's leaves are before b's) iff
+ *      pre(a) &lt; pre(b) and post(a) &lt; post(b)
+ * <li> a and b are sisters iff they have the same parent
+ * </ul>
+ * and each of these is a constant time check.
+ * <p>
+ * The index is built the first time it is asked about a node, so a
+ * matcher which never needs it pays nothing for it.  It is a snapshot of
+ * the tree at that time: if the tree is changed afterwards, a new index
+ * (that is, a new {@link TregexMatcher}) is needed.  Nodes are compared by
+ * identity, and asking about a node which is not in the tree gives -1
+ * (or null) as appropriate.
+ */
+final class TreeIndex {
+
+  private final Tree root;
+
+  /** The nodes in preorder */
+  private Tree[] nodes;
+  private IdentityHashMap<Tree, Integer> preorderNumbers;
+
+  // these are all indexed by preorder number
+  private int[] parents;
+  private int[] postorderNumbers;
+  private int[] childIndices;
+  private int[] depths;
+  private int[] leftEdges;
+  private int[] rightEdges;
+
+  // used while building
+  private int numNodes;
+  private int numPostorder;
+  private int numLeaves;
+
+
+  TreeIndex(Tree root) {
+    this.root = root;
+  }
+
+  Tree getRoot() {
+    return root;
+  }
+
+  /** The number of the node in a preorder walk of the tree, or -1 if it is
+   *  not in the tree.
+   */
+  int preorderNumber(Tree node) {
+    if (nodes == null) {
+      build();
+    }
+    Integer n = preorderNumbers.get(node);
+    return (n == null) ? -1 : n;
+  }
+
+  /** The number of the node in a postorder walk of the tree, or -1 if it is
+   *  not in the tree.
+   */
+  int postorderNumber(Tree node) {
+    int n = preorderNumber(node);
+    return (n < 0) ? -1 : postorderNumbers[n];
+  }
+
+  /** The node numbered n in a preorder walk of the tree */
+  Tree node(int n) {
+    if (nodes == null) {
+      build();
+    }
+    return nodes[n];
+  }
+
+  /** The number of nodes in the tree */
+  int size() {
+    if (nodes == null) {
+      build();
+    }
+    return nodes.length;
+  }
+
+  /** The parent of the node, or null for the root. */
+  Tree parent(Tree node) {
+    int n = preorderNumber(node);
+    if (n < 0 || parents[n] < 0) {
+      return null;
+    }
+    return nodes[parents[n]];
+  }
+
+  /** The index of the node among the children of its parent; 0 for the
+   *  root, and -1 if the node is not in the tree.
+   */
+  int childIndex(Tree node) {
+    int n = preorderNumber(node);
+    return (n < 0) ? -1 : childIndices[n];
+  }
+
+  /** The depth of the node; 0 for the root. */
+  int depth(Tree node) {
+    int n = preorderNumber(node);
+    return (n < 0) ? -1 : depths[n];
+  }
+
+  /** The index of the first leaf under the node */
+  int leftEdge(Tree node) {
+    int n = preorderNumber(node);
+    return (n < 0) ? -1 : leftEdges[n];
+  }
+
+  /** One more than the index of the last leaf under the node */
+  int rightEdge(Tree node) {
+    int n = preorderNumber(node);
+    return (n < 0) ? -1 : rightEdges[n];
+  }
+
+  /** Whether a properly dominates b */
+  boolean dominates(Tree a, Tree b) {
+    int na = preorderNumber(a);
+    int nb = preorderNumber(b);
+    return na >= 0 && nb >= 0 && na < nb && postorderNumbers[na] > postorderNumbers[nb];
+  }
+
+  /** Whether all of the leaves of a come before all of the leaves of b */
+  boolean precedes(Tree a, Tree b) {
+    int na = preorderNumber(a);
+    int nb = preorderNumber(b);
+    return na >= 0 && nb >= 0 && na < nb && postorderNumbers[na] < postorderNumbers[nb];
+  }
+
+  /** Whether a and b are different children of the same parent */
+  boolean sisters(Tree a, Tree b) {
+    int na = preorderNumber(a);
+    int nb = preorderNumber(b);
+    return na >= 0 && nb >= 0 && na != nb && parents[na] >= 0 && parents[na] == parents[nb];
+  }
+
+
+  private void build() {
+    int size = 0;
+    for (Tree t : root) {
+      size++;
+    }
+    nodes = new Tree[size];
+    preorderNumbers = new IdentityHashMap<Tree, Integer>(size);
+    parents = new int[size];
+    postorderNumbers = new int[size];
+    childIndices = new int[size];
+    depths = new int[size];
+    leftEdges = new int[size];
+    rightEdges = new int[size];
+    numNodes = 0;
+    numPostorder = 0;
+    numLeaves = 0;
+    add(root, -1, 0, 0);
+  }
+
+  private void add(Tree node, int parent, int childIndex, int depth) {
+    int n = numNodes++;
+    nodes[n] = node;
+    preorderNumbers.put(node, n);
+    parents[n] = parent;
+    childIndices[n] = childIndex;
+    depths[n] = depth;
+    leftEdges[n] = numLeaves;
+    if (node.isLeaf()) {
+      numLeaves++;
+    } else {
+      Tree[] kids = node.children();
+      for (int i = 0; i < kids.length; i++) {
+        add(kids[i], n, i, depth + 1);
+      }
+    }
+    rightEdges[n] = numLeaves;
+    postorderNumbers[n] = numPostorder++;
+  }
+
+}
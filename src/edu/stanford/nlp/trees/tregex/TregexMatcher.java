@@ -43,7 +43,7 @@ public abstract class TregexMatcher {
 
   final Tree root;
   Tree tree;
-  final IdentityHashMap<Tree, Tree> nodesToParents;
+  final TreeIndex treeIndex;
   final Map<String, Tree> namesToNodes;
   final VariableStrings variableStrings;
 
@@ -52,10 +52,10 @@ public abstract class TregexMatcher {
   Tree findCurrent;
 
 
-  TregexMatcher(Tree root, Tree tree, IdentityHashMap<Tree, Tree> nodesToParents, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
+  TregexMatcher(Tree root, Tree tree, TreeIndex treeIndex, Map<String, Tree> namesToNodes, VariableStrings variableStrings) {
     this.root = root;
     this.tree = tree;
-    this.nodesToParents = nodesToParents;
+    this.treeIndex = treeIndex;
     this.namesToNodes = namesToNodes;
     this.variableStrings = variableStrings;
   }
@@ -169,17 +169,14 @@ public abstract class TregexMatcher {
   }
 
   Tree getParent(Tree node) {
-    if (nodesToParents.size() == 0) {
-      fillNodesToParents(root, null);
-    }
-    return nodesToParents.get(node);
+    return treeIndex.parent(node);
   }
 
-  void fillNodesToParents(Tree node, Tree parent) {
-    nodesToParents.put(node, parent);
-    for (Tree child : node.children()) {
-      fillNodesToParents(child, node);
-    }
+  /** The positions of the nodes of the tree being matched, which is shared
+   *  by all the matchers for the parts of a pattern.
+   */
+  TreeIndex getTreeIndex() {
+    return treeIndex;
   }
 
   Tree getRoot() {
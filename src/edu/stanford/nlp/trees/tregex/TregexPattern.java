@@ -37,6 +37,7 @@ import java.util.regex.Pattern;
 
 import edu.stanford.nlp.io.IOUtils;
 import edu.stanford.nlp.ling.StringLabelFactory;
+import edu.stanford.nlp.util.Factory;
 import edu.stanford.nlp.util.Function;
 import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.util.Pair;
@@ -387,7 +388,7 @@ public abstract class TregexPattern implements Serializable {
   abstract boolean getChangesVariables();
 
   abstract TregexMatcher matcher(Tree root, Tree tree,
-                                 IdentityHashMap<Tree, Tree> nodesToParents,
+                                 TreeIndex treeIndex,
                                  Map<String, Tree> namesToNodes,
                                  VariableStrings variableStrings);
 
@@ -398,7 +399,7 @@ public abstract class TregexPattern implements Serializable {
    * @return a TregexMatcher
    */
   public TregexMatcher matcher(Tree t) {
-    return matcher(t, t, new IdentityHashMap<Tree, Tree>(),
+    return matcher(t, t, new TreeIndex(t),
                    new HashMap<String, Tree>(), new VariableStrings());
   }
 
@@ -544,6 +545,7 @@ public abstract class TregexPattern implements Serializable {
    * <li> <code>-filter</code> causes this to act as a filter, reading tree input from stdin
    * <li> <code>-T</code> causes all trees to be printed as processed (for debugging purposes).  Otherwise only matching nodes are printed.
    * <li> <code>-macros &lt;filename&gt;</code> filename with macro substitutions to use.  file with tab separated lines original-tab-replacement
+   * <li> <code>-threads &lt;n&gt;</code> match the trees on n threads (see {@link ParallelTreeProcessor}), reading the tree files ahead on n more.  The output is the same as on one thread, and the throughput is printed at the end.
    *
    * </ul>
    */
@@ -568,6 +570,8 @@ public abstract class TregexPattern implements Serializable {
     String encoding = "UTF-8";
     String macroOption = "-macros";
     String macroFilename = "";
+    String threadsOption = "-threads";
+    int numThreads = 1;
     Map<String,Integer> flagMap = new HashMap<String,Integer>();
     flagMap.put(extractSubtreesOption,2);
     flagMap.put(extractSubtreesFileOption,2);
@@ -581,6 +585,7 @@ public abstract class TregexPattern implements Serializable {
     flagMap.put(headFinderArgOption,1);
     flagMap.put(trfOption,1);
     flagMap.put(macroOption, 1);
+    flagMap.put(threadsOption, 1);
     Map<String, String[]> argsMap = StringUtils.argsToMap(args, flagMap);
     args = argsMap.get(null);
 
@@ -610,6 +615,9 @@ public abstract class TregexPattern implements Serializable {
     if (argsMap.containsKey(macroOption)) {
       macroFilename = argsMap.get(macroOption)[0];
     }
+    if (argsMap.containsKey(threadsOption)) {
+      numThreads = Integer.parseInt(argsMap.get(threadsOption)[0]);
+    }
     if (argsMap.containsKey(headFinderOption)) {
       headFinderClassName = argsMap.get(headFinderOption)[0];
       errPW.println("Using head finder " + headFinderClassName + "...");
@@ -702,18 +710,37 @@ public abstract class TregexPattern implements Serializable {
         int last = args.length - 1;
         errPW.println("Reading trees from file(s) " + args[last]);
         TreeReaderFactory trf = getTreeReaderFactory(treeReaderFactoryClassName);
-        treebank = new DiskTreebank(trf, encoding);
+        DiskTreebank diskTreebank = new DiskTreebank(trf, encoding);
+        if (numThreads > 1) {
+          diskTreebank.setPrefetchThreads(numThreads);
+        }
+        treebank = diskTreebank;
         treebank.loadPath(args[last], null, true);
       }
       TRegexTreeVisitor vis = new TRegexTreeVisitor(p, handles, encoding);
 
-      treebank.apply(vis);
+      long numMatches;
+      if (numThreads > 1) {
+        final TregexPattern pattern = p;
+        final String[] patternHandles = handles;
+        ParallelTreeProcessor processor = new ParallelTreeProcessor(numThreads, new Factory<ParallelTreeProcessor.TreeWorker>() {
+          private static final long serialVersionUID = 1L;
+          public ParallelTreeProcessor.TreeWorker create() {
+            return new TRegexTreeVisitor(pattern, patternHandles);
+          }
+        });
+        numMatches = processor.process(treebank, vis.pw);
+        processor.printStats(System.err);
+      } else {
+        treebank.apply(vis);
+        numMatches = vis.numMatches();
+      }
       Timing.endTime();
       if (TRegexTreeVisitor.printMatches) {
-        errPW.println("There were " + vis.numMatches() + " matches in total.");
+        errPW.println("There were " + numMatches + " matches in total.");
       }
       if (TRegexTreeVisitor.printNumMatchesToStdOut) {
-        System.out.println(vis.numMatches());
+        System.out.println(numMatches);
       }
     } catch (IOException e) {
       e.printStackTrace();
@@ -737,7 +764,7 @@ public abstract class TregexPattern implements Serializable {
 
   private static Treebank treebank; // used by main method, must be accessible
 
-  static class TRegexTreeVisitor implements TreeVisitor {
+  static class TRegexTreeVisitor implements TreeVisitor, ParallelTreeProcessor.TreeWorker {
 
     private static boolean printNumMatchesToStdOut = false;
     static boolean printNonMatchingTrees = false;
@@ -770,8 +797,29 @@ public abstract class TregexPattern implements Serializable {
       }
     }
 
+    /** A visitor for {@link #processTree} only, as used on each thread by
+     *  a {@link ParallelTreeProcessor}, which prints where it is told.
+     */
+    TRegexTreeVisitor(TregexPattern p, String[] handles) {
+      this.p = p;
+      this.handles = handles;
+    }
+
     public void visitTree(Tree t) {
       treeNumber++;
+      String filename = null;
+      if (printFilename && treebank instanceof DiskTreebank) {
+        filename = ((DiskTreebank) treebank).getCurrentFilename();
+      }
+      numMatches += processTree(t, treeNumber, filename, pw);
+    } // end visitTree
+
+    /** Prints the matches in one tree to pw, and returns how many there
+     *  were.  Only the static settings are shared, so visitors on
+     *  different threads can process trees at once.
+     */
+    public int processTree(Tree t, int treeNumber, String filename, PrintWriter pw) {
+      int numMatches = 0;
       if (printTree) {
         pw.print(treeNumber+":");
         pw.println("Next tree read:");
@@ -783,7 +831,7 @@ public abstract class TregexPattern implements Serializable {
           numMatches++;
         else
           tp.printTree(t,pw);
-        return;
+        return numMatches;
       }
       Tree lastMatchingRootNode = null;
       while (match.find()) {
@@ -794,10 +842,9 @@ public abstract class TregexPattern implements Serializable {
             lastMatchingRootNode = match.getMatch();
         }
         numMatches++;
-        if (printFilename && treebank instanceof DiskTreebank) {
-          DiskTreebank dtb = (DiskTreebank) treebank;
+        if (printFilename && filename != null) {
           pw.print("# ");
-          pw.println(dtb.getCurrentFilename());
+          pw.println(filename);
         }
         if(printSubtreeCode) {
           pw.println(treeNumber + ":" + match.getMatch().nodeNumber(t));
@@ -829,7 +876,8 @@ public abstract class TregexPattern implements Serializable {
           // pw.println();  // TreePrint already puts a blank line in
         } // end if (printMatches)
       } // end while match.find()
-    } // end visitTree
+      return numMatches;
+    } // end processTree
 
     public int numMatches() {
       return numMatches;
@@ -0,0 +1,311 @@
+package edu.stanford.nlp.trees.tregex;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.stanford.nlp.trees.Tree;
+
+/**
+ * A set of {@link TregexPattern}s to be matched against the same trees.
+ * <p>
+ * Searching for each pattern separately walks every tree once per
+ * pattern, trying the pattern at every node.  A <code>TregexPatternSet</code>
+ * walks each tree once, and at each node tries only the patterns whose
+ * root node could match there: the patterns are indexed by the labels
+ * their root node matches, where these are plain labels (such as
+ * <code>NP</code> or <code>S|SINV</code>), and the other patterns' root
+ * descriptions are checked against the node's label before the pattern
+ * is tried.  Which patterns can match at a node with a given label is
+ * worked out the first time the label is seen, and remembered.  All the
+ * matches of all the patterns are found, just as by matching each pattern
+ * on its own.
+ * <p>
+ * Usage:
+ * <pre>
+ *   TregexPatternSet patterns = new TregexPatternSet(patternList);
+ *   TregexPatternSet.SetMatcher m = patterns.matcher(tree);
+ *   while (m.find()) {
+ *     TregexPattern p = m.getPattern();
+ *     Tree node = m.getMatch();
+ *     ...
+ *   }
+ * </pre>
+ * A <code>TregexPatternSet</code> may be shared between threads (the
+ * candidates it remembers are kept in a concurrent map); each
+ * <code>SetMatcher</code> should be used by only one thread.
+ */
+public class TregexPatternSet {
+
+  private final List<TregexPattern> patterns;
+
+  /** The root node of each pattern, or null if it doesn't restrict where
+   *  the pattern matches
+   */
+  private final DescriptionPattern[] roots;
+
+  /** For each label, the numbers of the patterns whose root matches
+   *  exactly that label, together with all the patterns whose root has to
+   *  be checked, in increasing order
+   */
+  private final Map<String, int[]> patternsByLabel;
+
+  /** Which patterns in patternsByLabel[label] are known to match the label */
+  private final Map<String, boolean[]> exactByLabel;
+
+  /** The numbers of the patterns whose root has to be checked */
+  private final int[] otherPatterns;
+
+  /** The numbers of the patterns which may match at a node, by the node's
+   *  label, for the labels seen so far
+   */
+  private final Map<String, int[]> candidatesByLabel = new ConcurrentHashMap<String, int[]>();
+
+  /** Stop remembering candidates for new labels after this many, since
+   *  the labels of leaves (words) are unbounded
+   */
+  private static final int MAX_CACHED_LABELS = 10000;
+
+
+  public TregexPatternSet(List<TregexPattern> patterns) {
+    this.patterns = Collections.unmodifiableList(new ArrayList<TregexPattern>(patterns));
+    int numPatterns = this.patterns.size();
+    roots = new DescriptionPattern[numPatterns];
+    Map<String, List<Integer>> labelPatterns = new HashMap<String, List<Integer>>();
+    List<Integer> others = new ArrayList<Integer>();
+    for (int i = 0; i < numPatterns; i++) {
+      TregexPattern pattern = this.patterns.get(i);
+      List<String> labels = null;
+      if (pattern instanceof DescriptionPattern && ((DescriptionPattern) pattern).isRoot()) {
+        roots[i] = (DescriptionPattern) pattern;
+        labels = roots[i].exactLabels();
+      }
+      if (labels == null) {
+        others.add(i);
+      } else {
+        for (String label : labels) {
+          List<Integer> list = labelPatterns.get(label);
+          if (list == null) {
+            list = new ArrayList<Integer>();
+            labelPatterns.put(label, list);
+          }
+          if (list.isEmpty() || list.get(list.size() - 1) != i) {
+            list.add(i);
+          }
+        }
+      }
+    }
+    otherPatterns = toArray(others);
+    patternsByLabel = new HashMap<String, int[]>();
+    exactByLabel = new HashMap<String, boolean[]>();
+    for (Map.Entry<String, List<Integer>> entry : labelPatterns.entrySet()) {
+      int[] exact = toArray(entry.getValue());
+      int[] merged = new int[exact.length + otherPatterns.length];
+      boolean[] isExact = new boolean[merged.length];
+      for (int e = 0, o = 0, m = 0; m < merged.length; m++) {
+        if (o == otherPatterns.length || (e < exact.length && exact[e] < otherPatterns[o])) {
+          isExact[m] = true;
+          merged[m] = exact[e++];
+        } else {
+          merged[m] = otherPatterns[o++];
+        }
+      }
+      patternsByLabel.put(entry.getKey(), merged);
+      exactByLabel.put(entry.getKey(), isExact);
+    }
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  /** The patterns in the set, in the order they were given */
+  public List<TregexPattern> patterns() {
+    return patterns;
+  }
+
+  public int size() {
+    return patterns.size();
+  }
+
+  /** Returns the patterns in the set which might match at a node with this
+   *  label, in the order they were given.
+   */
+  public List<TregexPattern> candidates(String label) {
+    List<TregexPattern> result = new ArrayList<TregexPattern>();
+    for (int pattern : candidateNumbers(label)) {
+      result.add(patterns.get(pattern));
+    }
+    return result;
+  }
+
+  /** The numbers of the patterns which may match at a node with this
+   *  label (which may be null), in increasing order.
+   */
+  private int[] candidateNumbers(String label) {
+    if (label == null) {
+      return otherPatterns;
+    }
+    int[] candidates = candidatesByLabel.get(label);
+    if (candidates == null) {
+      int[] numbers = patternsByLabel.get(label);
+      boolean[] exact = exactByLabel.get(label);
+      if (numbers == null) {
+        numbers = otherPatterns;
+      }
+      int[] mayMatch = new int[numbers.length];
+      int size = 0;
+      for (int k = 0; k < numbers.length; k++) {
+        int pattern = numbers[k];
+        if ((exact != null && exact[k]) || roots[pattern] == null || roots[pattern].descriptionMayMatch(label)) {
+          mayMatch[size++] = pattern;
+        }
+      }
+      candidates = new int[size];
+      System.arraycopy(mayMatch, 0, candidates, 0, size);
+      if (candidatesByLabel.size() < MAX_CACHED_LABELS) {
+        candidatesByLabel.put(label, candidates);
+      }
+    }
+    return candidates;
+  }
+
+  /** Get a {@link SetMatcher} for the patterns in this set on this tree. */
+  public SetMatcher matcher(Tree root) {
+    return new SetMatcher(root);
+  }
+
+
+  /**
+   * Finds the matches of all the patterns of a {@link TregexPatternSet} on
+   * a tree.  The matches are found node by node in preorder, and at each
+   * node pattern by pattern in the order of the set, with the matches of
+   * a pattern at a node in the order {@link TregexMatcher#find} gives
+   * them.
+   */
+  public class SetMatcher {
+
+    private final Tree root;
+    private final TreeIndex treeIndex;
+    private final TregexMatcher[] matchers;
+
+    private Iterator<Tree> findIterator;
+    private Tree current;
+    private int[] candidates;
+    private int nextCandidate;
+    private int currentPattern = -1;
+
+    SetMatcher(Tree root) {
+      this.root = root;
+      treeIndex = new TreeIndex(root);
+      matchers = new TregexMatcher[patterns.size()];
+    }
+
+    /**
+     * Find the next match of any of the patterns on the tree.
+     *
+     * @return whether there is another match somewhere in the tree
+     */
+    public boolean find() {
+      if (findIterator == null) {
+        findIterator = root.iterator();
+        current = null;
+      }
+      if (current != null && nextMatchAtCurrent()) {
+        return true;
+      }
+      while (findIterator.hasNext()) {
+        startAt(findIterator.next());
+        if (nextMatchAtCurrent()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Find the next match of any of the patterns at the given node, that
+     * is, with the pattern's root node matching the node.  Called
+     * repeatedly on the same node, it gives each such match in turn.
+     *
+     * @return whether there is another match at the node
+     */
+    public boolean findAt(Tree node) {
+      if (node != current) {
+        findIterator = null;
+        startAt(node);
+      }
+      return nextMatchAtCurrent();
+    }
+
+    /** Restarts the search from the beginning of the tree. */
+    public void reset() {
+      findIterator = null;
+      current = null;
+      currentPattern = -1;
+    }
+
+    private void startAt(Tree node) {
+      current = node;
+      candidates = candidateNumbers(node.value());
+      nextCandidate = 0;
+      currentPattern = -1;
+    }
+
+    private boolean nextMatchAtCurrent() {
+      if (currentPattern >= 0 && matchers[currentPattern].matches()) {
+        return true;
+      }
+      currentPattern = -1;
+      while (nextCandidate < candidates.length) {
+        int pattern = candidates[nextCandidate++];
+        if (matcher(pattern).matchesAt(current)) {
+          currentPattern = pattern;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private TregexMatcher matcher(int pattern) {
+      if (matchers[pattern] == null) {
+        matchers[pattern] = patterns.get(pattern).matcher(root, root, treeIndex, new HashMap<String, Tree>(), new VariableStrings());
+      }
+      return matchers[pattern];
+    }
+
+    /** The number in the set of the pattern of the current match */
+    public int getPatternIndex() {
+      return currentPattern;
+    }
+
+    /** The pattern of the current match, or null if there is none */
+    public TregexPattern getPattern() {
+      return (currentPattern < 0) ? null : patterns.get(currentPattern);
+    }
+
+    /** The node matching the root of the pattern in the current match, or
+     *  null if there is no match.
+     */
+    public Tree getMatch() {
+      return (currentPattern < 0) ? null : matchers[currentPattern].getMatch();
+    }
+
+    /** The node labeled with <code>name</code> in the pattern of the
+     *  current match.
+     */
+    public Tree getNode(String name) {
+      return (currentPattern < 0) ? null : matchers[currentPattern].getNode(name);
+    }
+
+    /** The value of the variable in the current match, or null. */
+    public String getVariableString(String var) {
+      return (currentPattern < 0) ? null : matchers[currentPattern].getVariableString(var);
+    }
+
+  } // end class SetMatcher
+
+}
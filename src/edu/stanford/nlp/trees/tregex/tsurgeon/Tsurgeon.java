@@ -30,9 +30,11 @@ package edu.stanford.nlp.trees.tregex.tsurgeon;
 
 import edu.stanford.nlp.trees.*;
 import edu.stanford.nlp.trees.tregex.Macros;
+import edu.stanford.nlp.trees.tregex.ParallelTreeProcessor;
 import edu.stanford.nlp.trees.tregex.TregexPattern;
 import edu.stanford.nlp.trees.tregex.TregexPatternCompiler;
 import edu.stanford.nlp.trees.tregex.TregexMatcher;
+import edu.stanford.nlp.util.Factory;
 import edu.stanford.nlp.util.StringUtils;
 import edu.stanford.nlp.util.Pair;
 
@@ -145,6 +147,7 @@ public class Tsurgeon {
    *   <li><code>-m</code> For every tree that had a matching pattern, print "before" (prepended as "Operated on:") and "after" (prepended as "Result:").  Unoperated trees just pass through the transducer as usual.
    *   <li><code>-encoding X</code> Uses character set X for input and output of trees.
    *   <li><code>-macros &#60;filename&#62;</code> A file of macros to use on the tregex pattern.  Macros should be one per line, with original and replacement separated by tabs.
+   *   <li><code>-threads n</code> Transform the trees on n threads (see {@link ParallelTreeProcessor}).  The trees are printed in the same order as on one thread, and the throughput is printed at the end.
    * </ul>
    *
    * <h4>Legal operation syntax:</h4>
@@ -231,12 +234,15 @@ public class Tsurgeon {
     String treeFileOption = "-treeFile";
     String macroOption = "-macros";
     String macroFilename = "";
+    String threadsOption = "-threads";
+    int numThreads = 1;
     Map<String,Integer> flagMap = new HashMap<String,Integer>();
     flagMap.put(patternOperationOption,2);
     flagMap.put(treeFileOption,1);
     flagMap.put(singleLineOption,0);
     flagMap.put(encodingOption,1);
     flagMap.put(macroOption, 1);
+    flagMap.put(threadsOption, 1);
     Map<String,String[]> argsMap = StringUtils.argsToMap(args,flagMap);
     args = argsMap.get(null);
 
@@ -244,6 +250,7 @@ public class Tsurgeon {
     if(argsMap.containsKey(singleLineOption))   treePrintFormats = "oneline,";   else treePrintFormats = "penn,";
     if(argsMap.containsKey(encodingOption)) encoding = argsMap.get(encodingOption)[0];
     if(argsMap.containsKey(macroOption)) macroFilename = argsMap.get(macroOption)[0];
+    if(argsMap.containsKey(threadsOption)) numThreads = Integer.parseInt(argsMap.get(threadsOption)[0]);
 
     TreePrint tp = new TreePrint(treePrintFormats, new PennTreebankLanguagePack());
     PrintWriter pwOut = new PrintWriter(new OutputStreamWriter(System.out,encoding), true);
@@ -252,30 +259,41 @@ public class Tsurgeon {
     if (argsMap.containsKey(treeFileOption)) {
       trees.loadPath(argsMap.get(treeFileOption)[0]);
     }
-    List<Pair<TregexPattern,TsurgeonPattern>> ops = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>();
+    List<Pair<TregexPattern,TsurgeonPattern>> ops = getOperations(argsMap.get(patternOperationOption), args, encoding, macroFilename);
+    if (verbose) {
+      for (Pair<TregexPattern,TsurgeonPattern> op : ops) {
+        System.err.println(op.second());
+      }
+    }
 
-    TregexPatternCompiler compiler = new TregexPatternCompiler();
-    Macros.addAllMacros(compiler, macroFilename, encoding);
-    if (argsMap.containsKey(patternOperationOption)) {
-      TregexPattern matchPattern = compiler.compile(argsMap.get(patternOperationOption)[0]);
-      TsurgeonPattern p = parseOperation(argsMap.get(patternOperationOption)[1]);
-      ops.add(new Pair<TregexPattern,TsurgeonPattern>(matchPattern,p));
-    } else {
-      for (String arg : args) {
-        List<Pair<TregexPattern,TsurgeonPattern>> pairs = getOperationsFromFile(arg, encoding, compiler);
-        for (Pair<TregexPattern,TsurgeonPattern> pair : pairs) {
-          if (verbose) {
-            System.err.println(pair.second());
+    if (numThreads > 1) {
+      // tsurgeon patterns keep state while they operate on a tree, so each
+      // thread gets its own copy of the operations
+      final String[] patternOperation = argsMap.get(patternOperationOption);
+      final String[] operationFiles = args;
+      final String opsEncoding = encoding;
+      final String opsMacroFilename = macroFilename;
+      final TreePrint treePrint = tp;
+      final boolean printMatched = argsMap.containsKey(matchedOption);
+      ParallelTreeProcessor processor = new ParallelTreeProcessor(numThreads, new Factory<ParallelTreeProcessor.TreeWorker>() {
+        private static final long serialVersionUID = 1L;
+        public ParallelTreeProcessor.TreeWorker create() {
+          try {
+            return new TsurgeonWorker(getOperations(patternOperation, operationFiles, opsEncoding, opsMacroFilename), treePrint, printMatched);
+          } catch (IOException e) {
+            throw new RuntimeException(e);
           }
-          ops.add(pair);
         }
-      }
+      });
+      processor.process(trees, pwOut);
+      processor.printStats(System.err);
+      return;
     }
 
     for (Tree t : trees ) {
       Tree original = t.deepCopy();
       Tree result = processPatternsOnTree(ops, t);
-      if (argsMap.containsKey(matchedOption) && matchedOnTree) {
+      if (argsMap.containsKey(matchedOption) && matchedOnTree.get()) {
         pwOut.println("Operated on: ");
         displayTree(original,tp,pwOut);
         pwOut.println("Result: ");
@@ -284,6 +302,58 @@ public class Tsurgeon {
     }
   }
 
+  /**
+   * Reads the operations given on the command line: either the single
+   * pattern and operation of <code>-po</code>, or the operations in each of
+   * the files.  This is synchronized as each thread of a parallel run reads
+   * its own copy.
+   */
+  private static synchronized List<Pair<TregexPattern,TsurgeonPattern>> getOperations(String[] patternOperation, String[] operationFiles, String encoding, String macroFilename) throws IOException {
+    List<Pair<TregexPattern,TsurgeonPattern>> ops = new ArrayList<Pair<TregexPattern,TsurgeonPattern>>();
+    TregexPatternCompiler compiler = new TregexPatternCompiler();
+    Macros.addAllMacros(compiler, macroFilename, encoding);
+    if (patternOperation != null) {
+      TregexPattern matchPattern = compiler.compile(patternOperation[0]);
+      TsurgeonPattern p = parseOperation(patternOperation[1]);
+      ops.add(new Pair<TregexPattern,TsurgeonPattern>(matchPattern,p));
+    } else {
+      for (String arg : operationFiles) {
+        ops.addAll(getOperationsFromFile(arg, encoding, compiler));
+      }
+    }
+    return ops;
+  }
+
+  /** Runs the operations on the trees of one thread of a parallel run.
+   *  The number of matches it gives is the number of trees operated on.
+   */
+  private static class TsurgeonWorker implements ParallelTreeProcessor.TreeWorker {
+
+    private final List<Pair<TregexPattern,TsurgeonPattern>> ops;
+    private final TreePrint tp;
+    private final boolean printMatched;
+
+    TsurgeonWorker(List<Pair<TregexPattern,TsurgeonPattern>> ops, TreePrint tp, boolean printMatched) {
+      this.ops = ops;
+      this.tp = tp;
+      this.printMatched = printMatched;
+    }
+
+    public int processTree(Tree t, int treeNumber, String filename, PrintWriter out) {
+      Tree original = printMatched ? t.deepCopy() : null;
+      Tree result = processPatternsOnTree(ops, t);
+      boolean matched = matchedOnTree.get();
+      if (printMatched && matched) {
+        out.println("Operated on: ");
+        displayTree(original,tp,out);
+        out.println("Result: ");
+      }
+      displayTree(result,tp,out);
+      return matched ? 1 : 0;
+    }
+
+  } // end class TsurgeonWorker
+
   private static void displayTree(Tree t, TreePrint tp, PrintWriter pw) {
     if (t==null) {
       pw.println("null");
@@ -443,10 +513,11 @@ public class Tsurgeon {
     return t;
   }
 
-  private static boolean matchedOnTree; // hack-in field for seeing whether there was a match.
+  // hack-in field for seeing whether there was a match, per thread
+  private static final ThreadLocal<Boolean> matchedOnTree = new ThreadLocal<Boolean>();
 
   public static Tree processPatternsOnTree(List<Pair<TregexPattern, TsurgeonPattern>> ops, Tree t) {
-    matchedOnTree = false;
+    matchedOnTree.set(Boolean.FALSE);
     for (Pair<TregexPattern,TsurgeonPattern> op : ops) {
       try {
         if (DEBUG) {
@@ -454,7 +525,7 @@ public class Tsurgeon {
         }
         TregexMatcher m = op.first().matcher(t);
         while (m.find()) {
-          matchedOnTree = true;
+          matchedOnTree.set(Boolean.TRUE);
           t = op.second().evaluate(t,m);
           if (t == null) {
             return null;